@@ -0,0 +1,365 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ModelView;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Applies the graphviz automatic layout to a batch of workspace JSON files in a single JVM. Views from all of the
+ * workspaces are laid out in parallel, by a fixed number of worker threads (longest estimated layout time first), and
+ * a limited number of workspaces are held in memory at any one time. Each workspace is written (atomically) once all of its views have been laid out.
+ *
+ * Usage: BatchLayout [--threads n] [--output directory] directory|glob
+ */
+public class BatchLayout {
+
+    private static final Log log = LogFactory.getLog(BatchLayout.class);
+
+    private static final String THREADS_OPTION = "--threads";
+    private static final String OUTPUT_OPTION = "--output";
+    private static final String JSON_FILE_EXTENSION = ".json";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final int NUMBER_OF_SLOWEST_VIEWS = 5;
+
+    private final int numberOfThreads;
+    private final Supplier<GraphvizAutomaticLayout> layoutSupplier;
+
+    /**
+     * Creates a new batch layout.
+     *
+     * @param numberOfThreads   the number of views to lay out concurrently
+     * @param layoutSupplier    creates (and configures) the GraphvizAutomaticLayout instance for each worker thread
+     */
+    public BatchLayout(int numberOfThreads, Supplier<GraphvizAutomaticLayout> layoutSupplier) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be 1 or more");
+        }
+
+        this.numberOfThreads = numberOfThreads;
+        this.layoutSupplier = layoutSupplier;
+    }
+
+    /**
+     * Lays out the given workspace files.
+     *
+     * @param files             the workspace JSON files
+     * @param outputDirectory   the directory to write laid out workspaces to (at the same path, relative to the
+     *                          directory containing all of the files), or null to replace the original files
+     * @return  a Summary of what happened
+     */
+    public Summary run(List<File> files, File outputDirectory) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        Summary summary = new Summary();
+
+        // the worker threads share the scheduler's effort tuner, so the timings they record inform the ordering
+        GraphvizAutomaticLayout scheduler = layoutSupplier.get();
+        ThreadLocal<GraphvizAutomaticLayout> layouts = ThreadLocal.withInitial(() -> {
+            GraphvizAutomaticLayout layout = layoutSupplier.get();
+            layout.shareEffortTuner(scheduler);
+
+            return layout;
+        });
+        CostOrderedExecutor executor = new CostOrderedExecutor(numberOfThreads);
+        Path base = findCommonDirectory(files);
+
+        // limits the number of workspaces in memory, while keeping enough queued to keep the workers busy
+        Semaphore workspacesInMemory = new Semaphore(numberOfThreads * 2);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+
+        try {
+            for (File file : files) {
+                workspacesInMemory.acquire();
+
+                // files from different directories may have the same name (e.g. workspaces/*/workspace.json)
+                String name = base.relativize(file.getAbsoluteFile().toPath()).toString();
+
+                Workspace workspace;
+                try {
+                    workspace = WorkspaceUtils.loadWorkspaceFromJson(file);
+                } catch (Exception e) {
+                    summary.addFailure(name, null, "could not be loaded: " + e.getMessage());
+                    workspacesInMemory.release();
+                    continue;
+                }
+
+                // the most expensive views (across all of the workspaces that are loaded) are laid out first
+                List<CompletableFuture<Boolean>> views = new ArrayList<>();
+                try {
+                    for (ModelView view : GraphvizAutomaticLayout.getViews(workspace)) {
+                        CompletableFuture<Boolean> result = new CompletableFuture<>();
+                        executor.execute(() -> {
+                            try {
+                                result.complete(layOut(file, name, view, layouts.get(), summary));
+                            } catch (Throwable t) {
+                                result.completeExceptionally(t);
+                            }
+                        }, scheduler.getEstimatedDuration(view));
+                        views.add(result);
+                    }
+                } catch (RuntimeException e) {
+                    // views that were submitted still run, but the workspace is never written
+                    views.add(CompletableFuture.failedFuture(e));
+                }
+
+                // the workspace is released however its views complete, so a failure can't stall the batch
+                results.add(CompletableFuture.allOf(views.toArray(new CompletableFuture[0]))
+                        .handleAsync((ignored, throwable) -> {
+                            try {
+                                if (throwable != null) {
+                                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                                    summary.addFailure(name, null, "not written, as some views could not be laid out: " + cause);
+                                } else if (views.stream().allMatch(CompletableFuture::join)) {
+                                    write(workspace, outputDirectory != null ? new File(outputDirectory, name) : file);
+                                    summary.addWorkspace();
+                                } else {
+                                    summary.addFailure(name, null, "not written, as some views could not be laid out");
+                                }
+                            } catch (Exception e) {
+                                summary.addFailure(name, null, "could not be written: " + e.getMessage());
+                            } finally {
+                                workspacesInMemory.release();
+                            }
+
+                            return null;
+                        }, executor));
+            }
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        summary.setDuration(System.currentTimeMillis() - start);
+
+        return summary;
+    }
+
+    private boolean layOut(File file, String name, ModelView view, GraphvizAutomaticLayout layout, Summary summary) {
+        long start = System.currentTimeMillis();
+        try {
+            layout.applyLayout(view);
+            summary.addView(name, view.getKey(), System.currentTimeMillis() - start);
+
+            return true;
+        } catch (Exception e) {
+            log.debug("Layout failed for view with key " + view.getKey() + " in " + file.getAbsolutePath(), e);
+            summary.addFailure(name, view.getKey(), e.getMessage());
+
+            return false;
+        } finally {
+            layout.clearReports();
+        }
+    }
+
+    /**
+     * Finds the deepest directory containing all of the given files.
+     */
+    static Path findCommonDirectory(List<File> files) {
+        Path common = null;
+        for (File file : files) {
+            Path directory = file.getAbsoluteFile().toPath().normalize().getParent();
+            if (common == null) {
+                common = directory;
+            } else {
+                while (!directory.startsWith(common)) {
+                    common = common.getParent();
+                }
+            }
+        }
+
+        return common != null ? common : Paths.get("").toAbsolutePath();
+    }
+
+    /**
+     * Writes the workspace to a temporary file alongside the target, and then moves it into place, so that readers
+     * never see a partially written file.
+     */
+    private void write(Workspace workspace, File target) throws Exception {
+        File directory = target.getAbsoluteFile().getParentFile();
+        Files.createDirectories(directory.toPath());
+
+        Path temporaryFile = Files.createTempFile(directory.toPath(), target.getName(), TEMPORARY_FILE_EXTENSION);
+        try {
+            WorkspaceUtils.saveWorkspaceToJson(workspace, temporaryFile.toFile());
+            try {
+                Files.move(temporaryFile, target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Finds the workspace JSON files in a directory, or those matching a glob pattern (e.g. "workspaces/*&#47;*.json").
+     *
+     * @param directoryOrGlob   a directory or glob pattern
+     * @return  a sorted list of files
+     */
+    static List<File> findFiles(String directoryOrGlob) throws IOException {
+        Path path = Paths.get(directoryOrGlob);
+
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> paths = Files.list(path)) {
+                return paths
+                        .filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(JSON_FILE_EXTENSION))
+                        .map(Path::toFile)
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+
+        // search from the deepest directory that doesn't contain any glob characters
+        Path pattern = path.toAbsolutePath().normalize();
+        Path base = pattern.getRoot();
+        for (Path element : pattern) {
+            if (element.toString().matches(".*[*?\\[{].*") || !Files.isDirectory(base.resolve(element))) {
+                break;
+            }
+            base = base.resolve(element);
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths
+                    .filter(p -> Files.isRegularFile(p) && matcher.matches(p))
+                    .map(Path::toFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        File outputDirectory = null;
+        String input = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (THREADS_OPTION.equals(args[i]) && i + 1 < args.length) {
+                numberOfThreads = Integer.parseInt(args[++i]);
+            } else if (OUTPUT_OPTION.equals(args[i]) && i + 1 < args.length) {
+                outputDirectory = new File(args[++i]);
+            } else {
+                input = args[i];
+            }
+        }
+
+        if (input == null) {
+            System.err.println("Usage: BatchLayout [" + THREADS_OPTION + " n] [" + OUTPUT_OPTION + " directory] directory|glob");
+            System.exit(2);
+        }
+
+        List<File> files = findFiles(input);
+        // graphviz processes from all worker threads share the CPU and memory available
+        ConcurrencyController concurrencyController = ConcurrencyController.fromCgroupLimits();
+        Summary summary = new BatchLayout(numberOfThreads, () -> {
+            GraphvizAutomaticLayout layout = new GraphvizAutomaticLayout();
+            layout.setConcurrencyController(concurrencyController);
+
+            return layout;
+        }).run(files, outputDirectory);
+        summary.print(System.out);
+
+        System.exit(summary.getFailures().isEmpty() ? 0 : 1);
+    }
+
+    /**
+     * A summary of a batch layout: the number of workspaces written and views laid out, the time taken for each
+     * view, and any failures.
+     */
+    public static class Summary {
+
+        private int numberOfWorkspaces;
+        private final List<String> failures = new ArrayList<>();
+        private final Map<String, Long> viewDurations = new LinkedHashMap<>();
+        private long duration;
+
+        synchronized void addWorkspace() {
+            numberOfWorkspaces++;
+        }
+
+        synchronized void addView(String name, String viewKey, long duration) {
+            viewDurations.put(name + ":" + viewKey, duration);
+        }
+
+        synchronized void addFailure(String name, String viewKey, String message) {
+            failures.add(name + (viewKey != null ? ":" + viewKey : "") + " - " + message);
+        }
+
+        void setDuration(long duration) {
+            this.duration = duration;
+        }
+
+        /**
+         * Gets the number of workspaces that were laid out and written.
+         *
+         * @return  a number of workspaces
+         */
+        public synchronized int getNumberOfWorkspaces() {
+            return numberOfWorkspaces;
+        }
+
+        /**
+         * Gets the number of views that were laid out.
+         *
+         * @return  a number of views
+         */
+        public synchronized int getNumberOfViews() {
+            return viewDurations.size();
+        }
+
+        /**
+         * Gets a description of each failure, prefixed by the file path, relative to the directory containing all of
+         * the files (and view key, if applicable).
+         *
+         * @return  a list of failures
+         */
+        public synchronized List<String> getFailures() {
+            return List.copyOf(failures);
+        }
+
+        /**
+         * Gets the wall-clock time taken by the batch.
+         *
+         * @return  a duration, in milliseconds
+         */
+        public long getDuration() {
+            return duration;
+        }
+
+        public synchronized void print(PrintStream out) {
+            long totalLayoutTime = viewDurations.values().stream().mapToLong(Long::longValue).sum();
+
+            out.println(String.format(Locale.US, "Laid out %d views in %d workspaces in %dms (%dms of layout time)", viewDurations.size(), numberOfWorkspaces, duration, totalLayoutTime));
+
+            out.println("Slowest views:");
+            viewDurations.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(NUMBER_OF_SLOWEST_VIEWS)
+                    .forEach(entry -> out.println("  " + entry.getKey() + " - " + entry.getValue() + "ms"));
+
+            if (!failures.isEmpty()) {
+                out.println(failures.size() + " failures:");
+                for (String failure : failures) {
+                    out.println("  " + failure);
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.structurizr.graphviz;
+
+import java.io.Serializable;
+
+/**
+ * The bounding box of a layout, in Structurizr coordinates.
+ */
+final class Bounds implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int minimumX;
+    private final int minimumY;
+    private final int maximumX;
+    private final int maximumY;
+
+    Bounds(int minimumX, int minimumY, int maximumX, int maximumY) {
+        this.minimumX = minimumX;
+        this.minimumY = minimumY;
+        this.maximumX = maximumX;
+        this.maximumY = maximumY;
+    }
+
+    int getMinimumX() {
+        return minimumX;
+    }
+
+    int getMinimumY() {
+        return minimumY;
+    }
+
+    int getMaximumX() {
+        return maximumX;
+    }
+
+    int getMaximumY() {
+        return maximumY;
+    }
+
+    int getWidth() {
+        return maximumX - minimumX;
+    }
+
+    int getHeight() {
+        return maximumY - minimumY;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + minimumX + "," + minimumY + ")-(" + maximumX + "," + maximumY + ")";
+    }
+
+}
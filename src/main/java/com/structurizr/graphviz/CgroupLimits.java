@@ -0,0 +1,225 @@
+package com.structurizr.graphviz;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The CPU and memory available to this process, taking into account any cgroup (v2 or v1) limits, such as those
+ * applied to a container with a CPU quota and memory limit. The process's own cgroup is found via /proc/self/cgroup,
+ * and the limits of that cgroup and each of its ancestors are read, so that limits set on a nested cgroup (such as a
+ * systemd slice or a Kubernetes pod) are found as well as those set at the root. The result is never more than the
+ * JVM's own container-aware view of the processors and memory available.
+ */
+class CgroupLimits {
+
+    private static final Log log = LogFactory.getLog(CgroupLimits.class);
+
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final Path DEFAULT_ROOT = Paths.get("/sys/fs/cgroup");
+    private static final Path PROC_SELF_CGROUP = Paths.get("/proc/self/cgroup");
+
+    // cgroup v2
+    private static final String CPU_MAX_FILE = "cpu.max";
+    private static final String MEMORY_MAX_FILE = "memory.max";
+    private static final String NO_LIMIT = "max";
+
+    // cgroup v1, where each controller has its own hierarchy
+    private static final String CPU_CONTROLLER = "cpu";
+    private static final String MEMORY_CONTROLLER = "memory";
+    private static final String CPU_QUOTA_FILE = "cpu.cfs_quota_us";
+    private static final String CPU_PERIOD_FILE = "cpu.cfs_period_us";
+    private static final String MEMORY_LIMIT_FILE = "memory.limit_in_bytes";
+
+    // v1 reports "no limit" as a very large number, rounded down to the page size
+    private static final long V1_NO_LIMIT_THRESHOLD = Long.MAX_VALUE / 2;
+
+    // the v2 hierarchy appears in /proc/self/cgroup with an ID of 0 and no controllers
+    private static final String V2_HIERARCHY = "";
+
+    private final double cpuLimit;
+    private final long memoryLimit;
+
+    CgroupLimits(double cpuLimit, long memoryLimit) {
+        this.cpuLimit = cpuLimit;
+        this.memoryLimit = memoryLimit;
+    }
+
+    static CgroupLimits read() {
+        String cgroups = null;
+        try {
+            cgroups = readFile(PROC_SELF_CGROUP);
+        } catch (IOException e) {
+            log.warn("Could not read " + PROC_SELF_CGROUP + ": " + e.getMessage());
+        }
+
+        return read(DEFAULT_ROOT, cgroups, Runtime.getRuntime().availableProcessors(), getPhysicalMemory());
+    }
+
+    /**
+     * Reads the limits of the root cgroup from the given cgroup filesystem root, falling back to the given number of
+     * processors and amount of physical memory when there are no limits.
+     */
+    static CgroupLimits read(Path root, int availableProcessors, long physicalMemory) {
+        return read(root, null, availableProcessors, physicalMemory);
+    }
+
+    /**
+     * Reads the limits of the cgroups listed (in the format of /proc/self/cgroup), and their ancestors, from the given
+     * cgroup filesystem root, falling back to the given number of processors and amount of physical memory when
+     * there are no limits.
+     */
+    static CgroupLimits read(Path root, String cgroups, int availableProcessors, long physicalMemory) {
+        double cpuLimit = availableProcessors;
+        long memoryLimit = physicalMemory;
+
+        Map<String, String> paths = parseCgroups(cgroups);
+
+        try {
+            if (Files.isReadable(root.resolve(CPU_MAX_FILE)) || paths.containsKey(V2_HIERARCHY)) {
+                for (Path directory : getHierarchy(root, paths.get(V2_HIERARCHY))) {
+                    cpuLimit = Math.min(cpuLimit, readV2CpuLimit(directory));
+                    memoryLimit = Math.min(memoryLimit, readMemoryLimit(directory.resolve(MEMORY_MAX_FILE)));
+                }
+            }
+
+            for (Path directory : getHierarchy(root.resolve(CPU_CONTROLLER), paths.get(CPU_CONTROLLER))) {
+                cpuLimit = Math.min(cpuLimit, readV1CpuLimit(directory));
+            }
+
+            for (Path directory : getHierarchy(root.resolve(MEMORY_CONTROLLER), paths.get(MEMORY_CONTROLLER))) {
+                memoryLimit = Math.min(memoryLimit, readMemoryLimit(directory.resolve(MEMORY_LIMIT_FILE)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not read cgroup limits from " + root + ": " + e.getMessage());
+        }
+
+        return new CgroupLimits(cpuLimit, memoryLimit);
+    }
+
+    /**
+     * Parses the contents of /proc/self/cgroup (lines of hierarchy-ID:controller-list:cgroup-path) into the cgroup
+     * path for each controller, with the v2 hierarchy keyed by an empty string.
+     */
+    private static Map<String, String> parseCgroups(String cgroups) {
+        Map<String, String> paths = new HashMap<>();
+        if (cgroups == null) {
+            return paths;
+        }
+
+        for (String line : cgroups.split("\n")) {
+            String[] parts = line.trim().split(":", 3);
+            if (parts.length == 3) {
+                if (parts[1].isEmpty()) {
+                    paths.put(V2_HIERARCHY, parts[2]);
+                } else {
+                    for (String controller : parts[1].split(",")) {
+                        paths.put(controller, parts[2]);
+                    }
+                }
+            }
+        }
+
+        return paths;
+    }
+
+    /**
+     * Gets the directories of the given cgroup and each of its ancestors, up to the root. A cgroup that isn't visible
+     * below the root (e.g. because the root is a container's own cgroup, mounted without a cgroup namespace) is
+     * skipped, leaving the root itself.
+     */
+    private static Path[] getHierarchy(Path root, String cgroupPath) {
+        if (cgroupPath == null) {
+            return new Path[] { root };
+        }
+
+        String[] names = Arrays.stream(cgroupPath.split("/")).filter(name -> !name.isEmpty() && !name.equals("..")).toArray(String[]::new);
+        Path[] directories = new Path[names.length + 1];
+        directories[0] = root;
+        for (int i = 0; i < names.length; i++) {
+            directories[i + 1] = directories[i].resolve(names[i]);
+        }
+
+        return Arrays.stream(directories).filter(Files::isDirectory).toArray(Path[]::new);
+    }
+
+    private static double readV2CpuLimit(Path directory) throws IOException {
+        String cpuMax = readFile(directory.resolve(CPU_MAX_FILE));
+        if (cpuMax != null) {
+            String[] parts = cpuMax.split("\\s+");
+            if (!NO_LIMIT.equals(parts[0]) && parts.length == 2) {
+                return Double.parseDouble(parts[0]) / Double.parseDouble(parts[1]);
+            }
+        }
+
+        return Double.MAX_VALUE;
+    }
+
+    private static double readV1CpuLimit(Path directory) throws IOException {
+        String quota = readFile(directory.resolve(CPU_QUOTA_FILE));
+        String period = readFile(directory.resolve(CPU_PERIOD_FILE));
+        if (quota != null && period != null && Long.parseLong(quota) > 0) {
+            return Double.parseDouble(quota) / Double.parseDouble(period);
+        }
+
+        return Double.MAX_VALUE;
+    }
+
+    private static long readMemoryLimit(Path path) throws IOException {
+        String memoryMax = readFile(path);
+        if (memoryMax != null && !NO_LIMIT.equals(memoryMax)) {
+            long limit = Long.parseLong(memoryMax);
+            if (limit < V1_NO_LIMIT_THRESHOLD) {
+                return limit;
+            }
+        }
+
+        return UNLIMITED;
+    }
+
+    private static String readFile(Path path) throws IOException {
+        if (Files.isReadable(path)) {
+            return Files.readString(path).trim();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the physical memory, as seen by the JVM; this is already limited to the container's memory limit when
+     * the JVM can find it.
+     */
+    private static long getPhysicalMemory() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)bean).getTotalMemorySize();
+        } else {
+            return UNLIMITED;
+        }
+    }
+
+    /**
+     * Gets the number of CPUs available, which may be fractional when there is a CPU quota.
+     */
+    double getCpuLimit() {
+        return cpuLimit;
+    }
+
+    /**
+     * Gets the memory available, in bytes, or UNLIMITED.
+     */
+    long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the element and relationship ids in a view to dense integer ids, for a more compact DOT file. The mapping
+ * only depends upon the contents of the view, so the same ids are produced when the DOT file is written and when
+ * the graphviz output is read back. Boundaries (the parents of elements in the view, such as software systems and
+ * containers, which aren't always elements in the view themselves) are numbered by the same counter, after the
+ * relationships, and cluster ids are prefixed, so no cluster id can be the same as an element id.
+ */
+class CompactIds {
+
+    static final String CLUSTER_PREFIX = "cluster_";
+
+    private final Map<String, String> ids = new HashMap<>();
+
+    CompactIds(ModelView view) {
+        int id = 1;
+        for (ElementView elementView : view.getElements()) {
+            ids.put(elementView.getId(), Integer.toString(id++));
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            ids.put(relationshipView.getId(), Integer.toString(id++));
+        }
+        for (ElementView elementView : view.getElements()) {
+            for (Element parent = elementView.getElement().getParent(); parent != null; parent = parent.getParent()) {
+                if (!ids.containsKey(parent.getId())) {
+                    ids.put(parent.getId(), Integer.toString(id++));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the compact id for the given element or relationship id.
+     *
+     * @return  a compact id, or the original id if it's not in the view
+     */
+    String get(String id) {
+        return ids.getOrDefault(id, id);
+    }
+
+    /**
+     * Gets the DOT cluster id for the given boundary (software system, container or deployment node) id.
+     *
+     * @return  a cluster id
+     */
+    String getClusterId(String id) {
+        return CLUSTER_PREFIX + get(id);
+    }
+
+}
@@ -0,0 +1,197 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.*;
+import com.structurizr.util.StringUtils;
+import com.structurizr.view.*;
+
+import java.util.*;
+
+/**
+ * Finds the connected components of a view, treating elements as connected when there's a relationship between
+ * them in the view, or when they would be drawn inside the same boundary (software system, container, deployment
+ * node, group or enterprise). Each component can then be laid out independently.
+ */
+class ComponentFinder {
+
+    private static final String GROUP_SEPARATOR_PROPERTY_NAME = "structurizr.groupSeparator";
+    private static final String ENTERPRISE_BOUNDARY = "enterprise";
+
+    /**
+     * Finds the connected components in the view, each being a set of elements (excluding deployment nodes, which
+     * are drawn as boundaries). Components are returned in the order their first element appears in the view.
+     */
+    List<Set<Element>> findComponents(ExportContext context) {
+        ModelView view = context.getView();
+
+        List<Element> elements = new ArrayList<>();
+        Map<Element, Integer> indexes = new HashMap<>();
+        for (ElementView elementView : view.getElements()) {
+            if (!(elementView.getElement() instanceof DeploymentNode)) {
+                indexes.put(elementView.getElement(), elements.size());
+                elements.add(elementView.getElement());
+            }
+        }
+
+        int[] parents = new int[elements.size()];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+
+        // elements that are drawn inside the same boundary
+        String groupSeparator = view.getModel().getProperties().get(GROUP_SEPARATOR_PROPERTY_NAME);
+        boolean enterpriseBoundaryVisible = isEnterpriseBoundaryVisible(view);
+        Map<Object, Integer> boundaries = new HashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            for (Object boundary : getBoundaries(elements.get(i), groupSeparator, enterpriseBoundaryVisible)) {
+                Integer index = boundaries.putIfAbsent(boundary, i);
+                if (index != null) {
+                    union(parents, index, i);
+                }
+            }
+        }
+
+        // elements that are connected by relationships
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            Integer source = indexes.get(resolve(context, relationshipView.getRelationship().getSource()));
+            Integer destination = indexes.get(resolve(context, relationshipView.getRelationship().getDestination()));
+
+            if (source != null && destination != null) {
+                union(parents, source, destination);
+            }
+        }
+
+        Map<Integer, Set<Element>> components = new LinkedHashMap<>();
+        for (int i = 0; i < elements.size(); i++) {
+            components.computeIfAbsent(find(parents, i), root -> new LinkedHashSet<>()).add(elements.get(i));
+        }
+
+        return new ArrayList<>(components.values());
+    }
+
+    /**
+     * Determines whether any of the elements in the view are deployment nodes, or would be drawn inside a boundary.
+     */
+    static boolean hasBoundaries(ModelView view) {
+        String groupSeparator = view.getModel().getProperties().get(GROUP_SEPARATOR_PROPERTY_NAME);
+        boolean enterpriseBoundaryVisible = isEnterpriseBoundaryVisible(view);
+        for (ElementView elementView : view.getElements()) {
+            Element element = elementView.getElement();
+            if (element instanceof DeploymentNode || !getBoundaries(element, groupSeparator, enterpriseBoundaryVisible).isEmpty()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Finds the boundaries drawn in the view (software systems, containers, deployment nodes, groups, including nested
+     * groups, and the enterprise), each with the elements (other than deployment nodes) drawn inside it.
+     */
+    static Map<Object, Set<Element>> findBoundaries(ModelView view) {
+        String groupSeparator = view.getModel().getProperties().get(GROUP_SEPARATOR_PROPERTY_NAME);
+        boolean enterpriseBoundaryVisible = isEnterpriseBoundaryVisible(view);
+
+        Map<Object, Set<Element>> boundaries = new LinkedHashMap<>();
+        for (ElementView elementView : view.getElements()) {
+            Element element = elementView.getElement();
+            if (element instanceof DeploymentNode) {
+                continue;
+            }
+
+            for (Element parent = element.getParent(); parent != null; parent = parent.getParent()) {
+                boundaries.computeIfAbsent(parent, boundary -> new LinkedHashSet<>()).add(element);
+            }
+
+            if (element instanceof GroupableElement) {
+                String group = ((GroupableElement)element).getGroup();
+                if (!StringUtils.isNullOrEmpty(group)) {
+                    int index = StringUtils.isNullOrEmpty(groupSeparator) ? -1 : group.indexOf(groupSeparator);
+                    while (index > 0) {
+                        boundaries.computeIfAbsent("group:" + group.substring(0, index), boundary -> new LinkedHashSet<>()).add(element);
+                        index = group.indexOf(groupSeparator, index + groupSeparator.length());
+                    }
+                    boundaries.computeIfAbsent("group:" + group, boundary -> new LinkedHashSet<>()).add(element);
+                }
+            }
+
+            if (enterpriseBoundaryVisible && getBoundaries(element, groupSeparator, true).contains(ENTERPRISE_BOUNDARY)) {
+                boundaries.computeIfAbsent(ENTERPRISE_BOUNDARY, boundary -> new LinkedHashSet<>()).add(element);
+            }
+        }
+
+        return boundaries;
+    }
+
+    static Element resolve(ExportContext context, Element element) {
+        if (element instanceof DeploymentNode) {
+            return context.getDeploymentNodeIndex().findElementInside((DeploymentNode)element);
+        } else {
+            return element;
+        }
+    }
+
+    private static List<Object> getBoundaries(Element element, String groupSeparator, boolean enterpriseBoundaryVisible) {
+        List<Object> boundaries = new ArrayList<>();
+
+        // the outermost parent covers software system, container and deployment node boundaries
+        Element root = element.getParent();
+        while (root != null && root.getParent() != null) {
+            root = root.getParent();
+        }
+        if (root != null) {
+            boundaries.add(root);
+        }
+
+        if (element instanceof GroupableElement) {
+            String group = ((GroupableElement)element).getGroup();
+            if (!StringUtils.isNullOrEmpty(group)) {
+                if (!StringUtils.isNullOrEmpty(groupSeparator) && group.contains(groupSeparator)) {
+                    group = group.substring(0, group.indexOf(groupSeparator));
+                }
+                boundaries.add("group:" + group);
+            }
+        }
+
+        if (enterpriseBoundaryVisible) {
+            if ((element instanceof Person && ((Person)element).getLocation() == Location.Internal) ||
+                    (element instanceof SoftwareSystem && ((SoftwareSystem)element).getLocation() == Location.Internal)) {
+                boundaries.add(ENTERPRISE_BOUNDARY);
+            }
+        }
+
+        return boundaries;
+    }
+
+    private static boolean isEnterpriseBoundaryVisible(ModelView view) {
+        if (view instanceof SystemLandscapeView) {
+            return ((SystemLandscapeView)view).isEnterpriseBoundaryVisible();
+        } else if (view instanceof SystemContextView) {
+            return ((SystemContextView)view).isEnterpriseBoundaryVisible();
+        } else {
+            return false;
+        }
+    }
+
+    private int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+
+        return i;
+    }
+
+    private void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+
+        // keep the earliest element as the root, so components are ordered by their first element
+        if (rootA < rootB) {
+            parents[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parents[rootA] = rootB;
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.structurizr.graphviz;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Limits the number of graphviz processes running at the same time, based on the CPU and memory available (taking
+ * container limits into account). The limit is adjusted as processes finish (additive increase, multiplicative
+ * decrease): it backs off when graphviz processes don't get a full CPU each, or use more memory than estimated, and
+ * otherwise creeps back up towards the CPU limit. Before starting, each process reserves its estimated memory
+ * (learnt from the peak memory used by previous processes, relative to the size of their DOT files); views that are
+ * too large to fit in the memory available are rejected with a GraphvizAdmissionException.
+ *
+ * A single instance is intended to be shared by all GraphvizAutomaticLayout instances in a process.
+ */
+public class ConcurrencyController {
+
+    private static final Log log = LogFactory.getLog(ConcurrencyController.class);
+
+    // the share of the memory not used by the JVM heap that graphviz processes may use
+    private static final double MEMORY_BUDGET_FRACTION = 0.8;
+    private static final long MINIMUM_MEMORY_BUDGET = 256L * 1024 * 1024;
+
+    // initial memory model: bytes = BASE_PROCESS_MEMORY + (memory per DOT byte * DOT file size)
+    private static final long BASE_PROCESS_MEMORY = 16L * 1024 * 1024;
+    private static final double INITIAL_MEMORY_PER_DOT_BYTE = 1000;
+    private static final double SMOOTHING = 0.2;
+
+    // the memory used for smaller DOT files is mostly the base process memory, so says little about memory per byte,
+    // or about whether the estimate is too low
+    private static final long MINIMUM_LEARNING_DOT_FILE_SIZE = 64 * 1024;
+
+    // the most the memory per DOT byte can grow by from a single observation
+    private static final double MAXIMUM_GROWTH_FACTOR = 2;
+
+    // a process getting less than this share of a CPU indicates the CPUs are oversubscribed
+    private static final double CPU_EFFICIENCY_THRESHOLD = 0.5;
+    private static final long MINIMUM_SAMPLED_DURATION = 200;
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final long DECREASE_INTERVAL = 1000;
+
+    private final int maximumLimit;
+    private final long memoryBudget;
+
+    private double limit;
+    private int inFlight = 0;
+    private long reservedMemory = 0;
+    private double memoryPerDotByte = INITIAL_MEMORY_PER_DOT_BYTE;
+    private long lastDecrease = 0;
+
+    /**
+     * Creates a controller based on the CPU and memory limits of the cgroup this process runs in (or the machine, if
+     * there are none), leaving room for the JVM heap.
+     *
+     * @return  a ConcurrencyController instance
+     */
+    public static ConcurrencyController fromCgroupLimits() {
+        CgroupLimits cgroupLimits = CgroupLimits.read();
+
+        long memoryBudget = CgroupLimits.UNLIMITED;
+        if (cgroupLimits.getMemoryLimit() != CgroupLimits.UNLIMITED) {
+            memoryBudget = getMemoryBudget(cgroupLimits.getMemoryLimit(), Runtime.getRuntime().maxMemory());
+            if (memoryBudget < MINIMUM_MEMORY_BUDGET) {
+                log.warn("Only " + memoryBudget + " bytes are available to graphviz processes once the JVM heap is taken out of the memory limit of " + cgroupLimits.getMemoryLimit() + " bytes");
+            }
+        }
+
+        log.debug("CPU limit: " + cgroupLimits.getCpuLimit() + ", memory budget: " + memoryBudget + " bytes");
+
+        return new ConcurrencyController(cgroupLimits.getCpuLimit(), memoryBudget);
+    }
+
+    /**
+     * Gets the share of the memory not used by the JVM heap that graphviz processes may use. This is never more
+     * than the memory left once the heap is taken out, even when that's less than the usual minimum budget, so that
+     * graphviz processes can't push the container over its memory limit.
+     */
+    static long getMemoryBudget(long memoryLimit, long maximumHeapSize) {
+        long available = Math.max(0, memoryLimit - maximumHeapSize);
+        long memoryBudget = Math.max(MINIMUM_MEMORY_BUDGET, (long)(available * MEMORY_BUDGET_FRACTION));
+
+        // the budget must be positive, so a single (estimated) process is always allowed
+        return Math.max(1, Math.min(available, memoryBudget));
+    }
+
+    /**
+     * Creates a new controller.
+     *
+     * @param cpuLimit          the number of CPUs available (may be fractional)
+     * @param memoryBudget      the memory available to graphviz processes, in bytes
+     */
+    public ConcurrencyController(double cpuLimit, long memoryBudget) {
+        if (cpuLimit <= 0) {
+            throw new IllegalArgumentException("The CPU limit must be greater than zero");
+        }
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be greater than zero");
+        }
+
+        this.maximumLimit = Math.max(1, (int)Math.ceil(cpuLimit));
+        this.memoryBudget = memoryBudget;
+        this.limit = maximumLimit;
+    }
+
+    /**
+     * Waits until a graphviz process can be started for a DOT file of the given size.
+     */
+    synchronized Permit acquire(String name, long dotFileSize) throws InterruptedException, GraphvizAdmissionException {
+        long estimatedMemory = estimateMemory(dotFileSize);
+        if (estimatedMemory > memoryBudget) {
+            throw new GraphvizAdmissionException("Graphviz is estimated to need " + estimatedMemory + " bytes to lay out " + name + ", which exceeds the memory budget of " + memoryBudget + " bytes");
+        }
+
+        // a large process waits for others to finish, but is always admitted when nothing else is running
+        while (inFlight >= getLimit() || (inFlight > 0 && reservedMemory + estimatedMemory > memoryBudget)) {
+            wait();
+        }
+
+        inFlight++;
+        reservedMemory += estimatedMemory;
+
+        return new Permit(dotFileSize, estimatedMemory);
+    }
+
+    /**
+     * Releases a permit once the graphviz process has finished, adjusting the limit based on what was observed.
+     *
+     * @param cpuTime           the CPU time used by the process, in milliseconds (or -1 if not known)
+     * @param sampledDuration   the wall-clock time over which the CPU time was measured, in milliseconds
+     * @param peakMemory        the peak memory used by the process, in bytes (or 0 if not known)
+     */
+    synchronized void release(Permit permit, long cpuTime, long sampledDuration, long peakMemory) {
+        inFlight--;
+        reservedMemory -= permit.estimatedMemory;
+
+        // the memory used for a small DOT file is mostly the base process memory, which varies more than the estimate
+        boolean learnFromMemory = peakMemory > 0 && permit.dotFileSize >= MINIMUM_LEARNING_DOT_FILE_SIZE;
+
+        if (learnFromMemory) {
+            // increase the estimate quickly (but boundedly, so a single outlier can't lock out larger views), and
+            // reduce it gradually
+            double observed = (double)Math.max(0, peakMemory - BASE_PROCESS_MEMORY) / permit.dotFileSize;
+            if (observed > memoryPerDotByte) {
+                memoryPerDotByte = Math.min(observed, memoryPerDotByte * MAXIMUM_GROWTH_FACTOR);
+            } else {
+                memoryPerDotByte = (memoryPerDotByte * (1 - SMOOTHING)) + (observed * SMOOTHING);
+            }
+        }
+
+        boolean cpuContention = cpuTime >= 0 && sampledDuration >= MINIMUM_SAMPLED_DURATION && cpuTime < sampledDuration * CPU_EFFICIENCY_THRESHOLD;
+        boolean memoryUnderestimated = learnFromMemory && peakMemory > permit.estimatedMemory;
+
+        if (cpuContention || memoryUnderestimated) {
+            // only back off once per interval, rather than once for every process that finishes at the same time
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= DECREASE_INTERVAL) {
+                limit = Math.max(1, limit * DECREASE_FACTOR);
+                lastDecrease = now;
+                log.debug("Reduced the graphviz concurrency limit to " + getLimit() + (cpuContention ? " (CPU contention)" : " (memory)"));
+            }
+        } else {
+            limit = Math.min(maximumLimit, limit + (1 / limit));
+        }
+
+        notifyAll();
+    }
+
+    synchronized long estimateMemory(long dotFileSize) {
+        return BASE_PROCESS_MEMORY + (long)(memoryPerDotByte * dotFileSize);
+    }
+
+    /**
+     * Gets the current limit on the number of graphviz processes that can run at the same time.
+     *
+     * @return  the limit
+     */
+    public synchronized int getLimit() {
+        return (int)Math.floor(limit);
+    }
+
+    /**
+     * Gets the number of graphviz processes running.
+     *
+     * @return  the number of processes
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Gets the memory available to graphviz processes.
+     *
+     * @return  a number of bytes
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Gets the memory reserved by the graphviz processes that are running.
+     *
+     * @return  a number of bytes
+     */
+    public synchronized long getReservedMemory() {
+        return reservedMemory;
+    }
+
+    static final class Permit {
+
+        private final long dotFileSize;
+        private final long estimatedMemory;
+
+        private Permit(long dotFileSize, long estimatedMemory) {
+            this.dotFileSize = dotFileSize;
+            this.estimatedMemory = estimatedMemory;
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.structurizr.graphviz;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size thread pool that runs the queued task with the highest estimated cost next (longest job first), so
+ * that expensive tasks are started as early as possible. Tasks with the same cost run in the order they were
+ * submitted, and tasks submitted via execute(Runnable) run before any costed tasks.
+ */
+class CostOrderedExecutor implements Executor {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequence = new AtomicLong();
+
+    CostOrderedExecutor(int numberOfThreads) {
+        this.executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+
+        // otherwise the first tasks are handed straight to new threads, bypassing the queue (and so the ordering)
+        this.executor.prestartAllCoreThreads();
+    }
+
+    @Override
+    public void execute(Runnable runnable) {
+        execute(runnable, Double.POSITIVE_INFINITY);
+    }
+
+    void execute(Runnable runnable, double cost) {
+        executor.execute(new Task(runnable, cost, sequence.getAndIncrement()));
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private static final class Task implements Runnable, Comparable<Task> {
+
+        private final Runnable runnable;
+        private final double cost;
+        private final long sequence;
+
+        private Task(Runnable runnable, double cost, long sequence) {
+            this.runnable = runnable;
+            this.cost = cost;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+
+        @Override
+        public int compareTo(Task task) {
+            int result = Double.compare(task.cost, cost);
+            if (result == 0) {
+                result = Long.compare(sequence, task.sequence);
+            }
+
+            return result;
+        }
+
+    }
+
+}
@@ -4,12 +4,10 @@ import com.structurizr.export.AbstractDiagramExporter;
 import com.structurizr.export.Diagram;
 import com.structurizr.export.IndentingWriter;
 import com.structurizr.model.*;
-import com.structurizr.util.StringUtils;
-import com.structurizr.view.DeploymentView;
-import com.structurizr.view.ModelView;
-import com.structurizr.view.RelationshipView;
+import com.structurizr.view.*;
 
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * Writes a Structurizr view to a graphviz dot file. Please note that this is not a full export (colours, shapes, etc);
@@ -17,27 +15,97 @@ import java.util.Locale;
  */
 class DOTExporter extends AbstractDiagramExporter {
 
-    private static final int CLUSTER_INTERNAL_MARGIN = 25;
+    static final int CLUSTER_INTERNAL_MARGIN = 25;
 
-    private Locale locale = Locale.US;
-    private RankDirection rankDirection;
-    private double rankSeparation;
-    private double nodeSeparation;
+    private final Locale locale;
+    private final RankDirection rankDirection;
+    private final double rankSeparation;
+    private final double nodeSeparation;
+    private final EdgeRouting edgeRouting;
+    private final boolean compact;
 
-    private int groupId = 1;
+    private final ElementStyleCache elementStyleCache;
+
+    // per-export state; each export runs on a single thread, from writeHeader through to writeFooter
+    private final ThreadLocal<ExportContext> context = new ThreadLocal<>();
 
     DOTExporter(RankDirection rankDirection, double rankSeparation, double nodeSeparation) {
+        this(rankDirection, rankSeparation, nodeSeparation, EdgeRouting.Polyline, Locale.US, new ElementStyleCache());
+    }
+
+    DOTExporter(RankDirection rankDirection, double rankSeparation, double nodeSeparation, EdgeRouting edgeRouting, Locale locale, ElementStyleCache elementStyleCache) {
+        this(rankDirection, rankSeparation, nodeSeparation, edgeRouting, locale, elementStyleCache, false);
+    }
+
+    /**
+     * Creates an exporter; in compact mode, element and relationship ids are replaced by dense integer ids (see
+     * CompactIds), nodes have no labels, and attributes common to all nodes are only written once.
+     */
+    DOTExporter(RankDirection rankDirection, double rankSeparation, double nodeSeparation, EdgeRouting edgeRouting, Locale locale, ElementStyleCache elementStyleCache, boolean compact) {
         this.rankDirection = rankDirection;
         this.rankSeparation = rankSeparation;
         this.nodeSeparation = nodeSeparation;
+        this.edgeRouting = edgeRouting;
+        this.locale = locale;
+        this.elementStyleCache = elementStyleCache;
+        this.compact = compact;
     }
 
-    void setLocale(Locale locale) {
-        this.locale = locale;
+    /**
+     * Exports the given view, dispatching to the appropriate export method for its type.
+     */
+    Diagram exportView(ModelView view) {
+        return exportView(view, GraphvizEffort.FULL);
     }
 
-    @Override
-    protected void writeHeader(ModelView view, IndentingWriter writer) {
+    /**
+     * Exports the given view with the given layout effort, dispatching to the appropriate export method for its type.
+     */
+    Diagram exportView(ModelView view, GraphvizEffort effort) {
+        return exportView(view, effort, null);
+    }
+
+    /**
+     * Exports only the given elements of a view (and the relationships between them), so that a connected component
+     * of the view can be laid out on its own. Boundaries are still written, but graphviz doesn't draw empty clusters.
+     */
+    Diagram exportView(ModelView view, GraphvizEffort effort, Set<Element> elements) {
+        ExportContext exportContext = createExportContext(view, effort);
+        exportContext.setElements(elements);
+
+        context.set(exportContext);
+        try {
+            return dispatch(view);
+        } finally {
+            context.remove();
+        }
+    }
+
+    private Diagram dispatch(ModelView view) {
+        if (view instanceof CustomView) {
+            return export((CustomView)view);
+        } else if (view instanceof SystemLandscapeView) {
+            return export((SystemLandscapeView)view);
+        } else if (view instanceof SystemContextView) {
+            return export((SystemContextView)view);
+        } else if (view instanceof ContainerView) {
+            return export((ContainerView)view);
+        } else if (view instanceof ComponentView) {
+            return export((ComponentView)view);
+        } else if (view instanceof DynamicView) {
+            return export((DynamicView)view);
+        } else if (view instanceof DeploymentView) {
+            return export((DeploymentView)view);
+        } else {
+            throw new IllegalArgumentException("Views of type " + view.getClass().getSimpleName() + " are not supported");
+        }
+    }
+
+    ExportContext createExportContext(ModelView view, GraphvizEffort effort) {
+        RankDirection rankDirection = this.rankDirection;
+        double rankSeparation = this.rankSeparation;
+        double nodeSeparation = this.nodeSeparation;
+
         if (view.getAutomaticLayout() != null) {
             if (view.getAutomaticLayout().getRankDirection() == null) {
                 rankDirection = RankDirection.TopBottom;
@@ -62,15 +130,46 @@ class DOTExporter extends AbstractDiagramExporter {
             nodeSeparation = view.getAutomaticLayout().getNodeSeparation();
         }
 
-        rankSeparation = rankSeparation / Constants.STRUCTURIZR_DPI;
-        nodeSeparation = nodeSeparation / Constants.STRUCTURIZR_DPI;
+        ExportContext context = new ExportContext(
+                view,
+                rankDirection,
+                rankSeparation / Constants.STRUCTURIZR_DPI,
+                nodeSeparation / Constants.STRUCTURIZR_DPI,
+                effort,
+                effort.getEdgeRouting(edgeRouting),
+                locale
+        );
+
+        if (compact) {
+            context.setCompactIds(new CompactIds(view));
+        }
+
+        return context;
+    }
+
+    @Override
+    protected void writeHeader(ModelView view, IndentingWriter writer) {
+        ExportContext context = this.context.get();
+        if (context == null || context.getView() != view) {
+            // export(...) has been called directly, rather than via exportView(...)
+            context = createExportContext(view, GraphvizEffort.FULL);
+            this.context.set(context);
+        }
+
+        elementStyleCache.validate(view);
 
         writer.writeLine("digraph {");
         writer.indent();
         writer.writeLine("compound=true");
-        writer.writeLine(String.format(locale, "graph [splines=polyline,rankdir=%s,ranksep=%s,nodesep=%s,fontsize=5]", rankDirection.getCode(), rankSeparation, nodeSeparation));
-        writer.writeLine("node [shape=box,fontsize=5]");
-        writer.writeLine("edge []");
+        if (context.isCompact()) {
+            // nodes have no labels, so there's no need for font sizes
+            writer.writeLine(String.format(locale, "graph [splines=%s,rankdir=%s,ranksep=%s,nodesep=%s%s]", context.getEdgeRouting().getCode(), context.getRankDirection().getCode(), context.getRankSeparation(), context.getNodeSeparation(), context.getEffort().getAttributes()));
+            writer.writeLine("node [shape=box,fixedsize=true,label=\"\"]");
+        } else {
+            writer.writeLine(String.format(locale, "graph [splines=%s,rankdir=%s,ranksep=%s,nodesep=%s%s,fontsize=5]", context.getEdgeRouting().getCode(), context.getRankDirection().getCode(), context.getRankSeparation(), context.getNodeSeparation(), context.getEffort().getAttributes()));
+            writer.writeLine("node [shape=box,fontsize=5]");
+            writer.writeLine("edge []");
+        }
         writer.writeLine();
     }
 
@@ -78,6 +177,8 @@ class DOTExporter extends AbstractDiagramExporter {
     protected void writeFooter(ModelView view, IndentingWriter writer) {
         writer.outdent();
         writer.writeLine("}");
+
+        context.remove();
     }
 
     @Override
@@ -96,7 +197,7 @@ class DOTExporter extends AbstractDiagramExporter {
 
     @Override
     protected void startGroupBoundary(ModelView view, String group, IndentingWriter writer) {
-        writer.writeLine("subgraph \"cluster_group_" + (groupId++) + "\" {");
+        writer.writeLine("subgraph \"cluster_group_" + context.get().nextGroupId() + "\" {");
 
         writer.indent();
         writer.writeLine("margin=" + CLUSTER_INTERNAL_MARGIN);
@@ -111,7 +212,7 @@ class DOTExporter extends AbstractDiagramExporter {
 
     @Override
     protected void startSoftwareSystemBoundary(ModelView view, SoftwareSystem softwareSystem, IndentingWriter writer) {
-        writer.writeLine(String.format("subgraph cluster_%s {", softwareSystem.getId()));
+        writer.writeLine(String.format("subgraph %s {", context.get().getClusterId(softwareSystem.getId())));
         writer.indent();
         writer.writeLine("margin=" + CLUSTER_INTERNAL_MARGIN);
     }
@@ -125,7 +226,7 @@ class DOTExporter extends AbstractDiagramExporter {
 
     @Override
     protected void startContainerBoundary(ModelView view, Container container, IndentingWriter writer) {
-        writer.writeLine(String.format("subgraph cluster_%s {", container.getId()));
+        writer.writeLine(String.format("subgraph %s {", context.get().getClusterId(container.getId())));
         writer.indent();
         writer.writeLine("margin=" + CLUSTER_INTERNAL_MARGIN);
     }
@@ -139,7 +240,7 @@ class DOTExporter extends AbstractDiagramExporter {
 
     @Override
     protected void startDeploymentNodeBoundary(DeploymentView view, DeploymentNode deploymentNode, IndentingWriter writer) {
-        writer.writeLine(String.format("subgraph cluster_%s {", deploymentNode.getId()));
+        writer.writeLine(String.format("subgraph %s {", context.get().getClusterId(deploymentNode.getId())));
         writer.indent();
         writer.writeLine("margin=" + CLUSTER_INTERNAL_MARGIN);
     }
@@ -153,46 +254,60 @@ class DOTExporter extends AbstractDiagramExporter {
 
     @Override
     protected void writeElement(ModelView view, Element element, IndentingWriter writer) {
-        writer.writeLine(String.format(locale, "%s [width=%f,height=%f,fixedsize=true,id=%s,label=\"%s: %s\"]",
-                element.getId(),
-                getElementWidth(view, element.getId()) / Constants.STRUCTURIZR_DPI, // convert Structurizr dimensions to inches
-                getElementHeight(view, element.getId()) / Constants.STRUCTURIZR_DPI, // convert Structurizr dimensions to inches
-                element.getId(),
-                element.getId(),
-                escape(element.getName())
-        ));
+        ExportContext context = this.context.get();
+        if (!context.isIncluded(element)) {
+            return;
+        }
+
+        String id = context.getId(element.getId());
+        DOTWriter dot = context.getDOTWriter()
+                .append(id)
+                .append(" [width=").appendFixed(elementStyleCache.getElementWidth(view, element) / Constants.STRUCTURIZR_DPI) // convert Structurizr dimensions to inches
+                .append(",height=").appendFixed(elementStyleCache.getElementHeight(view, element) / Constants.STRUCTURIZR_DPI); // convert Structurizr dimensions to inches
+
+        if (context.isCompact()) {
+            // fixedsize and the (empty) label are set once, in the node defaults
+            dot.append(",id=").append(id).append(']');
+        } else {
+            dot.append(",fixedsize=true,id=").append(id)
+                    .append(",label=\"").append(id).append(": ").appendEscaped(element.getName())
+                    .append("\"]");
+        }
+        writer.writeLine(dot.toString());
     }
 
     @Override
     protected void writeRelationship(ModelView view, RelationshipView relationshipView, IndentingWriter writer) {
+        ExportContext context = this.context.get();
+
         if (relationshipView.getRelationship().getSource() instanceof DeploymentNode || relationshipView.getRelationship().getDestination() instanceof DeploymentNode) {
+            DeploymentNodeIndex deploymentNodeIndex = context.getDeploymentNodeIndex();
+
             Element source = relationshipView.getRelationship().getSource();
             if (source instanceof DeploymentNode) {
-                source = findElementInside((DeploymentNode)source, view);
+                source = deploymentNodeIndex.findElementInside((DeploymentNode)source);
             }
 
             Element destination = relationshipView.getRelationship().getDestination();
             if (destination instanceof DeploymentNode) {
-                destination = findElementInside((DeploymentNode)destination, view);
+                destination = deploymentNodeIndex.findElementInside((DeploymentNode)destination);
             }
 
-            if (source != null && destination != null) {
-                String clusterConfig = "";
+            if (source != null && destination != null && context.isIncluded(source) && context.isIncluded(destination)) {
+                DOTWriter dot = context.getDOTWriter()
+                        .append(context.getId(source.getId()))
+                        .append(" -> ").append(context.getId(destination.getId()))
+                        .append(" [id=").append(context.getId(relationshipView.getId()));
 
                 if (relationshipView.getRelationship().getSource() instanceof DeploymentNode) {
-                    clusterConfig += ",ltail=cluster_" + relationshipView.getRelationship().getSource().getId();
+                    dot.append(",ltail=").append(context.getClusterId(relationshipView.getRelationship().getSource().getId()));
                 }
 
                 if (relationshipView.getRelationship().getDestination() instanceof DeploymentNode) {
-                    clusterConfig += ",lhead=cluster_" + relationshipView.getRelationship().getDestination().getId();
+                    dot.append(",lhead=").append(context.getClusterId(relationshipView.getRelationship().getDestination().getId()));
                 }
 
-                writer.writeLine(String.format(locale, "%s -> %s [id=%s%s]",
-                        source.getId(),
-                        destination.getId(),
-                        relationshipView.getId(),
-                        clusterConfig
-                ));
+                writer.writeLine(dot.append(']').toString());
             }
         } else {
             Element source = relationshipView.getRelationship().getSource();
@@ -203,11 +318,16 @@ class DOTExporter extends AbstractDiagramExporter {
                 destination = relationshipView.getRelationship().getSource();
             }
 
-            writer.writeLine(String.format(locale, "%s -> %s [id=%s]",
-                    source.getId(),
-                    destination.getId(),
-                    relationshipView.getId()
-            ));
+            if (!context.isIncluded(source) || !context.isIncluded(destination)) {
+                return;
+            }
+
+            writer.writeLine(context.getDOTWriter()
+                    .append(context.getId(source.getId()))
+                    .append(" -> ").append(context.getId(destination.getId()))
+                    .append(" [id=").append(context.getId(relationshipView.getId()))
+                    .append(']')
+                    .toString());
         }
     }
 
@@ -559,14 +679,6 @@ class DOTExporter extends AbstractDiagramExporter {
 //        ));
 //        writer.write("\n");
 //    }
-//
-    private String escape(String s) {
-        if (StringUtils.isNullOrEmpty(s)) {
-            return s;
-        } else {
-            return s.replaceAll("\"", "\\\\\"");
-        }
-    }
 //
 //    private void writeRelationships(ModelView view, Writer writer) throws Exception {
 //        writer.write("\n");
@@ -575,46 +687,4 @@ class DOTExporter extends AbstractDiagramExporter {
 //        }
 //    }
 
-    private Element findElementInside(DeploymentNode deploymentNode, ModelView view) {
-        for (SoftwareSystemInstance softwareSystemInstance : deploymentNode.getSoftwareSystemInstances()) {
-            if (view.isElementInView(softwareSystemInstance)) {
-                return softwareSystemInstance;
-            }
-        }
-
-        for (ContainerInstance containerInstance : deploymentNode.getContainerInstances()) {
-            if (view.isElementInView(containerInstance)) {
-                return containerInstance;
-            }
-        }
-
-        for (InfrastructureNode infrastructureNode : deploymentNode.getInfrastructureNodes()) {
-            if (view.isElementInView(infrastructureNode)) {
-                return infrastructureNode;
-            }
-        }
-
-        if (deploymentNode.hasChildren()) {
-            for (DeploymentNode child : deploymentNode.getChildren()) {
-                Element element = findElementInside(child, view);
-
-                if (element != null) {
-                    return element;
-                }
-            }
-        }
-
-        return null;
-    }
-
-    private int getElementWidth(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getWidth();
-    }
-
-    private int getElementHeight(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getHeight();
-    }
-
 }
\ No newline at end of file
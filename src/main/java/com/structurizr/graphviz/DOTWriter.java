@@ -0,0 +1,125 @@
+package com.structurizr.graphviz;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * A small, reusable buffer for building DOT statements without going through String.format for every node and edge.
+ * Numbers are written with fixed precision, producing the same output as the "%f" conversion would for the
+ * configured locale.
+ */
+class DOTWriter {
+
+    private static final int FRACTION_DIGITS = 6;
+    private static final long FRACTION_SCALE = 1_000_000L;
+
+    // doubles hold integers exactly up to 2^53 (about 9e15); values up to 1e9, scaled by FRACTION_SCALE, stay well
+    // below that, so larger values are left to String.format
+    private static final double MAXIMUM_FAST_PATH_VALUE = 1_000_000_000d;
+
+    // how close a scaled value can be to a rounding tie (half way between two results) before deferring to String.format
+    private static final double ROUNDING_TIE_TOLERANCE = 1e-6;
+
+    private final Locale locale;
+    private final char decimalSeparator;
+    private final char zeroDigit;
+
+    private final StringBuilder buffer = new StringBuilder(128);
+    private final char[] digits = new char[20];
+
+    DOTWriter(Locale locale) {
+        this.locale = locale;
+
+        DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+        this.decimalSeparator = symbols.getDecimalSeparator();
+        this.zeroDigit = symbols.getZeroDigit();
+    }
+
+    DOTWriter reset() {
+        buffer.setLength(0);
+        return this;
+    }
+
+    DOTWriter append(String s) {
+        buffer.append(s);
+        return this;
+    }
+
+    DOTWriter append(char c) {
+        buffer.append(c);
+        return this;
+    }
+
+    /**
+     * Appends a double with six fraction digits, equivalent to String.format(locale, "%f", d).
+     */
+    DOTWriter appendFixed(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d) || Math.abs(d) >= MAXIMUM_FAST_PATH_VALUE) {
+            buffer.append(String.format(locale, "%f", d));
+            return this;
+        }
+
+        double scaled = Math.abs(d) * FRACTION_SCALE;
+        double remainder = scaled - Math.floor(scaled);
+        if (Math.abs(remainder - 0.5) < ROUNDING_TIE_TOLERANCE) {
+            // too close to a rounding tie to be sure of matching the decimal (HALF_UP) rounding that %f uses
+            buffer.append(String.format(locale, "%f", d));
+            return this;
+        }
+
+        long value = Math.round(scaled);
+        if (d < 0 || (d == 0 && 1 / d < 0)) {
+            // %f keeps the sign of negative values, including those that round to zero
+            buffer.append('-');
+        }
+
+        long integerPart = value / FRACTION_SCALE;
+        long fractionPart = value % FRACTION_SCALE;
+
+        appendDigits(integerPart, 1);
+        buffer.append(decimalSeparator);
+        appendDigits(fractionPart, FRACTION_DIGITS);
+
+        return this;
+    }
+
+    /**
+     * Appends a string for use inside a double-quoted DOT string, escaping any double quotes.
+     */
+    DOTWriter appendEscaped(String s) {
+        if (s == null) {
+            buffer.append("null");
+            return this;
+        }
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                buffer.append('\\');
+            }
+            buffer.append(c);
+        }
+
+        return this;
+    }
+
+    private void appendDigits(long value, int minimumDigits) {
+        int position = digits.length;
+        do {
+            digits[--position] = (char)(zeroDigit + (int)(value % 10));
+            value = value / 10;
+        } while (value > 0);
+
+        while (digits.length - position < minimumDigits) {
+            digits[--position] = zeroDigit;
+        }
+
+        buffer.append(digits, position, digits.length - position);
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.*;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps each deployment node in a view to the element inside it (a software system instance, container instance,
+ * or infrastructure node, possibly inside a child deployment node) that is used as the endpoint for relationships
+ * to/from that deployment node. Built in a single pass over the view, so lookups are O(1) per relationship.
+ */
+class DeploymentNodeIndex {
+
+    private final Set<Element> elementsInView = new HashSet<>();
+    private final Map<DeploymentNode, Element> elementsInside = new HashMap<>();
+
+    DeploymentNodeIndex(ModelView view) {
+        for (ElementView elementView : view.getElements()) {
+            elementsInView.add(elementView.getElement());
+        }
+
+        for (Element element : elementsInView) {
+            if (element instanceof DeploymentNode) {
+                findElementInside((DeploymentNode)element);
+            }
+        }
+    }
+
+    /**
+     * Finds the in-view element that represents the given deployment node.
+     *
+     * @param deploymentNode    a DeploymentNode
+     * @return  an Element, or null if there are no elements inside the deployment node in this view
+     */
+    Element findElementInside(DeploymentNode deploymentNode) {
+        if (elementsInside.containsKey(deploymentNode)) {
+            return elementsInside.get(deploymentNode);
+        }
+
+        Element element = search(deploymentNode);
+        elementsInside.put(deploymentNode, element);
+
+        return element;
+    }
+
+    private Element search(DeploymentNode deploymentNode) {
+        for (SoftwareSystemInstance softwareSystemInstance : deploymentNode.getSoftwareSystemInstances()) {
+            if (elementsInView.contains(softwareSystemInstance)) {
+                return softwareSystemInstance;
+            }
+        }
+
+        for (ContainerInstance containerInstance : deploymentNode.getContainerInstances()) {
+            if (elementsInView.contains(containerInstance)) {
+                return containerInstance;
+            }
+        }
+
+        for (InfrastructureNode infrastructureNode : deploymentNode.getInfrastructureNodes()) {
+            if (elementsInView.contains(infrastructureNode)) {
+                return infrastructureNode;
+            }
+        }
+
+        if (deploymentNode.hasChildren()) {
+            for (DeploymentNode child : deploymentNode.getChildren()) {
+                Element element = findElementInside(child);
+
+                if (element != null) {
+                    return element;
+                }
+            }
+        }
+
+        return null;
+    }
+
+}
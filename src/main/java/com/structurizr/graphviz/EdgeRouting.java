@@ -0,0 +1,38 @@
+package com.structurizr.graphviz;
+
+/**
+ * The various ways that graphviz can route edges. Routing edges around nodes and clusters is a large part of the
+ * layout time for dense views, so the cheaper options are useful when only node positions are required.
+ */
+public enum EdgeRouting {
+
+    /**
+     * Edges are routed around nodes and clusters as polylines, and the resulting vertices are applied to the view.
+     */
+    Polyline("polyline"),
+
+    /**
+     * Edges are drawn as straight lines, and no vertices are applied to the view.
+     */
+    Line("line"),
+
+    /**
+     * Edges are not routed at all (positions only), and no vertices are applied to the view.
+     */
+    None("none");
+
+    private String code;
+
+    EdgeRouting(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    boolean hasVertices() {
+        return this == Polyline;
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Element;
+import com.structurizr.model.GroupableElement;
+import com.structurizr.util.StringUtils;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Picks the graphviz effort level for a view so that its layout fits within a time budget. The initial choice is
+ * based on the number of nodes, edges and clusters in the view (and the depth to which clusters are nested);
+ * subsequent choices are calibrated using the time that graphviz actually took for the same view.
+ */
+class EffortTuner {
+
+    // rough cost model for a full quality dot layout: milliseconds = COST_FACTOR * (nodes + edges) ^ COST_EXPONENT
+    private static final double COST_FACTOR = 0.05;
+    private static final double COST_EXPONENT = 1.5;
+    private static final double CLUSTER_COST_FACTOR = 0.1;
+    private static final double CLUSTER_DEPTH_COST_FACTOR = 0.25;
+
+    // weight given to the most recent observation when calibrating
+    private static final double SMOOTHING = 0.5;
+
+    // long-running processes (e.g. a layout server) see an unbounded number of views over time
+    private static final int DEFAULT_MAXIMUM_NUMBER_OF_OBSERVATIONS = 10000;
+
+    private final long timeBudget;
+
+    // estimated full quality layout time, in milliseconds, per view key; the least recently used are evicted first
+    private final Map<String, Double> observedCosts;
+
+    EffortTuner(long timeBudget) {
+        this(timeBudget, DEFAULT_MAXIMUM_NUMBER_OF_OBSERVATIONS);
+    }
+
+    EffortTuner(long timeBudget, int maximumNumberOfObservations) {
+        if (maximumNumberOfObservations < 1) {
+            throw new IllegalArgumentException("The maximum number of observations must be 1 or more");
+        }
+
+        this.timeBudget = timeBudget;
+        this.observedCosts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > maximumNumberOfObservations;
+            }
+        });
+    }
+
+    GraphvizEffort choose(ModelView view) {
+        if (timeBudget <= 0) {
+            return GraphvizEffort.FULL;
+        }
+
+        double cost = getCost(view);
+        for (GraphvizEffort effort : GraphvizEffort.LEVELS) {
+            if (cost * effort.getRelativeCost() <= timeBudget) {
+                return effort;
+            }
+        }
+
+        return GraphvizEffort.LEVELS.get(GraphvizEffort.LEVELS.size() - 1);
+    }
+
+    /**
+     * Estimates the time graphviz will take to lay out the view, at the effort level that would be chosen for it.
+     *
+     * @return  an estimated duration, in milliseconds
+     */
+    double estimate(ModelView view) {
+        return getCost(view) * choose(view).getRelativeCost();
+    }
+
+    private double getCost(ModelView view) {
+        Double observedCost = observedCosts.get(getKey(view));
+        if (observedCost != null) {
+            return observedCost;
+        } else {
+            return estimateCost(view);
+        }
+    }
+
+    void record(ModelView view, GraphvizEffort effort, long duration) {
+        // observations are recorded even without a time budget, as they're also used to schedule views
+        double observedCost = duration / effort.getRelativeCost();
+        observedCosts.merge(getKey(view), observedCost, (previous, latest) -> (previous * (1 - SMOOTHING)) + (latest * SMOOTHING));
+    }
+
+    /**
+     * Observations are keyed by view key and size, so that views with the same key in different workspaces (e.g.
+     * when an instance is shared across a batch of workspaces) don't calibrate each other.
+     */
+    private static String getKey(ModelView view) {
+        return view.getKey() + "/" + view.getElements().size() + "/" + view.getRelationships().size();
+    }
+
+    static double estimateCost(ModelView view) {
+        int nodes = 0;
+        int depth = 0;
+        Set<Object> clusters = new HashSet<>();
+
+        for (ElementView elementView : view.getElements()) {
+            Element element = elementView.getElement();
+            if (element instanceof DeploymentNode) {
+                clusters.add(element);
+                depth = Math.max(depth, getDepth((DeploymentNode)element));
+                continue;
+            }
+
+            nodes++;
+            if (element.getParent() != null) {
+                clusters.add(element.getParent());
+            }
+            if (element instanceof GroupableElement && !StringUtils.isNullOrEmpty(((GroupableElement)element).getGroup())) {
+                clusters.add(((GroupableElement)element).getGroup());
+            }
+        }
+
+        int edges = view.getRelationships().size();
+
+        return COST_FACTOR * Math.pow(nodes + edges, COST_EXPONENT) *
+                (1 + (CLUSTER_COST_FACTOR * clusters.size())) *
+                (1 + (CLUSTER_DEPTH_COST_FACTOR * Math.max(0, depth - 1)));
+    }
+
+    private static int getDepth(DeploymentNode deploymentNode) {
+        int depth = 0;
+        Element element = deploymentNode;
+        while (element instanceof DeploymentNode) {
+            depth++;
+            element = element.getParent();
+        }
+
+        return depth;
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementStyle;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.Styles;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches resolved element styles by tag set, so that each distinct combination of tags is only resolved a few times
+ * per view rather than once per element, for every width, height and shape lookup. Entries are kept separately for
+ * each Styles instance (Styles doesn't override equals, so the weak map is keyed by identity), so several workspaces
+ * can be laid out at the same time without reading each other's styles.
+ *
+ * Each view's tag sets are resolved again when the view is validated, and any entry whose width, height or shape
+ * has changed is replaced; this picks up styles loaded from themes as well as those defined in the workspace.
+ */
+class ElementStyleCache {
+
+    private final Map<Styles, StyleEntries> entries = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Checks the cached styles are still valid for the given view; call once per view, before resolving styles.
+     */
+    void validate(ModelView view) {
+        Styles styles = getStyles(view);
+        StyleEntries styleEntries = getStyleEntries(view);
+
+        int themes = Arrays.hashCode(view.getViewSet().getConfiguration().getThemes());
+        if (themes != styleEntries.themes) {
+            styleEntries.elementStyles.clear();
+            styleEntries.themes = themes;
+        }
+
+        Set<String> tagSets = new HashSet<>();
+        for (ElementView elementView : view.getElements()) {
+            Element element = elementView.getElement();
+            if (tagSets.add(element.getTags())) {
+                ElementStyle elementStyle = styles.findElementStyle(element);
+                ElementStyle cachedElementStyle = styleEntries.elementStyles.get(element.getTags());
+
+                if (cachedElementStyle == null || !isLayoutEquivalent(cachedElementStyle, elementStyle)) {
+                    styleEntries.elementStyles.put(element.getTags(), elementStyle);
+                }
+            }
+        }
+    }
+
+    ElementStyle findElementStyle(ModelView view, Element element) {
+        Styles styles = getStyles(view);
+
+        return getStyleEntries(view).elementStyles.computeIfAbsent(element.getTags(), tags -> styles.findElementStyle(element));
+    }
+
+    int getElementWidth(ModelView view, Element element) {
+        return findElementStyle(view, element).getWidth();
+    }
+
+    int getElementHeight(ModelView view, Element element) {
+        return findElementStyle(view, element).getHeight();
+    }
+
+    private Styles getStyles(ModelView view) {
+        return view.getViewSet().getConfiguration().getStyles();
+    }
+
+    private StyleEntries getStyleEntries(ModelView view) {
+        return entries.computeIfAbsent(getStyles(view), styles -> new StyleEntries());
+    }
+
+    private boolean isLayoutEquivalent(ElementStyle a, ElementStyle b) {
+        return Objects.equals(a.getWidth(), b.getWidth()) &&
+                Objects.equals(a.getHeight(), b.getHeight()) &&
+                a.getShape() == b.getShape();
+    }
+
+    private static final class StyleEntries {
+
+        // a hash of the theme locations, so that removing a theme clears the styles it provided
+        private volatile int themes;
+
+        private final Map<String, ElementStyle> elementStyles = new ConcurrentHashMap<>();
+
+    }
+
+}
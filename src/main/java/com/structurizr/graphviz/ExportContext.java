@@ -0,0 +1,117 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.Element;
+import com.structurizr.view.ModelView;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Holds the state for a single DOT export, so that a DOTExporter instance can be reused and shared between threads.
+ */
+class ExportContext {
+
+    private final ModelView view;
+    private final RankDirection rankDirection;
+    private final double rankSeparation;
+    private final double nodeSeparation;
+    private final GraphvizEffort effort;
+    private final EdgeRouting edgeRouting;
+    private Set<Element> elements;
+    private CompactIds compactIds;
+
+    private final DOTWriter dot;
+    private int groupId = 1;
+    private DeploymentNodeIndex deploymentNodeIndex;
+
+    ExportContext(ModelView view, RankDirection rankDirection, double rankSeparation, double nodeSeparation, GraphvizEffort effort, EdgeRouting edgeRouting, Locale locale) {
+        this.view = view;
+        this.rankDirection = rankDirection;
+        this.rankSeparation = rankSeparation;
+        this.nodeSeparation = nodeSeparation;
+        this.effort = effort;
+        this.edgeRouting = edgeRouting;
+        this.dot = new DOTWriter(locale);
+    }
+
+    ModelView getView() {
+        return view;
+    }
+
+    RankDirection getRankDirection() {
+        return rankDirection;
+    }
+
+    /**
+     * Gets the rank separation, in inches.
+     */
+    double getRankSeparation() {
+        return rankSeparation;
+    }
+
+    /**
+     * Gets the node separation, in inches.
+     */
+    double getNodeSeparation() {
+        return nodeSeparation;
+    }
+
+    GraphvizEffort getEffort() {
+        return effort;
+    }
+
+    EdgeRouting getEdgeRouting() {
+        return edgeRouting;
+    }
+
+    /**
+     * Restricts the export to the given elements (and the relationships between them); null includes everything.
+     */
+    void setElements(Set<Element> elements) {
+        this.elements = elements;
+    }
+
+    boolean isIncluded(Element element) {
+        return elements == null || elements.contains(element);
+    }
+
+    void setCompactIds(CompactIds compactIds) {
+        this.compactIds = compactIds;
+    }
+
+    boolean isCompact() {
+        return compactIds != null;
+    }
+
+    /**
+     * Gets the id to write to the DOT file for the given element or relationship id.
+     */
+    String getId(String id) {
+        return compactIds != null ? compactIds.get(id) : id;
+    }
+
+    /**
+     * Gets the id to write to the DOT file for the cluster drawn for the given software system, container or
+     * deployment node id.
+     */
+    String getClusterId(String id) {
+        return compactIds != null ? compactIds.getClusterId(id) : CompactIds.CLUSTER_PREFIX + id;
+    }
+
+    DOTWriter getDOTWriter() {
+        return dot.reset();
+    }
+
+    int nextGroupId() {
+        return groupId++;
+    }
+
+    DeploymentNodeIndex getDeploymentNodeIndex() {
+        if (deploymentNodeIndex == null) {
+            deploymentNodeIndex = new DeploymentNodeIndex(view);
+        }
+
+        return deploymentNodeIndex;
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.structurizr.graphviz;
+
+/**
+ * Thrown when a view is too large to be laid out by graphviz within the memory available.
+ */
+public class GraphvizAdmissionException extends GraphvizException {
+
+    public GraphvizAdmissionException(String message) {
+        super(message);
+    }
+
+}
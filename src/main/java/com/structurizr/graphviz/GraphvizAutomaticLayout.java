@@ -2,21 +2,30 @@ package com.structurizr.graphviz;
 
 import com.structurizr.Workspace;
 import com.structurizr.export.Diagram;
+import com.structurizr.model.Element;
 import com.structurizr.view.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.List;
-import java.util.Locale;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
 
 /**
  * Applies the graphviz automatic layout to views in a Structurizr workspace.
  *
- * Note: this class assumes that the "dot" command is available.
+ * Note: this class assumes that the "dot" command is available (see setGraphvizExecutable).
  */
 public class GraphvizAutomaticLayout {
 
@@ -25,9 +34,21 @@ public class GraphvizAutomaticLayout {
     private static final String DOT_EXECUTABLE = "dot";
     private static final String USE_SVG_OUTPUT_FORMAT_OPTION = "-Tsvg";
     private static final String AUTOMATICALLY_GENERATE_OUTPUT_FILE_OPTION = "-O";
+    private static final String VERBOSE_OPTION = "-v";
+    private static final String SFDP_LAYOUT_OPTION = "-Ksfdp";
     private static final String DOT_FILE_EXTENSION = ".dot";
+    private static final String STDERR_FILE_EXTENSION = ".dot.stderr";
+    private static final String OUTPUT_FORMAT_OPTION = "-T";
+    private static final String SVG_OUTPUT_FORMAT = "svg";
+    private static final Pattern OUTPUT_FORMAT_PATTERN = Pattern.compile("[a-z0-9_]+");
+
+    private static final int REDUCED_EFFORT_LEVEL = 2;
+
+    // components from all views (and instances) share one pool, rather than each view creating and tearing down its own
+    private static final ExecutorService componentExecutor = createComponentExecutor();
 
     private final File path;
+    private String graphvizExecutable = DOT_EXECUTABLE;
 
     private RankDirection rankDirection = RankDirection.TopBottom;
     private double rankSeparation = 1.0;
@@ -37,25 +58,72 @@ public class GraphvizAutomaticLayout {
     private boolean changePaperSize = true;
 
     private Locale locale = Locale.US;
+    private EdgeRouting edgeRouting = EdgeRouting.Polyline;
+    private boolean compactExport = false;
+    private double vertexSimplificationTolerance = 0;
+    private final Set<String> outputFormats = new LinkedHashSet<>();
+    private EffortTuner effortTuner = new EffortTuner(0);
+    private final List<LayoutStep> layoutSteps = new ArrayList<>();
+    private boolean layoutComponentsSeparately = false;
+    private boolean layoutDeploymentNodesSeparately = false;
+    private boolean fastPathForTrivialViews = false;
+    private LayoutPipeline<PipelineJob> pipeline;
+    private ConcurrencyController concurrencyController;
+    private ResourceLimits resourceLimits;
+    private LayoutService layoutService;
+    private String tenant;
+    private LayoutService.Lane lane;
+
+    private final ElementStyleCache elementStyleCache = new ElementStyleCache();
+    private DOTExporter exporter;
 
+    private boolean recordPhaseTimings = false;
+    private final Map<String, LayoutReport> reports = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Creates a new instance, using a RAM-backed location (/dev/shm) for temporary files when available, or the
+     * system temporary directory otherwise.
+     */
     public GraphvizAutomaticLayout() {
-        this(new File("."));
+        this(ScratchDirectory.getDefaultParent());
     }
 
+    /**
+     * Creates a new instance. The files for each view are written to their own temporary directory, created inside
+     * the given path, which is deleted once the view has been laid out.
+     *
+     * @param path      the parent directory for temporary files
+     */
     public GraphvizAutomaticLayout(File path) {
         this.path = path;
     }
 
+    /**
+     * Specifies the graphviz command to run, for when "dot" is not on the path (or for testing).
+     *
+     * @param graphvizExecutable    the name of, or path to, the dot executable
+     */
+    public void setGraphvizExecutable(String graphvizExecutable) {
+        if (graphvizExecutable == null || graphvizExecutable.trim().isEmpty()) {
+            throw new IllegalArgumentException("A graphviz executable must be specified");
+        }
+
+        this.graphvizExecutable = graphvizExecutable;
+    }
+
     public void setRankDirection(RankDirection rankDirection) {
         this.rankDirection = rankDirection;
+        this.exporter = null;
     }
 
     public void setRankSeparation(double rankSeparation) {
         this.rankSeparation = rankSeparation;
+        this.exporter = null;
     }
 
     public void setNodeSeparation(double nodeSeparation) {
         this.nodeSeparation = nodeSeparation;
+        this.exporter = null;
     }
 
     public void setMargin(int margin) {
@@ -73,17 +141,268 @@ public class GraphvizAutomaticLayout {
      */
     public void setLocale(Locale locale) {
         this.locale = locale;
+        this.exporter = null;
+    }
+
+    /**
+     * Sets how graphviz should route edges; the default is polyline routing. Line and None skip the expensive
+     * edge routing phase, producing a faster layout where only the element positions are applied to views.
+     *
+     * @param edgeRouting   an EdgeRouting instance
+     */
+    public void setEdgeRouting(EdgeRouting edgeRouting) {
+        this.edgeRouting = edgeRouting;
+        this.exporter = null;
+    }
+
+    /**
+     * Specifies whether a compact DOT file should be passed to graphviz, using short numeric ids and no node labels.
+     * Labels don't affect the layout (nodes have a fixed size), so this only reduces the amount of text that
+     * graphviz has to read, process and write.
+     *
+     * @param compactExport     true to use compact DOT files, false otherwise
+     */
+    public void setCompactExport(boolean compactExport) {
+        this.compactExport = compactExport;
+        this.exporter = null;
+    }
+
+    /**
+     * Sets the tolerance used to simplify relationship vertices after layout. Vertices that lie within this distance
+     * of a straight line between their neighbours are removed, as long as that straight line doesn't pass through
+     * another element, or a boundary the relationship doesn't start or end in. This reduces the size of the
+     * workspace, with little visible change to the diagram.
+     *
+     * @param vertexSimplificationTolerance     a distance in Structurizr coordinates (zero to disable simplification)
+     */
+    public void setVertexSimplificationTolerance(double vertexSimplificationTolerance) {
+        if (vertexSimplificationTolerance < 0) {
+            throw new IllegalArgumentException("The vertex simplification tolerance must be zero or more");
+        }
+
+        this.vertexSimplificationTolerance = vertexSimplificationTolerance;
+    }
+
+    /**
+     * Asks graphviz to render the view in the given format (e.g. "svg", "png" or "pdf") as part of the same run that
+     * computes the layout, so that no second run is needed to produce previews. The rendered output is available via
+     * LayoutReport.getOutput for each view. Please note that the rendering reflects the DOT file used for layout,
+     * so it has no styling (and no labels, when using the compact export); it's also not available when components
+     * or deployment nodes are laid out separately.
+     *
+     * @param format    a graphviz output format
+     */
+    public void addOutputFormat(String format) {
+        if (format == null || !OUTPUT_FORMAT_PATTERN.matcher(format).matches()) {
+            throw new IllegalArgumentException("\"" + format + "\" is not a valid output format");
+        }
+
+        outputFormats.add(format);
     }
 
-    private DOTExporter createDOTExporter() {
-        DOTExporter exporter = new DOTExporter(rankDirection, rankSeparation, nodeSeparation);
-        exporter.setLocale(locale);
+    /**
+     * Sets a target time budget for laying out each view. When set, the graphviz effort settings (mclimit, nslimit,
+     * searchsize, remincross and edge routing) are chosen per view, based upon the number of nodes, edges and
+     * clusters, and the time taken to lay out the same view previously. Small views are always laid out at full
+     * quality.
+     *
+     * @param timeBudget    the time budget per view, in milliseconds (zero or less to always use full quality)
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.effortTuner = new EffortTuner(timeBudget);
+    }
+
+    /**
+     * Adds a tier to the layout fallback chain. Tiers are tried in the order they are added, each with its own
+     * timeout, until one of them produces a layout; the tier used is recorded in the layout report for each view.
+     * If no tiers are added, graphviz dot is used with no timeout.
+     *
+     * @param tier      a LayoutTier
+     * @param timeout   the maximum time allowed for this tier, in milliseconds (zero or less for no timeout)
+     */
+    public void addLayoutTier(LayoutTier tier, long timeout) {
+        if (tier == null) {
+            throw new IllegalArgumentException("A layout tier must be specified");
+        }
+
+        layoutSteps.add(new LayoutStep(tier, timeout));
+    }
+
+    /**
+     * Specifies whether the connected components of each view (groups of elements linked by relationships, or drawn
+     * inside the same boundary) should be laid out separately. Each component is laid out by its own graphviz
+     * process, in parallel, and the results are then packed side by side, across the rank direction.
+     *
+     * @param layoutComponentsSeparately    true to lay out components separately, false otherwise
+     */
+    public void setLayoutComponentsSeparately(boolean layoutComponentsSeparately) {
+        this.layoutComponentsSeparately = layoutComponentsSeparately;
+    }
+
+    /**
+     * Specifies whether deployment views should be laid out hierarchically. Each deployment node is laid out by its
+     * own graphviz process (in parallel, from the innermost deployment nodes outwards) and then placed as a
+     * fixed-size block inside its parent. This avoids the cost of graphviz laying out deeply nested clusters, at the
+     * expense of relationships that cross a deployment node boundary being drawn as straight lines.
+     *
+     * @param layoutDeploymentNodesSeparately   true to lay out deployment nodes separately, false otherwise
+     */
+    public void setLayoutDeploymentNodesSeparately(boolean layoutDeploymentNodesSeparately) {
+        this.layoutDeploymentNodesSeparately = layoutDeploymentNodesSeparately;
+    }
+
+    /**
+     * Specifies whether trivial views (those without relationships, and without boundaries other than deployment
+     * nodes) should be laid out inside the JVM, without the cost of starting a graphviz process. Views without
+     * boundaries are laid out as dot would, in a single rank; deployment views are laid out hierarchically (see
+     * setLayoutDeploymentNodesSeparately). Views are always passed to graphviz when output formats have been
+     * requested.
+     *
+     * @param fastPathForTrivialViews   true to lay out trivial views without graphviz, false otherwise (the default)
+     */
+    public void setFastPathForTrivialViews(boolean fastPathForTrivialViews) {
+        this.fastPathForTrivialViews = fastPathForTrivialViews;
+    }
+
+    /**
+     * Specifies that apply(Workspace) should lay out views using a pipeline of three stages (DOT export, graphviz and
+     * SVG parsing), each with its own number of threads, rather than one view after another. The stages are connected
+     * by bounded queues, so only a fixed number of views are in flight at any time. Views are started in order of
+     * their estimated layout time, longest first. All views are attempted, even if
+     * some of them fail; the first failure is then thrown.
+     *
+     * @param exportThreads     the number of threads exporting views to DOT
+     * @param graphvizThreads   the number of graphviz processes to run concurrently
+     * @param parseThreads      the number of threads parsing the graphviz output and applying it to views
+     */
+    public void setPipelineThreads(int exportThreads, int graphvizThreads, int parseThreads) {
+        this.pipeline = new LayoutPipeline<>(exportThreads, graphvizThreads, parseThreads);
+    }
+
+    /**
+     * Sets a controller that limits how many graphviz processes run at the same time, adapting to the CPU and memory
+     * available. The same controller can (and should) be shared by all instances in a process.
+     *
+     * @param concurrencyController     a ConcurrencyController instance, or null for no limit
+     */
+    public void setConcurrencyController(ConcurrencyController concurrencyController) {
+        this.concurrencyController = concurrencyController;
+    }
+
+    /**
+     * Sets limits on the memory, CPU time, scheduling priority and CPUs available to each graphviz process
+     * (Linux only). A view whose graphviz process exceeds its memory or CPU time limit fails with a
+     * GraphvizResourceLimitExceededException.
+     *
+     * @param resourceLimits    a ResourceLimits instance, or null for no limits
+     */
+    public void setResourceLimits(ResourceLimits resourceLimits) {
+        this.resourceLimits = resourceLimits;
+    }
+
+    /**
+     * Sets a (process-wide) layout service, which schedules the graphviz runs for this instance fairly alongside
+     * those of other instances, and records their queueing and processing times against the given tenant.
+     *
+     * @param layoutService     a LayoutService instance, or null to run graphviz straight away
+     * @param tenant            the tenant that layouts by this instance are for
+     * @param lane              the priority lane (e.g. Interactive for previews, Batch for whole workspaces)
+     */
+    public void setLayoutService(LayoutService layoutService, String tenant, LayoutService.Lane lane) {
+        if (layoutService != null && (tenant == null || lane == null)) {
+            throw new IllegalArgumentException("A tenant and lane must be specified");
+        }
+
+        this.layoutService = layoutService;
+        this.tenant = tenant;
+        this.lane = lane;
+    }
+
+    /**
+     * Specifies whether graphviz should be run in verbose mode, so that the time taken by each of its layout
+     * phases (rank, mincross, position, splines) can be recorded in the layout report for each view.
+     *
+     * @param recordPhaseTimings    true to record phase timings, false otherwise
+     */
+    public void setRecordPhaseTimings(boolean recordPhaseTimings) {
+        this.recordPhaseTimings = recordPhaseTimings;
+    }
+
+    /**
+     * Gets the layout report for the view with the given key.
+     *
+     * @param viewKey   the key of a view that has been laid out
+     * @return  a LayoutReport instance, or null if the view has not been laid out
+     */
+    public LayoutReport getReport(String viewKey) {
+        return reports.get(viewKey);
+    }
+
+    /**
+     * Gets the layout reports for all views that have been laid out, in the order they were laid out.
+     *
+     * @return  a collection of LayoutReport instances
+     */
+    public Collection<LayoutReport> getReports() {
+        synchronized (reports) {
+            return List.copyOf(reports.values());
+        }
+    }
+
+    /**
+     * Estimates how long graphviz will take to lay out the given view, based on the number of elements,
+     * relationships and (nested) clusters it contains, calibrated by the time taken by any previous layouts of a view
+     * with the same key. This is used to lay out the most expensive views first.
+     *
+     * @param view      a view
+     * @return  an estimated duration, in milliseconds
+     */
+    public double getEstimatedDuration(ModelView view) {
+        return effortTuner.estimate(view);
+    }
+
+    /**
+     * Shares the effort tuner (time budget and observed layout times) of the given instance, so that timings
+     * recorded by either instance are used by both to choose effort levels and estimate durations.
+     */
+    void shareEffortTuner(GraphvizAutomaticLayout layout) {
+        this.effortTuner = layout.effortTuner;
+    }
+
+    /**
+     * Orders views so that those with the longest estimated layout time come first; when views are laid out
+     * concurrently, this stops an expensive view that starts last from determining the overall time taken.
+     */
+    List<ModelView> schedule(List<ModelView> views) {
+        Map<ModelView, Double> estimates = new HashMap<>();
+        for (ModelView view : views) {
+            estimates.put(view, getEstimatedDuration(view));
+        }
+
+        List<ModelView> scheduledViews = new ArrayList<>(views);
+        scheduledViews.sort(Comparator.comparing(estimates::get, Comparator.reverseOrder()));
+
+        return scheduledViews;
+    }
+
+    /**
+     * Removes all layout reports, so that long-lived instances don't accumulate them.
+     */
+    void clearReports() {
+        reports.clear();
+    }
+
+    private synchronized DOTExporter getDOTExporter() {
+        // the exporter holds no per-export state, so one instance is shared by all views until the settings change
+        if (exporter == null) {
+            exporter = new DOTExporter(rankDirection, rankSeparation, nodeSeparation, edgeRouting, locale, elementStyleCache, compactExport);
+        }
 
         return exporter;
     }
 
-    private void writeFile(Diagram diagram) throws Exception {
-        File file = new File(path, diagram.getKey() + DOT_FILE_EXTENSION);
+    private void writeFile(File directory, Diagram diagram) throws Exception {
+        File file = new File(directory, diagram.getKey() + DOT_FILE_EXTENSION);
         log.debug("Writing " + file.getAbsolutePath());
         BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
         writer.write(diagram.getDefinition());
@@ -95,18 +414,66 @@ public class GraphvizAutomaticLayout {
         }
     }
 
-    private SVGReader createSVGReader() {
-        return new SVGReader(path, margin, changePaperSize);
+    private LayoutResult simplify(ModelView view, LayoutResult layoutResult) {
+        if (vertexSimplificationTolerance > 0) {
+            return new VertexSimplifier(vertexSimplificationTolerance, elementStyleCache).simplify(view, layoutResult);
+        } else {
+            return layoutResult;
+        }
+    }
+
+    private SVGReader createSVGReader(File directory, EdgeRouting edgeRouting) {
+        return new SVGReader(directory, margin, changePaperSize, edgeRouting, elementStyleCache, compactExport);
+    }
+
+    private void runGraphviz(File directory, String name, LayoutReport report, List<String> options, long timeout) throws Exception {
+        ConcurrencyController concurrencyController = this.concurrencyController;
+        AtomicReference<ConcurrencyController.Permit> permit = new AtomicReference<>();
+        LayoutService.Task admission = () -> {
+            if (concurrencyController != null) {
+                permit.set(concurrencyController.acquire(report.getViewKey(), new File(directory, name + DOT_FILE_EXTENSION).length()));
+            }
+        };
+
+        LayoutService layoutService = this.layoutService;
+        if (layoutService != null) {
+            // the time spent waiting for a permit is recorded as queueing time, rather than processing time
+            layoutService.run(tenant, lane, admission, () -> startGraphviz(directory, name, report, options, timeout, concurrencyController, permit.get()));
+        } else {
+            admission.run();
+            startGraphviz(directory, name, report, options, timeout, concurrencyController, permit.get());
+        }
     }
 
-    private void runGraphviz(View view) throws Exception {
+    /**
+     * Runs graphviz, releasing the given permit (if any) once it has finished.
+     */
+    private void startGraphviz(File directory, String name, LayoutReport report, List<String> options, long timeout, ConcurrencyController concurrencyController, ConcurrencyController.Permit permit) throws Exception {
         ProcessBuilder processBuilder = new ProcessBuilder().inheritIO();
-        List<String> command = List.of(
-                DOT_EXECUTABLE,
-                new File(path, view.getKey() + DOT_FILE_EXTENSION).getAbsolutePath(),
+        List<String> command = new ArrayList<>(List.of(
+                graphvizExecutable,
+                new File(directory, name + DOT_FILE_EXTENSION).getAbsolutePath(),
                 USE_SVG_OUTPUT_FORMAT_OPTION,
                 AUTOMATICALLY_GENERATE_OUTPUT_FILE_OPTION
-        );
+        ));
+        command.addAll(options);
+
+        ResourceLimits resourceLimits = this.resourceLimits;
+        File stderrFile = null;
+        if (recordPhaseTimings) {
+            // verbose output (including phase timings) is written to stderr, which is captured in a file so that
+            // it can't fill a pipe and block graphviz
+            command.add(VERBOSE_OPTION);
+        }
+        if (recordPhaseTimings || resourceLimits != null) {
+            // stderr is also needed to tell whether graphviz ran out of memory
+            stderrFile = new File(directory, name + STDERR_FILE_EXTENSION);
+            processBuilder.redirectError(stderrFile);
+        }
+
+        if (resourceLimits != null) {
+            command = resourceLimits.apply(command);
+        }
 
         processBuilder.command(command);
 
@@ -117,101 +484,652 @@ public class GraphvizAutomaticLayout {
         }
         log.debug(buf);
 
-        Process process = processBuilder.start();
-        int exitCode = process.waitFor();
-        assert exitCode == 0;
+        long start = System.currentTimeMillis();
+
+        Process process = null;
+        ProcessMonitor processMonitor = null;
+        String input;
+        try {
+            process = processBuilder.start();
+            processMonitor = new ProcessMonitor(process);
+
+            boolean finished;
+            try {
+                finished = processMonitor.waitFor(timeout);
+            } catch (InterruptedException e) {
+                // don't leave graphviz running (and writing to the scratch directory) after the layout has been abandoned
+                destroy(process);
+                throw e;
+            }
+
+            report.setDuration(System.currentTimeMillis() - start);
+
+            if (!finished) {
+                destroy(process);
+                process.waitFor();
+                throw new GraphvizTimeoutException("Graphviz did not lay out the view with key " + report.getViewKey() + " within " + timeout + "ms");
+            }
 
-        String input = new String(process.getInputStream().readAllBytes());
-        String error = new String(process.getErrorStream().readAllBytes());
+            input = new String(process.getInputStream().readAllBytes());
+        } finally {
+            if (process != null) {
+                closeStreams(process);
+            }
+
+            if (permit != null) {
+                if (processMonitor != null) {
+                    concurrencyController.release(permit, processMonitor.getCpuTime(), processMonitor.getSampledDuration(), processMonitor.getPeakMemory());
+                } else {
+                    concurrencyController.release(permit, -1, 0, 0);
+                }
+            }
+        }
+
+        String error = "";
+        if (stderrFile != null && stderrFile.exists()) {
+            error = Files.readString(stderrFile.toPath());
+            Files.delete(stderrFile.toPath());
+        }
 
         log.debug("stdout: " + input);
         log.debug("stderr: " + error);
+
+        if (recordPhaseTimings) {
+            report.setPhaseTimings(new PhaseTimingsParser().parse(error));
+        }
+
+        log.debug("Graphviz timings for view with key " + report);
+
+        int exitCode = process.exitValue();
+        if (exitCode != 0 && resourceLimits != null) {
+            String exceededLimit = resourceLimits.findExceededLimit(exitCode, error, processMonitor.getCpuTime());
+            if (exceededLimit != null) {
+                throw new GraphvizResourceLimitExceededException("Graphviz exceeded the " + exceededLimit + " for the view with key " + report.getViewKey() + " (exit code " + exitCode + ")");
+            }
+        }
+
+        if (exitCode > ResourceLimits.SIGNAL_EXIT_CODE) {
+            throw new GraphvizException("Graphviz was killed by signal " + (exitCode - ResourceLimits.SIGNAL_EXIT_CODE) + " for the view with key " + report.getViewKey() + " (exit code " + exitCode + ")");
+        }
+
+        if (exitCode != 0) {
+            throw new GraphvizException("Graphviz exited with code " + exitCode + " for the view with key " + report.getViewKey());
+        }
     }
 
-    public void apply(CustomView view) throws Exception {
+    /**
+     * Forcibly destroys the process, along with anything it has started, which would otherwise be left running
+     * once its parent has gone.
+     */
+    private void destroy(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    /**
+     * Closes the pipes to and from the process, rather than waiting for them to be garbage collected, so that a
+     * long-running JVM doesn't accumulate file descriptors.
+     */
+    private void closeStreams(Process process) {
+        try {
+            process.getOutputStream().close();
+            process.getInputStream().close();
+            process.getErrorStream().close();
+        } catch (IOException e) {
+            log.warn("Unable to close the graphviz process streams", e);
+        }
+    }
+
+    private void readOutputs(File directory, String name, LayoutReport report, List<String> outputFormats) throws Exception {
+        for (String outputFormat : outputFormats) {
+            // graphviz names each output file after the input file, with the format as an extra extension
+            File file = new File(directory, name + DOT_FILE_EXTENSION + "." + outputFormat);
+            if (file.exists()) {
+                report.addOutput(outputFormat, Files.readAllBytes(file.toPath()));
+            } else {
+                log.warn(file.getAbsolutePath() + " does not exist; no " + outputFormat + " output for the view with key " + report.getViewKey());
+            }
+        }
+    }
+
+    private List<LayoutStep> getLayoutSteps() {
+        if (layoutSteps.isEmpty()) {
+            return List.of(new LayoutStep(LayoutTier.Dot, 0));
+        } else {
+            return List.copyOf(layoutSteps);
+        }
+    }
+
+    void applyLayout(ModelView view) throws Exception {
+        applyLayout(view, createReport(view), getLayoutSteps(), null);
+    }
+
+    private LayoutReport createReport(ModelView view) {
         log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        LayoutReport report = new LayoutReport(view.getKey());
+        report.setEstimatedDuration(getEstimatedDuration(view));
+        reports.put(view.getKey(), report);
+
+        return report;
+    }
+
+    /**
+     * Tries each of the given layout steps in turn, until one of them succeeds.
+     *
+     * @param exception     the failure of any earlier step, thrown if none of the given steps succeed
+     */
+    private void applyLayout(ModelView view, LayoutReport report, List<LayoutStep> steps, Exception exception) throws Exception {
+        try (ScratchDirectory scratchDirectory = ScratchDirectory.create(path)) {
+            for (LayoutStep step : steps) {
+                try {
+                    applyLayout(scratchDirectory.getDirectory(), view, report, step);
+                    report.setTier(step.tier);
+
+                    return;
+                } catch (Exception e) {
+                    if (!canFallBack(e)) {
+                        throw e;
+                    }
+
+                    recordFailure(report, step, e);
+                    exception = e;
+                }
+            }
+        }
+
+        throw exception;
+    }
+
+    /**
+     * Determines whether the next tier should be tried after a tier failed with the given exception: when graphviz
+     * fails, times out or can't be run at all (e.g. because the executable is missing), but not when the layout
+     * itself is broken (e.g. an unexpected runtime exception).
+     */
+    private static boolean canFallBack(Exception e) {
+        if (Thread.currentThread().isInterrupted() || isInterruption(e)) {
+            // the layout has been abandoned, so there's no point trying the next tier
+            return false;
+        }
+
+        return e instanceof GraphvizException ||
+                e instanceof IOException ||
+                e instanceof UncheckedIOException ||
+                e instanceof TimeoutException;
+    }
+
+    private static boolean isInterruption(Throwable e) {
+        while (e != null) {
+            if (e instanceof InterruptedException || e instanceof InterruptedIOException) {
+                return true;
+            }
+
+            e = e.getCause();
+        }
+
+        return false;
+    }
+
+    private void recordFailure(LayoutReport report, LayoutStep step, Exception e) {
+        log.warn(step.tier + " layout failed: " + e.getMessage());
+        report.addTierFailure(step.tier, e);
+    }
+
+    private void applyLayout(File directory, ModelView view, LayoutReport report, LayoutStep step) throws Exception {
+        if (step.tier == LayoutTier.Layered) {
+            long start = System.currentTimeMillis();
+            LayeredLayout layeredLayout = new LayeredLayout(elementStyleCache, new PageLayout(margin, changePaperSize));
+            layeredLayout.apply(getDOTExporter().createExportContext(view, GraphvizEffort.FULL));
+            report.setEffortLevel(GraphvizEffort.FULL.getLevel());
+            report.setDuration(System.currentTimeMillis() - start);
+
+            return;
+        }
+
+        if (isFastPath(view, step)) {
+            long start = System.currentTimeMillis();
+            TrivialLayout trivialLayout = new TrivialLayout(elementStyleCache, new PageLayout(margin, changePaperSize));
+            trivialLayout.apply(getDOTExporter().createExportContext(view, GraphvizEffort.FULL));
+            report.setEffortLevel(GraphvizEffort.FULL.getLevel());
+            report.setDuration(System.currentTimeMillis() - start);
+            report.setFastPath(true);
+
+            return;
+        }
+
+        GraphvizEffort effort = chooseEffort(view, report, step);
+        List<String> options = getOptions(step);
+
+        if (layoutDeploymentNodesSeparately && view instanceof DeploymentView) {
+            applyHierarchicalLayout(directory, view, report, effort, options, step.timeout);
+            return;
+        }
+
+        if (layoutComponentsSeparately) {
+            List<Set<Element>> components = new ComponentFinder().findComponents(getDOTExporter().createExportContext(view, effort));
+            if (components.size() > 1) {
+                try {
+                    applyLayoutToComponents(view, report, effort, options, step.timeout, components);
+                } finally {
+                    recordEffort(view, report, step, effort);
+                }
+                return;
+            }
+        }
+
+        export(directory, view, effort);
+        runGraphviz(directory, view, report, step, effort);
+        parse(directory, view, effort);
+    }
+
+    /**
+     * Determines whether the given step lays out the view with a single graphviz run, in which case it can be split
+     * into separate export, graphviz and parse stages.
+     */
+    private boolean isStaged(ModelView view, LayoutStep step) {
+        return step.tier != LayoutTier.Layered &&
+                !isFastPath(view, step) &&
+                !(layoutDeploymentNodesSeparately && view instanceof DeploymentView) &&
+                !layoutComponentsSeparately;
+    }
+
+    /**
+     * Determines whether the given view can be laid out inside the JVM, instead of by dot.
+     */
+    private boolean isFastPath(ModelView view, LayoutStep step) {
+        return fastPathForTrivialViews &&
+                step.tier == LayoutTier.Dot &&
+                outputFormats.isEmpty() &&
+                TrivialLayout.isTrivial(view);
+    }
+
+    private GraphvizEffort chooseEffort(ModelView view, LayoutReport report, LayoutStep step) {
+        GraphvizEffort effort;
+        if (step.tier == LayoutTier.Dot) {
+            effort = effortTuner.choose(view);
+        } else {
+            effort = GraphvizEffort.forLevel(REDUCED_EFFORT_LEVEL);
+        }
+        report.setEffortLevel(effort.getLevel());
+
+        return effort;
+    }
+
+    private List<String> getOptions(LayoutStep step) {
+        if (step.tier == LayoutTier.Sfdp) {
+            return List.of(SFDP_LAYOUT_OPTION);
+        } else {
+            return List.of();
+        }
+    }
+
+    private void export(File directory, ModelView view, GraphvizEffort effort) throws Exception {
+        writeFile(directory, getDOTExporter().exportView(view, effort));
+    }
+
+    private void runGraphviz(File directory, ModelView view, LayoutReport report, LayoutStep step, GraphvizEffort effort) throws Exception {
+        try {
+            List<String> outputFormats = List.copyOf(this.outputFormats);
+            List<String> options = new ArrayList<>(getOptions(step));
+            for (String outputFormat : outputFormats) {
+                if (!SVG_OUTPUT_FORMAT.equals(outputFormat)) {
+                    options.add(OUTPUT_FORMAT_OPTION + outputFormat);
+                }
+            }
+
+            runGraphviz(directory, view.getKey(), report, options, step.timeout);
+            readOutputs(directory, view.getKey(), report, outputFormats);
+        } finally {
+            recordEffort(view, report, step, effort);
+        }
+    }
+
+    private void recordEffort(ModelView view, LayoutReport report, LayoutStep step, GraphvizEffort effort) {
+        if (step.tier == LayoutTier.Dot) {
+            // on a timeout, this is a lower bound for the time taken, which is still useful for calibration
+            effortTuner.record(view, effort, report.getDuration());
+        }
+    }
+
+    private void parse(File directory, ModelView view, GraphvizEffort effort) throws Exception {
+        try {
+            LayoutResult layoutResult = createSVGReader(directory, effort.getEdgeRouting(edgeRouting)).parse(view);
+            if (layoutResult != null) {
+                simplify(view, layoutResult).apply(view, new PageLayout(margin, changePaperSize));
+                log.debug("Layout applied to view with key " + view.getKey());
+            }
+        } catch (Exception e) {
+            throw new GraphvizException("The graphviz output for the view with key " + view.getKey() + " could not be parsed", e);
+        }
+    }
+
+    private void applyHierarchicalLayout(File directory, ModelView view, LayoutReport report, GraphvizEffort effort, List<String> options, long timeout) throws Exception {
+        long start = System.currentTimeMillis();
+        long deadline = getDeadline(start, timeout);
+
+        ExportContext context = getDOTExporter().createExportContext(view, effort);
+        HierarchicalLayout hierarchicalLayout = new HierarchicalLayout(
+                elementStyleCache,
+                new PageLayout(margin, changePaperSize),
+                locale,
+                directory,
+                // deployment nodes are laid out level by level, so the runs share the timeout rather than getting one each
+                (dir, name) -> runGraphviz(dir, name, new LayoutReport(view.getKey()), options, getRemainingTime(deadline, view.getKey()))
+        );
+
+        // deployment nodes from all views share the common pool, rather than each view creating and tearing down its own
+        try {
+            hierarchicalLayout.apply(context, ForkJoinPool.commonPool());
+        } catch (GraphvizException | InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GraphvizException("The view with key " + view.getKey() + " could not be laid out hierarchically", e);
+        } finally {
+            report.setDuration(System.currentTimeMillis() - start);
+        }
+    }
+
+    private long getDeadline(long start, long timeout) {
+        return timeout > 0 ? start + timeout : 0;
+    }
+
+    /**
+     * Gets the time left before a deadline shared by several graphviz runs.
+     *
+     * @param deadline  the time by which all runs must finish, or 0 for no deadline
+     * @return  a timeout in milliseconds, or 0 for no timeout
+     */
+    private long getRemainingTime(long deadline, String viewKey) throws GraphvizTimeoutException {
+        if (deadline <= 0) {
+            return 0;
+        }
+
+        long remainingTime = deadline - System.currentTimeMillis();
+        if (remainingTime <= 0) {
+            throw new GraphvizTimeoutException("Graphviz did not lay out the view with key " + viewKey + " before its deadline");
+        }
+
+        return remainingTime;
+    }
+
+    /**
+     * Lays out each component in its own scratch directory, running graphviz in parallel, and then packs the
+     * components side by side before applying the page layout to the view as a whole.
+     */
+    private void applyLayoutToComponents(ModelView view, LayoutReport report, GraphvizEffort effort, List<String> options, long timeout, List<Set<Element>> components) throws Exception {
+        log.debug("Laying out " + components.size() + " components for view with key " + view.getKey());
+        long start = System.currentTimeMillis();
+        long deadline = getDeadline(start, timeout);
+
+        DOTExporter exporter = getDOTExporter();
+        List<ScratchDirectory> scratchDirectories = new ArrayList<>();
+
+        // the pool is shared, so a view that fails stops its own components, and waits for any that are running
+        List<Future<LayoutReport>> futures = new ArrayList<>();
+        AtomicBoolean stopped = new AtomicBoolean();
+        ReadWriteLock running = new ReentrantReadWriteLock();
+
+        try {
+            for (Set<Element> component : components) {
+                ScratchDirectory scratchDirectory = ScratchDirectory.create(path);
+                scratchDirectories.add(scratchDirectory);
+
+                futures.add(componentExecutor.submit(() -> {
+                    running.readLock().lock();
+                    try {
+                        if (stopped.get()) {
+                            throw new CancellationException();
+                        }
+
+                        LayoutReport componentReport = new LayoutReport(view.getKey());
+                        writeFile(scratchDirectory.getDirectory(), exporter.exportView(view, effort, component));
+                        // there may be more components than threads, so the runs share the timeout rather than getting one each
+                        runGraphviz(scratchDirectory.getDirectory(), view.getKey(), componentReport, options, getRemainingTime(deadline, view.getKey()));
+
+                        return componentReport;
+                    } finally {
+                        running.readLock().unlock();
+                    }
+                }));
+            }
+
+            Map<String, Long> phaseTimings = new LinkedHashMap<>();
+            try {
+                for (Future<LayoutReport> future : futures) {
+                    LayoutReport componentReport;
+                    try {
+                        componentReport = future.get();
+                    } catch (ExecutionException e) {
+                        if (e.getCause() instanceof GraphvizException) {
+                            throw (GraphvizException)e.getCause();
+                        } else {
+                            throw new GraphvizException("A component of the view with key " + view.getKey() + " could not be laid out", e.getCause());
+                        }
+                    }
+
+                    componentReport.getPhaseTimings().forEach((phase, duration) -> phaseTimings.merge(phase, duration, Long::sum));
+                }
+            } finally {
+                // also set on failure, as the duration is recorded (as a lower bound) to calibrate the effort for this view
+                report.setDuration(System.currentTimeMillis() - start);
+            }
+
+            report.setPhaseTimings(phaseTimings);
+
+            try {
+                packComponents(view, effort, components, scratchDirectories);
+            } catch (GraphvizException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new GraphvizException("The graphviz output for the view with key " + view.getKey() + " could not be parsed", e);
+            }
+        } finally {
+            stopped.set(true);
+            for (Future<LayoutReport> future : futures) {
+                future.cancel(true);
+            }
+
+            try {
+                if (running.writeLock().tryLock(1, TimeUnit.MINUTES)) {
+                    running.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                for (ScratchDirectory scratchDirectory : scratchDirectories) {
+                    scratchDirectory.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the pool used to lay out the components of views, with a thread per processor; the threads are daemons,
+     * and stop when idle, so the pool doesn't need to be shut down.
+     */
+    private static ExecutorService createComponentExecutor() {
+        int numberOfThreads = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "graphviz-components");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private void packComponents(ModelView view, GraphvizEffort effort, List<Set<Element>> components, List<ScratchDirectory> scratchDirectories) throws Exception {
+        ExportContext context = getDOTExporter().createExportContext(view, effort);
+        boolean horizontal = context.getRankDirection() == RankDirection.LeftRight || context.getRankDirection() == RankDirection.RightLeft;
+        int separation = (int)Math.round(context.getNodeSeparation() * Constants.STRUCTURIZR_DPI);
+
+        List<LayoutResult> layoutResults = new ArrayList<>();
+        int[] deltaX = new int[components.size()];
+        int[] deltaY = new int[components.size()];
+
+        int offset = 0;
+        int maximumWidth = 0;
+        int maximumHeight = 0;
+
+        for (int i = 0; i < components.size(); i++) {
+            LayoutResult layoutResult = createSVGReader(scratchDirectories.get(i).getDirectory(), context.getEdgeRouting()).parse(view);
+            if (layoutResult == null) {
+                throw new GraphvizException("Graphviz did not produce any output for the view with key " + view.getKey());
+            }
+            layoutResults.add(simplify(view, layoutResult));
+            Bounds bounds = layoutResult.getBounds();
+
+            // components are placed side by side, across the rank direction
+            deltaX[i] = horizontal ? -bounds.getMinimumX() : offset - bounds.getMinimumX();
+            deltaY[i] = horizontal ? offset - bounds.getMinimumY() : -bounds.getMinimumY();
+
+            offset += (horizontal ? bounds.getHeight() : bounds.getWidth()) + separation;
+            maximumWidth = Math.max(maximumWidth, bounds.getWidth());
+            maximumHeight = Math.max(maximumHeight, bounds.getHeight());
+        }
+
+        offset -= separation;
+        Bounds bounds = new Bounds(0, 0, horizontal ? maximumWidth : offset, horizontal ? offset : maximumHeight);
+
+        PageLayout pageLayout = new PageLayout(margin, changePaperSize);
+        pageLayout.resize(view, bounds);
+        for (int i = 0; i < layoutResults.size(); i++) {
+            layoutResults.get(i).apply(view, deltaX[i] + pageLayout.getTranslationX(bounds), deltaY[i] + pageLayout.getTranslationY(bounds));
+        }
+    }
+
+    public void apply(CustomView view) throws Exception {
+        applyLayout(view);
     }
 
     public void apply(SystemLandscapeView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(SystemContextView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(ContainerView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(ComponentView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(DynamicView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(DeploymentView view) throws Exception {
-        log.debug("Running Graphviz for view with key " + view.getKey());
-        Diagram diagram = createDOTExporter().export(view);
-        writeFile(diagram);
-        runGraphviz(view);
-        createSVGReader().parseAndApplyLayout(view);
+        applyLayout(view);
     }
 
     public void apply(Workspace workspace) throws Exception {
-        for (CustomView view : workspace.getViews().getCustomViews()) {
-            apply(view);
+        if (pipeline != null) {
+            applyLayout(schedule(getViews(workspace)), pipeline);
+            return;
         }
 
-        for (SystemLandscapeView view : workspace.getViews().getSystemLandscapeViews()) {
-            apply(view);
+        for (ModelView view : getViews(workspace)) {
+            applyLayout(view);
         }
+    }
 
-        for (SystemContextView view : workspace.getViews().getSystemContextViews()) {
-            apply(view);
-        }
+    /**
+     * Lays out views using the first layout step, split into stages, falling back to any remaining steps (in the
+     * stage that failed) if it fails. Views that can't be split into stages are laid out in the graphviz stage.
+     */
+    private void applyLayout(List<ModelView> views, LayoutPipeline<PipelineJob> pipeline) throws Exception {
+        List<LayoutStep> steps = getLayoutSteps();
+        LayoutStep step = steps.get(0);
 
-        for (ContainerView view : workspace.getViews().getContainerViews()) {
-            apply(view);
+        List<PipelineJob> jobs = new ArrayList<>();
+        for (ModelView view : views) {
+            jobs.add(new PipelineJob(view));
         }
 
-        for (ComponentView view : workspace.getViews().getComponentViews()) {
-            apply(view);
-        }
+        pipeline.run(jobs,
+                job -> {
+                    job.report = createReport(job.view);
+                    if (isStaged(job.view, step)) {
+                        job.scratchDirectory = ScratchDirectory.create(path);
+                        job.effort = chooseEffort(job.view, job.report, step);
+                        export(job.scratchDirectory.getDirectory(), job.view, job.effort);
+                    }
+
+                    return true;
+                },
+                job -> {
+                    if (job.scratchDirectory == null) {
+                        applyLayout(job.view, job.report, steps, null);
+                        return false;
+                    }
+
+                    runGraphviz(job.scratchDirectory.getDirectory(), job.view, job.report, step, job.effort);
+                    return true;
+                },
+                job -> {
+                    parse(job.scratchDirectory.getDirectory(), job.view, job.effort);
+                    job.report.setTier(step.tier);
+                    return false;
+                },
+                (job, e) -> {
+                    if (job.scratchDirectory != null && canFallBack(e)) {
+                        recordFailure(job.report, step, e);
+                        applyLayout(job.view, job.report, steps.subList(1, steps.size()), e);
+                    } else {
+                        throw e;
+                    }
+                },
+                job -> {
+                    if (job.scratchDirectory != null) {
+                        job.scratchDirectory.close();
+                    }
+                });
+    }
+
+    /**
+     * Gets the views in a workspace that can be laid out, in the order they are laid out by apply(Workspace).
+     */
+    static List<ModelView> getViews(Workspace workspace) {
+        List<ModelView> views = new ArrayList<>();
+        views.addAll(workspace.getViews().getCustomViews());
+        views.addAll(workspace.getViews().getSystemLandscapeViews());
+        views.addAll(workspace.getViews().getSystemContextViews());
+        views.addAll(workspace.getViews().getContainerViews());
+        views.addAll(workspace.getViews().getComponentViews());
+        views.addAll(workspace.getViews().getDynamicViews());
+        views.addAll(workspace.getViews().getDeploymentViews());
 
-        for (DynamicView view : workspace.getViews().getDynamicViews()) {
-            apply(view);
+        return views;
+    }
+
+    private static final class PipelineJob {
+
+        private final ModelView view;
+        private LayoutReport report;
+        private ScratchDirectory scratchDirectory;
+        private GraphvizEffort effort;
+
+        private PipelineJob(ModelView view) {
+            this.view = view;
         }
 
-        for (DeploymentView view : workspace.getViews().getDeploymentViews()) {
-            apply(view);
+    }
+
+    private static final class LayoutStep {
+
+        private final LayoutTier tier;
+        private final long timeout;
+
+        private LayoutStep(LayoutTier tier, long timeout) {
+            this.tier = tier;
+            this.timeout = timeout;
         }
+
     }
 
-}
\ No newline at end of file
+}
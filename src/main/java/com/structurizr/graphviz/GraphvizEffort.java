@@ -0,0 +1,67 @@
+package com.structurizr.graphviz;
+
+import java.util.List;
+
+/**
+ * A level of layout effort, expressed as the graphviz attributes that trade layout quality for speed
+ * (mclimit, nslimit, searchsize, remincross and the edge routing). Level 0 is full quality, and writes no
+ * additional attributes.
+ */
+class GraphvizEffort {
+
+    static final GraphvizEffort FULL = new GraphvizEffort(0, 1.0, "", EdgeRouting.Polyline);
+
+    static final List<GraphvizEffort> LEVELS = List.of(
+            FULL,
+            new GraphvizEffort(1, 0.5, ",mclimit=0.5,remincross=false", EdgeRouting.Polyline),
+            new GraphvizEffort(2, 0.2, ",mclimit=0.2,nslimit=2,nslimit1=2,searchsize=10,remincross=false", EdgeRouting.Line),
+            new GraphvizEffort(3, 0.05, ",mclimit=0.05,nslimit=0.5,nslimit1=0.5,searchsize=5,remincross=false", EdgeRouting.None)
+    );
+
+    private final int level;
+    private final double relativeCost;
+    private final String attributes;
+    private final EdgeRouting edgeRouting;
+
+    private GraphvizEffort(int level, double relativeCost, String attributes, EdgeRouting edgeRouting) {
+        this.level = level;
+        this.relativeCost = relativeCost;
+        this.attributes = attributes;
+        this.edgeRouting = edgeRouting;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Gets the approximate cost of a layout at this level, relative to a full quality layout.
+     */
+    double getRelativeCost() {
+        return relativeCost;
+    }
+
+    /**
+     * Gets the additional graph attributes for this level, each prefixed with a comma.
+     */
+    String getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Gets the edge routing to use at this level, which is never more expensive than the configured edge routing.
+     */
+    EdgeRouting getEdgeRouting(EdgeRouting configured) {
+        return edgeRouting.ordinal() > configured.ordinal() ? edgeRouting : configured;
+    }
+
+    static GraphvizEffort forLevel(int level) {
+        return LEVELS.get(Math.max(0, Math.min(level, LEVELS.size() - 1)));
+    }
+
+    @Override
+    public String toString() {
+        return "effort level " + level;
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.structurizr.graphviz;
+
+/**
+ * Thrown when graphviz is unable to lay out a view.
+ */
+public class GraphvizException extends Exception {
+
+    public GraphvizException(String message) {
+        super(message);
+    }
+
+    public GraphvizException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
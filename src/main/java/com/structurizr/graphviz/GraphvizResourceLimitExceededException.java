@@ -0,0 +1,12 @@
+package com.structurizr.graphviz;
+
+/**
+ * Thrown when graphviz is stopped because it exceeded the memory or CPU time limits set via ResourceLimits.
+ */
+public class GraphvizResourceLimitExceededException extends GraphvizException {
+
+    public GraphvizResourceLimitExceededException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,12 @@
+package com.structurizr.graphviz;
+
+/**
+ * Thrown when graphviz does not finish laying out a view before its deadline.
+ */
+public class GraphvizTimeoutException extends GraphvizException {
+
+    public GraphvizTimeoutException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,493 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.Vertex;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A divide-and-conquer layout for deployment views. Rather than asking graphviz to lay out the whole deployment node
+ * hierarchy as nested clusters, each deployment node is laid out on its own, bottom-up and in parallel, with each
+ * child deployment node represented as a single fixed-size block. Relationships between elements in the same
+ * deployment node are routed by graphviz; relationships that cross a deployment node boundary are drawn as
+ * straight lines once everything has been placed. Optionally (for the trivial views fast path), deployment nodes
+ * without any relationships inside them are laid out in a single rank, as graphviz would, without running graphviz.
+ */
+class HierarchicalLayout {
+
+    /**
+     * Runs graphviz on the named DOT file in the given directory, producing an SVG file alongside it.
+     */
+    interface Graphviz {
+
+        void run(File directory, String name) throws Exception;
+
+    }
+
+    // matches the cluster margin used by the DOT exporter, converted to Structurizr dimensions
+    private static final int CLUSTER_PADDING = (int)(DOTExporter.CLUSTER_INTERNAL_MARGIN * Constants.DPI_RATIO);
+
+    private static final String DOT_FILE_EXTENSION = ".dot";
+
+    private final ElementStyleCache elementStyleCache;
+    private final PageLayout pageLayout;
+    private final Locale locale;
+    private final File directory;
+    private final Graphviz graphviz;
+    private final boolean arrangeUnconnectedItemsInRank;
+
+    HierarchicalLayout(ElementStyleCache elementStyleCache, PageLayout pageLayout, Locale locale, File directory, Graphviz graphviz) {
+        this(elementStyleCache, pageLayout, locale, directory, graphviz, false);
+    }
+
+    /**
+     * @param arrangeUnconnectedItemsInRank     whether deployment nodes without relationships inside them are laid
+     *                                          out in a single rank, rather than by graphviz
+     */
+    HierarchicalLayout(ElementStyleCache elementStyleCache, PageLayout pageLayout, Locale locale, File directory, Graphviz graphviz, boolean arrangeUnconnectedItemsInRank) {
+        this.elementStyleCache = elementStyleCache;
+        this.pageLayout = pageLayout;
+        this.locale = locale;
+        this.directory = directory;
+        this.graphviz = graphviz;
+        this.arrangeUnconnectedItemsInRank = arrangeUnconnectedItemsInRank;
+    }
+
+    /**
+     * Lays out the view, using the given pool (which may be shared, such as the common pool) to lay out deployment
+     * nodes in parallel. Once one deployment node fails, those that haven't started yet are skipped.
+     */
+    void apply(ExportContext context, ForkJoinPool pool) throws Exception {
+        ModelView view = context.getView();
+        elementStyleCache.validate(view);
+
+        Cluster root = createClusters(context);
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        try {
+            pool.invoke(new LayoutTask(context, root, failure));
+        } catch (CompletionException | CancellationException e) {
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+
+            Throwable cause = e;
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof Exception) {
+                throw (Exception)cause;
+            } else {
+                throw e;
+            }
+        }
+
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            relationshipView.setVertices(new LinkedHashSet<>());
+        }
+        place(root, 0, 0);
+
+        pageLayout.apply(view, 0, 0, root.width, root.height);
+    }
+
+    /**
+     * Builds the tree of clusters (the view itself, and each deployment node in it), and assigns each relationship
+     * to the innermost cluster containing both of its ends.
+     */
+    private Cluster createClusters(ExportContext context) {
+        ModelView view = context.getView();
+        Cluster root = new Cluster(view.getKey(), null);
+
+        Map<Element, Cluster> clusters = new HashMap<>();
+        for (ElementView elementView : view.getElements()) {
+            if (elementView.getElement() instanceof DeploymentNode) {
+                clusters.put(elementView.getElement(), new Cluster(view.getKey() + "-" + elementView.getId(), elementView));
+            }
+        }
+
+        for (ElementView elementView : view.getElements()) {
+            Cluster parent = findCluster(clusters, elementView.getElement(), root);
+            if (elementView.getElement() instanceof DeploymentNode) {
+                Cluster cluster = clusters.get(elementView.getElement());
+                cluster.parent = parent;
+                parent.items.add(cluster);
+            } else {
+                Node node = new Node(elementView, elementStyleCache.getElementWidth(view, elementView.getElement()), elementStyleCache.getElementHeight(view, elementView.getElement()));
+                node.parent = parent;
+                parent.items.add(node);
+            }
+        }
+
+        Map<Element, Node> nodes = new HashMap<>();
+        collectNodes(root, nodes);
+
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            Node source = nodes.get(ComponentFinder.resolve(context, relationshipView.getRelationship().getSource()));
+            Node destination = nodes.get(ComponentFinder.resolve(context, relationshipView.getRelationship().getDestination()));
+            if (source == null || destination == null) {
+                continue;
+            }
+
+            if (relationshipView.isResponse() != null && relationshipView.isResponse()) {
+                Node node = source;
+                source = destination;
+                destination = node;
+            }
+
+            // find the innermost cluster containing both ends, and the items in that cluster that contain each end
+            List<Item> sourcePath = pathFromRoot(source);
+            List<Item> destinationPath = pathFromRoot(destination);
+            int depth = 0;
+            while (depth + 1 < sourcePath.size() && depth + 1 < destinationPath.size() && sourcePath.get(depth + 1) == destinationPath.get(depth + 1)) {
+                depth++;
+            }
+
+            if (depth + 1 < sourcePath.size() && depth + 1 < destinationPath.size()) {
+                ((Cluster)sourcePath.get(depth)).edges.add(new Edge(relationshipView, sourcePath.get(depth + 1), destinationPath.get(depth + 1)));
+            }
+        }
+
+        return root;
+    }
+
+    private Cluster findCluster(Map<Element, Cluster> clusters, Element element, Cluster root) {
+        Element parent = element.getParent();
+        while (parent != null) {
+            Cluster cluster = clusters.get(parent);
+            if (cluster != null) {
+                return cluster;
+            }
+            parent = parent.getParent();
+        }
+
+        return root;
+    }
+
+    private void collectNodes(Cluster cluster, Map<Element, Node> nodes) {
+        for (Item item : cluster.items) {
+            if (item instanceof Node) {
+                nodes.put(((Node)item).elementView.getElement(), (Node)item);
+            } else {
+                collectNodes((Cluster)item, nodes);
+            }
+        }
+    }
+
+    private List<Item> pathFromRoot(Item item) {
+        LinkedList<Item> path = new LinkedList<>();
+        while (item != null) {
+            path.addFirst(item);
+            item = item.parent;
+        }
+
+        return path;
+    }
+
+    /**
+     * Lays out the contents of a single cluster, whose child clusters have already been laid out, positioning each
+     * item relative to the top-left of the cluster.
+     */
+    private void layOut(ExportContext context, Cluster cluster) throws Exception {
+        if (cluster.items.size() == 1 && cluster.edges.isEmpty()) {
+            cluster.items.get(0).x = 0;
+            cluster.items.get(0).y = 0;
+        } else if (arrangeUnconnectedItemsInRank && cluster.edges.isEmpty()) {
+            arrangeInRank(context, cluster);
+        } else if (!cluster.items.isEmpty()) {
+            writeFile(context, cluster);
+            runGraphviz(cluster.name);
+
+            SVGReader.SVGDocument document = new SVGReader(directory, 0, false, context.getEdgeRouting(), elementStyleCache).read(cluster.name);
+            if (document == null) {
+                throw new GraphvizException("Graphviz did not produce any output for the view with key " + context.getView().getKey());
+            }
+
+            for (Item item : cluster.items) {
+                Vertex position = document.getNodePosition(item.getId());
+                if (position != null) {
+                    item.x = position.getX();
+                    item.y = position.getY();
+                }
+            }
+
+            if (context.getEdgeRouting().hasVertices()) {
+                for (Edge edge : cluster.edges) {
+                    if (edge.source instanceof Node && edge.destination instanceof Node) {
+                        List<Vertex> vertices = document.getEdgeVertices(edge.relationshipView.getId());
+                        if (vertices != null) {
+                            edge.vertices.addAll(vertices);
+                        }
+                    }
+                }
+            }
+        }
+
+        int minimumX = Integer.MAX_VALUE;
+        int minimumY = Integer.MAX_VALUE;
+        int maximumX = Integer.MIN_VALUE;
+        int maximumY = Integer.MIN_VALUE;
+        for (Item item : cluster.items) {
+            minimumX = Math.min(minimumX, item.x);
+            minimumY = Math.min(minimumY, item.y);
+            maximumX = Math.max(maximumX, item.x + item.width);
+            maximumY = Math.max(maximumY, item.y + item.height);
+        }
+        for (Edge edge : cluster.edges) {
+            for (Vertex vertex : edge.vertices) {
+                minimumX = Math.min(minimumX, vertex.getX());
+                minimumY = Math.min(minimumY, vertex.getY());
+                maximumX = Math.max(maximumX, vertex.getX());
+                maximumY = Math.max(maximumY, vertex.getY());
+            }
+        }
+        if (cluster.items.isEmpty()) {
+            minimumX = minimumY = maximumX = maximumY = 0;
+        }
+
+        // move everything so that the contents start inside the cluster's padding
+        int padding = cluster.elementView != null ? CLUSTER_PADDING : 0;
+        for (Item item : cluster.items) {
+            item.x = item.x - minimumX + padding;
+            item.y = item.y - minimumY + padding;
+        }
+        for (Edge edge : cluster.edges) {
+            for (Vertex vertex : edge.vertices) {
+                vertex.setX(vertex.getX() - minimumX + padding);
+                vertex.setY(vertex.getY() - minimumY + padding);
+            }
+        }
+
+        cluster.width = maximumX - minimumX + (2 * padding);
+        cluster.height = maximumY - minimumY + (2 * padding);
+    }
+
+    /**
+     * Runs graphviz as a managed blocking operation, so that the pool can add a thread while this one waits, rather
+     * than running short of threads for other work.
+     */
+    private void runGraphviz(String name) throws Exception {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+
+            private boolean done = false;
+
+            @Override
+            public boolean block() throws InterruptedException {
+                try {
+                    graphviz.run(directory, name);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+                done = true;
+
+                return true;
+            }
+
+            @Override
+            public boolean isReleasable() {
+                return done;
+            }
+
+        });
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Places the items side by side, across the rank direction, centred on the rank.
+     */
+    private void arrangeInRank(ExportContext context, Cluster cluster) {
+        RankDirection rankDirection = context.getRankDirection();
+        boolean horizontal = rankDirection == RankDirection.LeftRight || rankDirection == RankDirection.RightLeft;
+        int separation = (int)Math.round(context.getNodeSeparation() * Constants.STRUCTURIZR_DPI);
+
+        int rankDepth = 0;
+        for (Item item : cluster.items) {
+            rankDepth = Math.max(rankDepth, horizontal ? item.width : item.height);
+        }
+
+        int offset = 0;
+        for (Item item : cluster.items) {
+            int along = (rankDepth - (horizontal ? item.width : item.height)) / 2;
+            item.x = horizontal ? along : offset;
+            item.y = horizontal ? offset : along;
+            offset += (horizontal ? item.height : item.width) + separation;
+        }
+    }
+
+    private void writeFile(ExportContext context, Cluster cluster) throws Exception {
+        DOTWriter dot = new DOTWriter(locale);
+        dot.append("digraph {\n");
+        dot.append("  graph [splines=").append(context.getEdgeRouting().getCode())
+                .append(",rankdir=").append(context.getRankDirection().getCode())
+                .append(",ranksep=").append(Double.toString(context.getRankSeparation()))
+                .append(",nodesep=").append(Double.toString(context.getNodeSeparation()))
+                .append(context.getEffort().getAttributes())
+                .append(",fontsize=5]\n");
+        dot.append("  node [shape=box,fontsize=5,fixedsize=true,label=\"\"]\n");
+        dot.append('\n');
+
+        for (Item item : cluster.items) {
+            dot.append("  ").append(item.getId())
+                    .append(" [width=").appendFixed(item.width / Constants.STRUCTURIZR_DPI) // convert Structurizr dimensions to inches
+                    .append(",height=").appendFixed(item.height / Constants.STRUCTURIZR_DPI)
+                    .append(",id=").append(item.getId())
+                    .append("]\n");
+        }
+
+        dot.append('\n');
+        for (Edge edge : cluster.edges) {
+            dot.append("  ").append(edge.source.getId())
+                    .append(" -> ").append(edge.destination.getId())
+                    .append(" [id=").append(edge.relationshipView.getId())
+                    .append("]\n");
+        }
+        dot.append("}\n");
+
+        try (BufferedWriter writer = Files.newBufferedWriter(new File(directory, cluster.name + DOT_FILE_EXTENSION).toPath(), StandardCharsets.UTF_8)) {
+            writer.write(dot.toString());
+        }
+    }
+
+    /**
+     * Converts the relative positions of each item into absolute positions, applying them to the view.
+     */
+    private void place(Cluster cluster, int offsetX, int offsetY) {
+        for (Item item : cluster.items) {
+            if (item instanceof Node) {
+                ((Node)item).elementView.setX(offsetX + item.x);
+                ((Node)item).elementView.setY(offsetY + item.y);
+            } else {
+                place((Cluster)item, offsetX + item.x, offsetY + item.y);
+            }
+        }
+
+        for (Edge edge : cluster.edges) {
+            Set<Vertex> vertices = new LinkedHashSet<>();
+            for (Vertex vertex : edge.vertices) {
+                vertices.add(new Vertex(offsetX + vertex.getX(), offsetY + vertex.getY()));
+            }
+            edge.relationshipView.setVertices(vertices);
+        }
+    }
+
+    private final class LayoutTask extends RecursiveAction {
+
+        private final ExportContext context;
+        private final Cluster cluster;
+        private final AtomicReference<Exception> failure;
+
+        private LayoutTask(ExportContext context, Cluster cluster, AtomicReference<Exception> failure) {
+            this.context = context;
+            this.cluster = cluster;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            List<LayoutTask> tasks = new ArrayList<>();
+            for (Item item : cluster.items) {
+                if (item instanceof Cluster) {
+                    tasks.add(new LayoutTask(context, (Cluster)item, failure));
+                }
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            if (failure.get() != null) {
+                // another deployment node could not be laid out
+                throw new CancellationException();
+            }
+
+            try {
+                layOut(context, cluster);
+            } catch (Exception e) {
+                failure.compareAndSet(null, e);
+                throw new CompletionException(e);
+            }
+        }
+
+    }
+
+    private abstract static class Item {
+
+        Cluster parent;
+        int x;
+        int y;
+        int width;
+        int height;
+
+        abstract String getId();
+
+    }
+
+    private static final class Node extends Item {
+
+        private final ElementView elementView;
+
+        private Node(ElementView elementView, int width, int height) {
+            this.elementView = elementView;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        String getId() {
+            return elementView.getId();
+        }
+
+    }
+
+    private static final class Cluster extends Item {
+
+        private final String name;
+        private final ElementView elementView;
+        private final List<Item> items = new ArrayList<>();
+        private final List<Edge> edges = new ArrayList<>();
+
+        private Cluster(String name, ElementView elementView) {
+            this.name = name;
+            this.elementView = elementView;
+        }
+
+        @Override
+        String getId() {
+            return "cluster_" + elementView.getId();
+        }
+
+    }
+
+    private static final class Edge {
+
+        private final RelationshipView relationshipView;
+        private final Item source;
+        private final Item destination;
+        private final List<Vertex> vertices = new ArrayList<>();
+
+        private Edge(RelationshipView relationshipView, Item source, Item destination) {
+            this.relationshipView = relationshipView;
+            this.source = source;
+            this.destination = destination;
+        }
+
+    }
+
+}
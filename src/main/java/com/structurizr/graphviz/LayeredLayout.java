@@ -0,0 +1,250 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+
+import java.util.*;
+
+/**
+ * A simple layered layout that runs inside the JVM, without graphviz. Elements are assigned to ranks using the
+ * longest path through the relationships (breaking any cycles), ordered within each rank by the average position
+ * of their predecessors, and then placed rank by rank in the rank direction. Relationships are drawn as straight
+ * lines, and deployment nodes (clusters) are not drawn.
+ */
+class LayeredLayout {
+
+    private final ElementStyleCache elementStyleCache;
+    private final PageLayout pageLayout;
+    private final int origin;
+
+    LayeredLayout(ElementStyleCache elementStyleCache, PageLayout pageLayout) {
+        this(elementStyleCache, pageLayout, 0);
+    }
+
+    /**
+     * @param origin    the x and y coordinate of the top-left of the layout, before the page layout is applied
+     */
+    LayeredLayout(ElementStyleCache elementStyleCache, PageLayout pageLayout, int origin) {
+        this.elementStyleCache = elementStyleCache;
+        this.pageLayout = pageLayout;
+        this.origin = origin;
+    }
+
+    void apply(ExportContext context) {
+        ModelView view = context.getView();
+        elementStyleCache.validate(view);
+
+        List<ElementView> nodes = new ArrayList<>();
+        Map<Element, Integer> indexes = new HashMap<>();
+        for (ElementView elementView : view.getElements()) {
+            if (!(elementView.getElement() instanceof DeploymentNode)) {
+                indexes.put(elementView.getElement(), nodes.size());
+                nodes.add(elementView);
+            }
+        }
+
+        List<List<Integer>> successors = new ArrayList<>();
+        List<List<Integer>> predecessors = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            successors.add(new ArrayList<>());
+            predecessors.add(new ArrayList<>());
+        }
+
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            Element source = relationshipView.getRelationship().getSource();
+            Element destination = relationshipView.getRelationship().getDestination();
+
+            if (source instanceof DeploymentNode) {
+                source = context.getDeploymentNodeIndex().findElementInside((DeploymentNode)source);
+            }
+            if (destination instanceof DeploymentNode) {
+                destination = context.getDeploymentNodeIndex().findElementInside((DeploymentNode)destination);
+            }
+            if (relationshipView.isResponse() != null && relationshipView.isResponse()) {
+                Element element = source;
+                source = destination;
+                destination = element;
+            }
+
+            Integer from = indexes.get(source);
+            Integer to = indexes.get(destination);
+            if (from != null && to != null && !from.equals(to)) {
+                successors.get(from).add(to);
+                predecessors.get(to).add(from);
+            }
+
+            relationshipView.setVertices(new LinkedHashSet<>());
+        }
+
+        List<List<Integer>> ranks = orderRanks(assignRanks(successors, predecessors), predecessors);
+        position(context, nodes, ranks);
+    }
+
+    /**
+     * Assigns ranks using a topological sort; when only cycles remain, the earliest remaining node is taken next,
+     * ignoring its remaining incoming relationships.
+     */
+    private int[] assignRanks(List<List<Integer>> successors, List<List<Integer>> predecessors) {
+        int numberOfNodes = successors.size();
+        int[] rank = new int[numberOfNodes];
+        int[] remainingPredecessors = new int[numberOfNodes];
+        boolean[] placed = new boolean[numberOfNodes];
+
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < numberOfNodes; i++) {
+            remainingPredecessors[i] = predecessors.get(i).size();
+            if (remainingPredecessors[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        int numberPlaced = 0;
+        int nextUnplaced = 0;
+        while (numberPlaced < numberOfNodes) {
+            if (ready.isEmpty()) {
+                while (placed[nextUnplaced] || remainingPredecessors[nextUnplaced] == 0) {
+                    nextUnplaced++;
+                }
+                ready.add(nextUnplaced);
+                remainingPredecessors[nextUnplaced] = 0;
+            }
+
+            int node = ready.poll();
+            if (placed[node]) {
+                continue;
+            }
+            placed[node] = true;
+            numberPlaced++;
+
+            for (int predecessor : predecessors.get(node)) {
+                if (placed[predecessor]) {
+                    rank[node] = Math.max(rank[node], rank[predecessor] + 1);
+                }
+            }
+
+            for (int successor : successors.get(node)) {
+                if (!placed[successor] && --remainingPredecessors[successor] == 0) {
+                    ready.add(successor);
+                }
+            }
+        }
+
+        return rank;
+    }
+
+    /**
+     * Groups nodes by rank, ordering each rank by the average position of each node's predecessors in earlier ranks.
+     */
+    private List<List<Integer>> orderRanks(int[] rank, List<List<Integer>> predecessors) {
+        List<List<Integer>> ranks = new ArrayList<>();
+        for (int node = 0; node < rank.length; node++) {
+            while (ranks.size() <= rank[node]) {
+                ranks.add(new ArrayList<>());
+            }
+            ranks.get(rank[node]).add(node);
+        }
+
+        double[] position = new double[rank.length];
+        for (List<Integer> nodesInRank : ranks) {
+            Map<Integer, Double> barycentres = new HashMap<>();
+            for (int node : nodesInRank) {
+                double total = 0;
+                int count = 0;
+                for (int predecessor : predecessors.get(node)) {
+                    if (rank[predecessor] < rank[node]) {
+                        total += position[predecessor];
+                        count++;
+                    }
+                }
+                barycentres.put(node, count > 0 ? total / count : position[node]);
+            }
+
+            // a stable sort, so nodes without predecessors keep the order they appear in the view
+            List<Integer> sorted = new ArrayList<>(nodesInRank);
+            sorted.sort(Comparator.comparingDouble(barycentres::get));
+            nodesInRank.clear();
+            nodesInRank.addAll(sorted);
+
+            for (int i = 0; i < nodesInRank.size(); i++) {
+                position[nodesInRank.get(i)] = i;
+            }
+        }
+
+        return ranks;
+    }
+
+    private void position(ExportContext context, List<ElementView> nodes, List<List<Integer>> ranks) {
+        ModelView view = context.getView();
+        RankDirection rankDirection = context.getRankDirection();
+        boolean horizontal = rankDirection == RankDirection.LeftRight || rankDirection == RankDirection.RightLeft;
+        boolean reversed = rankDirection == RankDirection.BottomTop || rankDirection == RankDirection.RightLeft;
+
+        // convert separations back from inches to Structurizr dimensions
+        int rankSeparation = (int)Math.round(context.getRankSeparation() * Constants.STRUCTURIZR_DPI);
+        int nodeSeparation = (int)Math.round(context.getNodeSeparation() * Constants.STRUCTURIZR_DPI);
+
+        int[] width = new int[nodes.size()];
+        int[] height = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            width[i] = elementStyleCache.getElementWidth(view, nodes.get(i).getElement());
+            height[i] = elementStyleCache.getElementHeight(view, nodes.get(i).getElement());
+        }
+
+        // "depth" is measured in the rank direction, "breadth" across it
+        int[] depth = horizontal ? width : height;
+        int[] breadth = horizontal ? height : width;
+
+        int[] rankDepth = new int[ranks.size()];
+        int[] rankBreadth = new int[ranks.size()];
+        int maximumBreadth = 0;
+        for (int r = 0; r < ranks.size(); r++) {
+            List<Integer> nodesInRank = ranks.get(r);
+            for (int node : nodesInRank) {
+                rankDepth[r] = Math.max(rankDepth[r], depth[node]);
+                rankBreadth[r] += breadth[node];
+            }
+            rankBreadth[r] += Math.max(0, nodesInRank.size() - 1) * nodeSeparation;
+            maximumBreadth = Math.max(maximumBreadth, rankBreadth[r]);
+        }
+
+        int minimumX = Integer.MAX_VALUE;
+        int minimumY = Integer.MAX_VALUE;
+        int maximumX = Integer.MIN_VALUE;
+        int maximumY = Integer.MIN_VALUE;
+
+        int rankOffset = 0;
+        for (int i = 0; i < ranks.size(); i++) {
+            int r = reversed ? ranks.size() - 1 - i : i;
+            int offset = (maximumBreadth - rankBreadth[r]) / 2;
+
+            for (int node : ranks.get(r)) {
+                // centre each node within its rank
+                int along = rankOffset + (rankDepth[r] - depth[node]) / 2;
+                int across = offset;
+
+                ElementView elementView = nodes.get(node);
+                elementView.setX(origin + (horizontal ? along : across));
+                elementView.setY(origin + (horizontal ? across : along));
+
+                minimumX = Math.min(minimumX, elementView.getX());
+                minimumY = Math.min(minimumY, elementView.getY());
+                maximumX = Math.max(maximumX, elementView.getX() + width[node]);
+                maximumY = Math.max(maximumY, elementView.getY() + height[node]);
+
+                offset += breadth[node] + nodeSeparation;
+            }
+
+            rankOffset += rankDepth[r] + rankSeparation;
+        }
+
+        if (nodes.isEmpty()) {
+            minimumX = minimumY = maximumX = maximumY = 0;
+        }
+
+        pageLayout.apply(view, minimumX, minimumY, maximumX, maximumY);
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.structurizr.graphviz;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Records the number of layout requests, and their latency (over the most recent requests), for reporting by the
+ * layout server.
+ */
+class LayoutMetrics {
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final long startTime = System.currentTimeMillis();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private long requests;
+    private long failures;
+    private long views;
+
+    synchronized void record(long latency, int numberOfViews, boolean success) {
+        latencies[(int)(requests % LATENCY_SAMPLES)] = latency;
+        requests++;
+        views += numberOfViews;
+
+        if (!success) {
+            failures++;
+        }
+    }
+
+    synchronized String toJson() {
+        return toJson(null);
+    }
+
+    /**
+     * Gets the metrics as a JSON object: the number of requests, failed requests and views laid out, the throughput
+     * (requests per second since the server started), and latency percentiles in milliseconds.
+     *
+     * @param tenants   per-tenant statistics (a JSON object) to include, or null
+     */
+    synchronized String toJson(String tenants) {
+        long[] sorted = Arrays.copyOf(latencies, (int)Math.min(requests, LATENCY_SAMPLES));
+        Arrays.sort(sorted);
+
+        double uptime = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+
+        return String.format(Locale.US,
+                "{\"requests\":%d,\"failures\":%d,\"views\":%d,\"throughput\":%.3f,\"latency\":{\"mean\":%.1f,\"p50\":%d,\"p95\":%d,\"p99\":%d,\"max\":%d}%s}",
+                requests,
+                failures,
+                views,
+                requests / uptime,
+                Arrays.stream(sorted).average().orElse(0),
+                percentile(sorted, 0.50),
+                percentile(sorted, 0.95),
+                percentile(sorted, 0.99),
+                sorted.length > 0 ? sorted[sorted.length - 1] : 0,
+                tenants != null ? ",\"tenants\":" + tenants : ""
+        );
+    }
+
+    private long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+
+        return sorted[(int)Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+}
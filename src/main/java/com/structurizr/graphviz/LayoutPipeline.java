@@ -0,0 +1,193 @@
+package com.structurizr.graphviz;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Runs jobs through three stages (export, graphviz and parse), each with its own pool of threads, so that the CPU-bound
+ * export and parse stages overlap with the I/O-bound graphviz stage. The queues between the stages are bounded by the
+ * number of threads in the next stage, so the number of jobs in flight (and their DOT/SVG files and parsed
+ * documents) is fixed, regardless of how many jobs there are.
+ *
+ * Each job is released exactly once, when it leaves the pipeline: after its last stage, after a failure, or when a
+ * stage chooses not to forward it.
+ */
+class LayoutPipeline<T> {
+
+    interface Stage<T> {
+
+        /**
+         * @return  true to forward the job to the next stage, false if the job is complete
+         */
+        boolean run(T job) throws Exception;
+
+    }
+
+    interface FailureHandler<T> {
+
+        /**
+         * Handles a job that failed in one of the stages, after it has been released; any exception thrown is reported
+         * as a failure of the pipeline as a whole.
+         */
+        void handle(T job, Exception e) throws Exception;
+
+    }
+
+    interface Release<T> {
+
+        void release(T job);
+
+    }
+
+    private static final Object END = new Object();
+
+    private final int exportThreads;
+    private final int graphvizThreads;
+    private final int parseThreads;
+
+    LayoutPipeline(int exportThreads, int graphvizThreads, int parseThreads) {
+        if (exportThreads < 1 || graphvizThreads < 1 || parseThreads < 1) {
+            throw new IllegalArgumentException("Each stage must have 1 or more threads");
+        }
+
+        this.exportThreads = exportThreads;
+        this.graphvizThreads = graphvizThreads;
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * Runs the given jobs through the pipeline, waiting for all of them to complete. If any jobs fail (and the
+     * failure handler doesn't recover), the first failure is thrown once all jobs are complete, with any others
+     * added as suppressed exceptions.
+     */
+    void run(Collection<T> jobs, Stage<T> export, Stage<T> graphviz, Stage<T> parse, FailureHandler<T> failureHandler, Release<T> release) throws Exception {
+        BlockingQueue<Object> exportQueue = new LinkedBlockingQueue<>(jobs);
+        BlockingQueue<Object> graphvizQueue = new ArrayBlockingQueue<>(graphvizThreads);
+        BlockingQueue<Object> parseQueue = new ArrayBlockingQueue<>(parseThreads);
+        for (int i = 0; i < exportThreads; i++) {
+            exportQueue.add(END);
+        }
+
+        List<Exception> failures = new CopyOnWriteArrayList<>();
+        ExecutorService exportPool = Executors.newFixedThreadPool(exportThreads);
+        ExecutorService graphvizPool = Executors.newFixedThreadPool(graphvizThreads);
+        ExecutorService parsePool = Executors.newFixedThreadPool(parseThreads);
+
+        try {
+            List<Future<?>> exportWorkers = start(exportPool, exportThreads, exportQueue, export, graphvizQueue, failureHandler, release, failures);
+            List<Future<?>> graphvizWorkers = start(graphvizPool, graphvizThreads, graphvizQueue, graphviz, parseQueue, failureHandler, release, failures);
+            List<Future<?>> parseWorkers = start(parsePool, parseThreads, parseQueue, parse, null, failureHandler, release, failures);
+
+            // each stage is told to finish once all of the workers in the stage before it have finished
+            await(exportWorkers);
+            for (int i = 0; i < graphvizThreads; i++) {
+                graphvizQueue.put(END);
+            }
+            await(graphvizWorkers);
+            for (int i = 0; i < parseThreads; i++) {
+                parseQueue.put(END);
+            }
+            await(parseWorkers);
+        } finally {
+            exportPool.shutdownNow();
+            graphvizPool.shutdownNow();
+            parsePool.shutdownNow();
+            exportPool.awaitTermination(1, TimeUnit.MINUTES);
+            graphvizPool.awaitTermination(1, TimeUnit.MINUTES);
+            parsePool.awaitTermination(1, TimeUnit.MINUTES);
+
+            // release anything abandoned in a queue (e.g. after an interrupt)
+            drain(exportQueue, release);
+            drain(graphvizQueue, release);
+            drain(parseQueue, release);
+        }
+
+        if (!failures.isEmpty()) {
+            Exception exception = failures.get(0);
+            for (int i = 1; i < failures.size(); i++) {
+                exception.addSuppressed(failures.get(i));
+            }
+
+            throw exception;
+        }
+    }
+
+    private List<Future<?>> start(ExecutorService pool, int threads, BlockingQueue<Object> in, Stage<T> stage, BlockingQueue<Object> out, FailureHandler<T> failureHandler, Release<T> release, List<Exception> failures) {
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> {
+                work(in, stage, out, failureHandler, release, failures);
+                return null;
+            }));
+        }
+
+        return workers;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void work(BlockingQueue<Object> in, Stage<T> stage, BlockingQueue<Object> out, FailureHandler<T> failureHandler, Release<T> release, List<Exception> failures) throws InterruptedException {
+        while (true) {
+            Object item = in.take();
+            if (item == END) {
+                return;
+            }
+
+            T job = (T)item;
+            boolean forward;
+            try {
+                forward = stage.run(job);
+            } catch (InterruptedException e) {
+                release.release(job);
+                throw e;
+            } catch (Exception e) {
+                release.release(job);
+                try {
+                    failureHandler.handle(job, e);
+                } catch (InterruptedException ie) {
+                    throw ie;
+                } catch (Exception fe) {
+                    failures.add(fe);
+                }
+                continue;
+            }
+
+            if (forward && out != null) {
+                try {
+                    out.put(job);
+                } catch (InterruptedException e) {
+                    release.release(job);
+                    throw e;
+                }
+            } else {
+                release.release(job);
+            }
+        }
+    }
+
+    private void await(List<Future<?>> workers) throws Exception {
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception)e.getCause();
+                } else {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void drain(BlockingQueue<Object> queue, Release<T> release) {
+        Object item;
+        while ((item = queue.poll()) != null) {
+            if (item != END) {
+                release.release((T)item);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,158 @@
+package com.structurizr.graphviz;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Summarises what happened when the graphviz automatic layout was applied to a single view.
+ */
+public class LayoutReport {
+
+    private final String viewKey;
+    private long duration;
+    private double estimatedDuration;
+    private int effortLevel;
+    private LayoutTier tier;
+    private boolean fastPath;
+    private final Map<String, Long> phaseTimings = new LinkedHashMap<>();
+    private final Map<String, byte[]> outputs = new LinkedHashMap<>();
+    private final Map<LayoutTier, String> tierFailures = new LinkedHashMap<>();
+
+    LayoutReport(String viewKey) {
+        this.viewKey = viewKey;
+    }
+
+    /**
+     * Gets the key of the view this report relates to.
+     *
+     * @return  a view key
+     */
+    public String getViewKey() {
+        return viewKey;
+    }
+
+    /**
+     * Gets the wall-clock time taken to run graphviz.
+     *
+     * @return  a duration, in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    void setDuration(long duration) {
+        this.duration = duration;
+    }
+
+    /**
+     * Gets the time that graphviz was estimated to take, before the view was laid out.
+     *
+     * @return  a duration, in milliseconds
+     */
+    public double getEstimatedDuration() {
+        return estimatedDuration;
+    }
+
+    void setEstimatedDuration(double estimatedDuration) {
+        this.estimatedDuration = estimatedDuration;
+    }
+
+    /**
+     * Gets the tier of the fallback chain that produced the layout for this view.
+     *
+     * @return  a LayoutTier, or null if no tier succeeded
+     */
+    public LayoutTier getTier() {
+        return tier;
+    }
+
+    void setTier(LayoutTier tier) {
+        this.tier = tier;
+    }
+
+    /**
+     * Determines whether this view was trivial enough to be laid out inside the JVM, without running graphviz.
+     *
+     * @return  true if graphviz was not run, false otherwise
+     */
+    public boolean isFastPath() {
+        return fastPath;
+    }
+
+    void setFastPath(boolean fastPath) {
+        this.fastPath = fastPath;
+    }
+
+    /**
+     * Gets the graphviz effort level used for this view, where 0 is full quality and higher levels trade layout
+     * quality for speed in order to meet the time budget.
+     *
+     * @return  an effort level
+     */
+    public int getEffortLevel() {
+        return effortLevel;
+    }
+
+    void setEffortLevel(int effortLevel) {
+        this.effortLevel = effortLevel;
+    }
+
+    /**
+     * Gets the time graphviz reported for each of its layout phases (e.g. rank, mincross, position, splines).
+     * This is only populated when phase timings have been requested.
+     *
+     * @return  a map of phase name to duration in milliseconds, in the order the phases were reported
+     */
+    public Map<String, Long> getPhaseTimings() {
+        return Collections.unmodifiableMap(phaseTimings);
+    }
+
+    void setPhaseTimings(Map<String, Long> phaseTimings) {
+        this.phaseTimings.clear();
+        this.phaseTimings.putAll(phaseTimings);
+    }
+
+    /**
+     * Gets the rendered output that graphviz produced for this view, in the given format, as part of the same run
+     * that computed the layout. Only formats requested via GraphvizAutomaticLayout.addOutputFormat are available.
+     *
+     * @param format    an output format (e.g. "svg" or "png")
+     * @return  the rendered output, or null if it is not available
+     */
+    public byte[] getOutput(String format) {
+        return outputs.get(format);
+    }
+
+    /**
+     * Gets all of the rendered outputs that graphviz produced for this view.
+     *
+     * @return  a map of output format to rendered output, in the order the formats were requested
+     */
+    public Map<String, byte[]> getOutputs() {
+        return Collections.unmodifiableMap(outputs);
+    }
+
+    void addOutput(String format, byte[] output) {
+        this.outputs.put(format, output);
+    }
+
+    /**
+     * Gets the reason each tier of the fallback chain that was tried before the one that produced the layout failed.
+     *
+     * @return  a map of layout tier to error message, in the order the tiers were tried
+     */
+    public Map<LayoutTier, String> getTierFailures() {
+        return Collections.unmodifiableMap(tierFailures);
+    }
+
+    void addTierFailure(LayoutTier tier, Exception exception) {
+        this.tierFailures.put(tier, exception.getClass().getSimpleName() + ": " + exception.getMessage());
+    }
+
+    @Override
+    public String toString() {
+        return viewKey + ": " + duration + "ms (estimated " + Math.round(estimatedDuration) + "ms, " + tier + (fastPath ? ", fast path" : "") + ", effort level " + effortLevel + ") " + phaseTimings;
+    }
+
+}
@@ -0,0 +1,208 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+import com.structurizr.view.Vertex;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * The layout of a single view, as parsed from the graphviz output: the raw position of each element and the raw
+ * vertices of each relationship (in Structurizr coordinates), stored in primitive arrays with an index by id, along
+ * with the bounds of the layout. Instances are immutable and independent of the workspace, so they can be computed
+ * on another thread, cached or serialised, and then applied to a view in a single pass.
+ */
+final class LayoutResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String[] elementIds;
+    private final int[] elementCoordinates; // x and y, interleaved
+
+    private final String[] relationshipIds;
+    private final int[] vertexOffsets; // the vertices of relationship i are between offsets i and i+1
+    private final int[] vertexCoordinates; // x and y, interleaved
+
+    private final Bounds bounds;
+
+    private final Map<String, Integer> elementIndex;
+    private final Map<String, Integer> relationshipIndex;
+
+    private LayoutResult(String[] elementIds, int[] elementCoordinates, String[] relationshipIds, int[] vertexOffsets, int[] vertexCoordinates, Bounds bounds) {
+        this.elementIds = elementIds;
+        this.elementCoordinates = elementCoordinates;
+        this.relationshipIds = relationshipIds;
+        this.vertexOffsets = vertexOffsets;
+        this.vertexCoordinates = vertexCoordinates;
+        this.bounds = bounds;
+
+        this.elementIndex = new HashMap<>(elementIds.length * 2);
+        for (int i = 0; i < elementIds.length; i++) {
+            elementIndex.put(elementIds[i], i);
+        }
+
+        this.relationshipIndex = new HashMap<>(relationshipIds.length * 2);
+        for (int i = 0; i < relationshipIds.length; i++) {
+            relationshipIndex.put(relationshipIds[i], i);
+        }
+    }
+
+    Bounds getBounds() {
+        return bounds;
+    }
+
+    int getNumberOfElements() {
+        return elementIds.length;
+    }
+
+    int getNumberOfRelationships() {
+        return relationshipIds.length;
+    }
+
+    /**
+     * Gets the index of the element with the given id.
+     *
+     * @return  an index, or -1 if the element isn't in this layout
+     */
+    int indexOfElement(String id) {
+        return elementIndex.getOrDefault(id, -1);
+    }
+
+    String getElementId(int index) {
+        return elementIds[index];
+    }
+
+    int getElementX(int index) {
+        return elementCoordinates[index * 2];
+    }
+
+    int getElementY(int index) {
+        return elementCoordinates[(index * 2) + 1];
+    }
+
+    /**
+     * Gets the index of the relationship with the given id.
+     *
+     * @return  an index, or -1 if the relationship isn't in this layout
+     */
+    int indexOfRelationship(String id) {
+        return relationshipIndex.getOrDefault(id, -1);
+    }
+
+    String getRelationshipId(int index) {
+        return relationshipIds[index];
+    }
+
+    /**
+     * Gets the vertices of the given relationship, as x and y coordinates, interleaved.
+     */
+    int[] getVertexCoordinates(int index) {
+        return Arrays.copyOfRange(vertexCoordinates, vertexOffsets[index] * 2, vertexOffsets[index + 1] * 2);
+    }
+
+    int getNumberOfVertices(int index) {
+        return vertexOffsets[index + 1] - vertexOffsets[index];
+    }
+
+    int getVertexX(int index, int vertex) {
+        return vertexCoordinates[(vertexOffsets[index] + vertex) * 2];
+    }
+
+    int getVertexY(int index, int vertex) {
+        return vertexCoordinates[((vertexOffsets[index] + vertex) * 2) + 1];
+    }
+
+    /**
+     * Applies this layout to a view, centring it on the page (and changing the paper size if required).
+     */
+    void apply(ModelView view, PageLayout pageLayout) {
+        pageLayout.resize(view, bounds);
+        apply(view, pageLayout.getTranslationX(bounds), pageLayout.getTranslationY(bounds));
+    }
+
+    /**
+     * Applies this layout to a view, moving everything by the given amount. Elements and relationships that are not
+     * part of this layout are left as they are.
+     */
+    void apply(ModelView view, int translateX, int translateY) {
+        for (ElementView elementView : view.getElements()) {
+            Integer index = elementIndex.get(elementView.getId());
+            if (index != null) {
+                elementView.setX(elementCoordinates[index * 2] + translateX);
+                elementView.setY(elementCoordinates[(index * 2) + 1] + translateY);
+            }
+        }
+
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            Integer index = relationshipIndex.get(relationshipView.getId());
+            if (index != null) {
+                Set<Vertex> vertices = new LinkedHashSet<>();
+                for (int i = vertexOffsets[index]; i < vertexOffsets[index + 1]; i++) {
+                    vertices.add(new Vertex(vertexCoordinates[i * 2] + translateX, vertexCoordinates[(i * 2) + 1] + translateY));
+                }
+                relationshipView.setVertices(vertices);
+            }
+        }
+    }
+
+    /**
+     * Collects element positions and relationship vertices, in order to create a LayoutResult.
+     */
+    static final class Builder {
+
+        private final List<String> elementIds = new ArrayList<>();
+        private int[] elementCoordinates = new int[32];
+
+        private final List<String> relationshipIds = new ArrayList<>();
+        private int[] vertexOffsets = new int[16];
+        private int[] vertexCoordinates = new int[32];
+        private int numberOfVertices = 0;
+
+        Builder addElement(String id, int x, int y) {
+            elementCoordinates = ensureCapacity(elementCoordinates, (elementIds.size() + 1) * 2);
+            elementCoordinates[elementIds.size() * 2] = x;
+            elementCoordinates[(elementIds.size() * 2) + 1] = y;
+            elementIds.add(id);
+
+            return this;
+        }
+
+        /**
+         * Adds a relationship, with its vertices as x and y coordinates, interleaved.
+         */
+        Builder addRelationship(String id, int[] coordinates) {
+            vertexOffsets = ensureCapacity(vertexOffsets, relationshipIds.size() + 2);
+            vertexCoordinates = ensureCapacity(vertexCoordinates, (numberOfVertices * 2) + coordinates.length);
+
+            System.arraycopy(coordinates, 0, vertexCoordinates, numberOfVertices * 2, coordinates.length);
+            numberOfVertices += coordinates.length / 2;
+            relationshipIds.add(id);
+            vertexOffsets[relationshipIds.size()] = numberOfVertices;
+
+            return this;
+        }
+
+        LayoutResult build(Bounds bounds) {
+            return new LayoutResult(
+                    elementIds.toArray(new String[0]),
+                    Arrays.copyOf(elementCoordinates, elementIds.size() * 2),
+                    relationshipIds.toArray(new String[0]),
+                    Arrays.copyOf(vertexOffsets, relationshipIds.size() + 1),
+                    Arrays.copyOf(vertexCoordinates, numberOfVertices * 2),
+                    bounds
+            );
+        }
+
+        private static int[] ensureCapacity(int[] array, int capacity) {
+            if (array.length >= capacity) {
+                return array;
+            }
+
+            return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+    }
+
+}
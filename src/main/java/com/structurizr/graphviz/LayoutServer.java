@@ -0,0 +1,297 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.View;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A small HTTP server that applies the graphviz automatic layout to workspaces, so that a single, warm JVM can be
+ * shared by short-lived clients. The endpoints are:
+ *
+ * - POST /layout - lays out all views in the workspace (JSON) in the request body, returning the workspace as JSON;
+ *   add a "view" query parameter (e.g. /layout?view=SystemContext) to lay out a single view
+ * - GET /metrics - returns request counts, throughput and latency as JSON
+ *
+ * Request bodies larger than the maximum request size (10MB by default) are rejected with a 413 response, before
+ * the workspace is parsed.
+ *
+ * Each worker thread has its own GraphvizAutomaticLayout instance (created by the given supplier), which is reused
+ * for all of the requests handled by that thread. If a LayoutService is given, graphviz runs are scheduled by it,
+ * using the tenant named by the X-Tenant request header; single view requests use the interactive lane, and whole
+ * workspaces the batch lane. Requests waiting for the service hold a worker thread, so the number of threads should
+ * be well above the service's concurrency; otherwise requests queue for a thread first, in arrival order, where the
+ * service can't take turns between tenants.
+ */
+public class LayoutServer {
+
+    private static final Log log = LogFactory.getLog(LayoutServer.class);
+
+    private static final int DEFAULT_PORT = 8080;
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String VIEW_PARAMETER = "view=";
+    private static final String TENANT_HEADER = "X-Tenant";
+    private static final String DEFAULT_TENANT = "default";
+    private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+    private static final int DEFAULT_MAXIMUM_REQUEST_SIZE = 10 * 1024 * 1024;
+
+    // so that requests are handed to the layout service (which queues them fairly) rather than queueing for a thread
+    private static final int THREADS_PER_LAYOUT_SLOT = 16;
+
+    private final HttpServer server;
+    private final ExecutorService executorService;
+    private final LayoutMetrics metrics = new LayoutMetrics();
+    private final ThreadLocal<GraphvizAutomaticLayout> layouts;
+    private final LayoutService layoutService;
+    private volatile int maximumRequestSize = DEFAULT_MAXIMUM_REQUEST_SIZE;
+
+    /**
+     * Creates a new layout server.
+     *
+     * @param port              the port to listen on (zero to pick a free port)
+     * @param numberOfThreads   the number of requests that can be handled concurrently
+     * @param layoutSupplier    creates (and configures) the GraphvizAutomaticLayout instance for each worker thread
+     */
+    public LayoutServer(int port, int numberOfThreads, Supplier<GraphvizAutomaticLayout> layoutSupplier) throws IOException {
+        this(port, numberOfThreads, layoutSupplier, null);
+    }
+
+    /**
+     * Creates a new layout server, with graphviz runs scheduled by the given layout service.
+     *
+     * @param port              the port to listen on (zero to pick a free port)
+     * @param numberOfThreads   the number of requests that can be handled concurrently
+     * @param layoutSupplier    creates (and configures) the GraphvizAutomaticLayout instance for each worker thread
+     * @param layoutService     a LayoutService, or null
+     */
+    public LayoutServer(int port, int numberOfThreads, Supplier<GraphvizAutomaticLayout> layoutSupplier, LayoutService layoutService) throws IOException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be 1 or more");
+        }
+
+        if (layoutService != null && numberOfThreads <= layoutService.getConcurrency()) {
+            log.warn("With " + numberOfThreads + " threads and a layout service with a concurrency of " + layoutService.getConcurrency() + ", requests will queue for a thread before reaching the layout service");
+        }
+
+        this.layouts = ThreadLocal.withInitial(layoutSupplier);
+        this.layoutService = layoutService;
+        this.executorService = Executors.newFixedThreadPool(numberOfThreads);
+
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.setExecutor(executorService);
+        this.server.createContext("/layout", this::layout);
+        this.server.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        server.start();
+        log.info("Layout server listening on port " + getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets the maximum size of a request body; larger requests are rejected with a 413 (Content Too Large) response.
+     *
+     * @param maximumRequestSize    a number of bytes
+     */
+    public void setMaximumRequestSize(int maximumRequestSize) {
+        if (maximumRequestSize < 1) {
+            throw new IllegalArgumentException("The maximum request size must be a positive number of bytes");
+        }
+
+        this.maximumRequestSize = maximumRequestSize;
+    }
+
+    public int getMaximumRequestSize() {
+        return maximumRequestSize;
+    }
+
+    /**
+     * Gets the port the server is listening on.
+     *
+     * @return  a port number
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void layout(HttpExchange exchange) throws IOException {
+        long start = System.currentTimeMillis();
+        int status;
+        String body;
+        int numberOfViews = 0;
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            status = 405;
+            body = message("Use POST to lay out a workspace");
+        } else {
+            byte[] request = readRequestBody(exchange);
+            Workspace workspace = null;
+            if (request != null) {
+                try {
+                    workspace = WorkspaceUtils.fromJson(new String(request, StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    log.debug("The workspace could not be parsed", e);
+                }
+            }
+
+            if (request == null) {
+                status = 413;
+                body = message("The request is larger than the maximum of " + maximumRequestSize + " bytes");
+            } else if (workspace == null) {
+                status = 400;
+                body = message("The workspace could not be parsed");
+            } else {
+                GraphvizAutomaticLayout layout = layouts.get();
+                String viewKey = getViewKey(exchange);
+                View view = viewKey != null ? workspace.getViews().getViewWithKey(viewKey) : null;
+
+                if (viewKey != null && !(view instanceof ModelView)) {
+                    status = 404;
+                    body = message("A view with key " + viewKey + " could not be found");
+                } else {
+                    if (layoutService != null) {
+                        String tenant = exchange.getRequestHeaders().getFirst(TENANT_HEADER);
+                        layout.setLayoutService(layoutService, tenant != null ? tenant : DEFAULT_TENANT, view != null ? LayoutService.Lane.Interactive : LayoutService.Lane.Batch);
+                    }
+
+                    try {
+                        if (view != null) {
+                            layout.applyLayout((ModelView)view);
+                        } else {
+                            layout.apply(workspace);
+                        }
+
+                        numberOfViews = layout.getReports().size();
+                        status = 200;
+                        body = WorkspaceUtils.toJson(workspace, false);
+                    } catch (Exception e) {
+                        log.error("The workspace could not be laid out", e);
+                        status = 500;
+                        body = message("The workspace could not be laid out: " + e.getMessage());
+                    } finally {
+                        layout.clearReports();
+                    }
+                }
+            }
+        }
+
+        // metrics are recorded before responding, so that they include this request by the time the client sees it
+        metrics.record(System.currentTimeMillis() - start, numberOfViews, status == 200);
+
+        try {
+            send(exchange, status, body);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            send(exchange, 200, metrics.toJson(layoutService != null ? layoutService.toJson() : null));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the request body, returning null if it's larger than the maximum request size. The Content-Length header
+     * is checked first, and no more than the maximum is read, so that a chunked request can't exceed it either.
+     */
+    private byte[] readRequestBody(HttpExchange exchange) throws IOException {
+        int maximumRequestSize = this.maximumRequestSize;
+        String contentLength = exchange.getRequestHeaders().getFirst(CONTENT_LENGTH_HEADER);
+        try {
+            if (contentLength != null && Long.parseLong(contentLength.trim()) > maximumRequestSize) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            // the body is still limited as it's read
+        }
+
+        byte[] request = exchange.getRequestBody().readNBytes(maximumRequestSize < Integer.MAX_VALUE ? maximumRequestSize + 1 : maximumRequestSize);
+
+        return request.length > maximumRequestSize ? null : request;
+    }
+
+    private String getViewKey(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(VIEW_PARAMETER)) {
+                    return URLDecoder.decode(parameter.substring(VIEW_PARAMETER.length()), StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private String message(String message) {
+        StringBuilder json = new StringBuilder("{\"message\":\"");
+        for (char c : message.toCharArray()) {
+            if (c == '\\' || c == '"') {
+                json.append('\\').append(c);
+            } else if (c >= ' ') {
+                json.append(c);
+            }
+        }
+
+        return json.append("\"}").toString();
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Starts a layout server with the default settings.
+     *
+     * @param args  optionally, the port number
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+
+        // graphviz processes from all request threads share the CPU and memory available
+        ConcurrencyController concurrencyController = ConcurrencyController.fromCgroupLimits();
+        LayoutService layoutService = new LayoutService(concurrencyController.getLimit());
+        int numberOfThreads = Math.max(Runtime.getRuntime().availableProcessors() * 2, layoutService.getConcurrency() * THREADS_PER_LAYOUT_SLOT);
+        LayoutServer server = new LayoutServer(port, numberOfThreads, () -> {
+            GraphvizAutomaticLayout layout = new GraphvizAutomaticLayout();
+            layout.setConcurrencyController(concurrencyController);
+
+            return layout;
+        }, layoutService);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+    }
+
+}
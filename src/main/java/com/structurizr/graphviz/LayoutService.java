@@ -0,0 +1,407 @@
+package com.structurizr.graphviz;
+
+import java.util.*;
+
+/**
+ * A process-wide scheduler for graphviz runs, shared by any number of GraphvizAutomaticLayout instances (see
+ * setLayoutService), so that one tenant's large workspace can't starve other tenants. At most a fixed number of runs
+ * happen at the same time; waiting runs are granted a slot by lane (interactive before batch, although batch runs are
+ * guaranteed a share so that they are never starved), and then round-robin between tenants, so that each tenant with
+ * waiting runs gets an equal share of slots regardless of how many runs it has queued. Statistics are kept for a
+ * bounded number of tenants, evicting the least recently active tenant when the limit is reached.
+ */
+public class LayoutService {
+
+    /**
+     * The priority lane for a run.
+     */
+    public enum Lane {
+        Interactive,
+        Batch
+    }
+
+    /**
+     * A unit of work, run while holding a slot.
+     */
+    public interface Task {
+
+        void run() throws Exception;
+
+    }
+
+    // when both lanes have runs waiting, every BATCH_SHARE-th slot goes to the batch lane
+    private static final int BATCH_SHARE = 4;
+
+    private static final int DEFAULT_MAXIMUM_NUMBER_OF_TENANTS = 1000;
+
+    private final int concurrency;
+    private int running = 0;
+    private int interactiveStreak = 0;
+
+    private final Map<Lane, Queue> queues = new EnumMap<>(Lane.class);
+    private final Map<String, TenantStatistics> statistics;
+
+    /**
+     * Creates a new layout service.
+     *
+     * @param concurrency   the maximum number of graphviz runs at the same time, across all tenants
+     */
+    public LayoutService(int concurrency) {
+        this(concurrency, DEFAULT_MAXIMUM_NUMBER_OF_TENANTS);
+    }
+
+    /**
+     * Creates a new layout service.
+     *
+     * @param concurrency               the maximum number of graphviz runs at the same time, across all tenants
+     * @param maximumNumberOfTenants    the maximum number of tenants to keep statistics for (tenant names may come
+     *                                  from clients, so this bounds the memory used)
+     */
+    public LayoutService(int concurrency, int maximumNumberOfTenants) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("The concurrency must be 1 or more");
+        }
+        if (maximumNumberOfTenants < 1) {
+            throw new IllegalArgumentException("The maximum number of tenants must be 1 or more");
+        }
+
+        this.concurrency = concurrency;
+        this.statistics = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TenantStatistics> eldest) {
+                return size() > maximumNumberOfTenants;
+            }
+        };
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new Queue());
+        }
+    }
+
+    /**
+     * Runs the given task (on the calling thread) once a slot is available, recording the time spent waiting for the
+     * slot and running the task against the tenant.
+     *
+     * @param tenant    the tenant the task is for
+     * @param lane      the priority lane
+     * @param task      the task
+     */
+    public void run(String tenant, Lane lane, Task task) throws Exception {
+        run(tenant, lane, () -> {}, task);
+    }
+
+    /**
+     * Runs the given task (on the calling thread) once a slot is available and the admission step has completed,
+     * recording the time spent waiting for the slot and in the admission step (e.g. waiting for a
+     * ConcurrencyController permit) as queueing time, and the time spent running the task as processing time.
+     *
+     * @param tenant        the tenant the task is for
+     * @param lane          the priority lane
+     * @param admission     run once a slot has been granted, before the task
+     * @param task          the task
+     */
+    public void run(String tenant, Lane lane, Task admission, Task task) throws Exception {
+        if (tenant == null || lane == null) {
+            throw new IllegalArgumentException("A tenant and lane must be specified");
+        }
+
+        long queued = System.currentTimeMillis();
+        acquire(tenant, lane);
+        long started = 0;
+
+        boolean success = false;
+        try {
+            admission.run();
+            started = System.currentTimeMillis();
+
+            task.run();
+            success = true;
+        } finally {
+            long finished = System.currentTimeMillis();
+            if (started == 0) {
+                // the task never started
+                started = finished;
+            }
+
+            release(tenant, started - queued, finished - started, success);
+        }
+    }
+
+    private synchronized void acquire(String tenant, Lane lane) throws InterruptedException {
+        if (running < concurrency && isEmpty()) {
+            running++;
+            return;
+        }
+
+        Ticket ticket = new Ticket();
+        queues.get(lane).add(tenant, ticket);
+
+        try {
+            while (!ticket.granted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            if (ticket.granted) {
+                // granted at the same time as being interrupted, so pass the slot on
+                running--;
+                dispatch();
+            } else {
+                queues.get(lane).remove(tenant, ticket);
+            }
+
+            throw e;
+        }
+    }
+
+    private synchronized void release(String tenant, long queueingTime, long processingTime, boolean success) {
+        running--;
+        statistics.computeIfAbsent(tenant, TenantStatistics::new).record(queueingTime, processingTime, success);
+        dispatch();
+    }
+
+    private void dispatch() {
+        Queue interactive = queues.get(Lane.Interactive);
+        Queue batch = queues.get(Lane.Batch);
+
+        boolean granted = false;
+        while (running < concurrency && !isEmpty()) {
+            Ticket ticket;
+            if (!interactive.isEmpty() && (batch.isEmpty() || interactiveStreak < BATCH_SHARE - 1)) {
+                ticket = interactive.next();
+                interactiveStreak++;
+            } else {
+                ticket = batch.next();
+                interactiveStreak = 0;
+            }
+
+            ticket.granted = true;
+            running++;
+            granted = true;
+        }
+
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private boolean isEmpty() {
+        for (Queue queue : queues.values()) {
+            if (!queue.isEmpty()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Gets the maximum number of graphviz runs at the same time.
+     *
+     * @return  the concurrency
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Gets the number of graphviz runs in progress.
+     *
+     * @return  a number of runs
+     */
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Gets the number of graphviz runs waiting for a slot, in the given lane.
+     *
+     * @param lane  a Lane
+     * @return  a number of runs
+     */
+    public synchronized int getQueued(Lane lane) {
+        return queues.get(lane).size();
+    }
+
+    /**
+     * Gets the queueing and processing statistics for each tenant.
+     *
+     * @return  a map of tenant to statistics, ordered by tenant
+     */
+    public synchronized Map<String, TenantStatistics> getStatistics() {
+        Map<String, TenantStatistics> copy = new LinkedHashMap<>();
+        new TreeMap<>(statistics).forEach((tenant, tenantStatistics) -> copy.put(tenant, tenantStatistics.copy()));
+
+        return copy;
+    }
+
+    /**
+     * Gets the statistics for each tenant as a JSON object, keyed by tenant.
+     */
+    synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (TenantStatistics tenantStatistics : new TreeMap<>(statistics).values()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"');
+            for (char c : tenantStatistics.getTenant().toCharArray()) {
+                if (c == '\\' || c == '"') {
+                    json.append('\\').append(c);
+                } else if (c >= ' ') {
+                    json.append(c);
+                }
+            }
+            json.append("\":").append(String.format(Locale.US,
+                    "{\"runs\":%d,\"failures\":%d,\"queueing\":{\"mean\":%.1f,\"max\":%d},\"processing\":{\"mean\":%.1f,\"max\":%d}}",
+                    tenantStatistics.getRuns(),
+                    tenantStatistics.getFailures(),
+                    tenantStatistics.getMeanQueueingTime(),
+                    tenantStatistics.getMaximumQueueingTime(),
+                    tenantStatistics.getMeanProcessingTime(),
+                    tenantStatistics.getMaximumProcessingTime()));
+        }
+
+        return json.append('}').toString();
+    }
+
+    /**
+     * Queueing and processing statistics for a single tenant.
+     */
+    public static final class TenantStatistics {
+
+        private final String tenant;
+        private long runs;
+        private long failures;
+        private long totalQueueingTime;
+        private long maximumQueueingTime;
+        private long totalProcessingTime;
+        private long maximumProcessingTime;
+
+        private TenantStatistics(String tenant) {
+            this.tenant = tenant;
+        }
+
+        private void record(long queueingTime, long processingTime, boolean success) {
+            runs++;
+            if (!success) {
+                failures++;
+            }
+
+            totalQueueingTime += queueingTime;
+            maximumQueueingTime = Math.max(maximumQueueingTime, queueingTime);
+            totalProcessingTime += processingTime;
+            maximumProcessingTime = Math.max(maximumProcessingTime, processingTime);
+        }
+
+        private TenantStatistics copy() {
+            TenantStatistics copy = new TenantStatistics(tenant);
+            copy.runs = runs;
+            copy.failures = failures;
+            copy.totalQueueingTime = totalQueueingTime;
+            copy.maximumQueueingTime = maximumQueueingTime;
+            copy.totalProcessingTime = totalProcessingTime;
+            copy.maximumProcessingTime = maximumProcessingTime;
+
+            return copy;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Gets the mean time spent waiting for a slot.
+         *
+         * @return  a duration, in milliseconds
+         */
+        public double getMeanQueueingTime() {
+            return runs > 0 ? (double)totalQueueingTime / runs : 0;
+        }
+
+        public long getMaximumQueueingTime() {
+            return maximumQueueingTime;
+        }
+
+        /**
+         * Gets the mean time spent running graphviz.
+         *
+         * @return  a duration, in milliseconds
+         */
+        public double getMeanProcessingTime() {
+            return runs > 0 ? (double)totalProcessingTime / runs : 0;
+        }
+
+        public long getMaximumProcessingTime() {
+            return maximumProcessingTime;
+        }
+
+    }
+
+    private static final class Ticket {
+
+        private boolean granted = false;
+
+    }
+
+    /**
+     * The runs waiting in a single lane: a FIFO queue per tenant, with tenants taking turns.
+     */
+    private static final class Queue {
+
+        private final Map<String, Deque<Ticket>> tickets = new HashMap<>();
+        private final Deque<String> tenants = new ArrayDeque<>();
+        private int size = 0;
+
+        void add(String tenant, Ticket ticket) {
+            Deque<Ticket> queue = tickets.computeIfAbsent(tenant, t -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                tenants.addLast(tenant);
+            }
+            queue.addLast(ticket);
+            size++;
+        }
+
+        Ticket next() {
+            String tenant = tenants.pollFirst();
+            Deque<Ticket> queue = tickets.get(tenant);
+            Ticket ticket = queue.pollFirst();
+            size--;
+
+            if (queue.isEmpty()) {
+                tickets.remove(tenant);
+            } else {
+                tenants.addLast(tenant);
+            }
+
+            return ticket;
+        }
+
+        void remove(String tenant, Ticket ticket) {
+            Deque<Ticket> queue = tickets.get(tenant);
+            if (queue != null && queue.remove(ticket)) {
+                size--;
+                if (queue.isEmpty()) {
+                    tickets.remove(tenant);
+                    tenants.remove(tenant);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.structurizr.graphviz;
+
+/**
+ * The layout algorithms that can be used in a fallback chain, from highest to lowest quality.
+ */
+public enum LayoutTier {
+
+    /**
+     * Graphviz dot, using the effort settings chosen for the view (full quality unless a time budget has been set).
+     */
+    Dot,
+
+    /**
+     * Graphviz dot, with reduced crossing minimisation and network simplex effort, and straight edges.
+     */
+    ReducedEffortDot,
+
+    /**
+     * Graphviz sfdp, a force-directed layout that scales to large graphs (clusters and rank direction are ignored).
+     */
+    Sfdp,
+
+    /**
+     * A simple layered layout, computed inside the JVM without running graphviz; this never times out.
+     */
+    Layered
+
+}
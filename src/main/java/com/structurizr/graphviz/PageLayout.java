@@ -0,0 +1,90 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.view.*;
+
+/**
+ * Moves laid out elements and vertices so that they are centred on a page with the given margin, optionally
+ * changing the paper size of the view to fit.
+ */
+class PageLayout {
+
+    private final int margin;
+    private final boolean changePaperSize;
+
+    PageLayout(int margin, boolean changePaperSize) {
+        this.margin = margin;
+        this.changePaperSize = changePaperSize;
+    }
+
+    /**
+     * Applies the page layout to a view, whose elements and vertices have already been positioned within the given
+     * bounds.
+     */
+    void apply(ModelView view, int minimumX, int minimumY, int maximumX, int maximumY) {
+        Bounds bounds = new Bounds(minimumX, minimumY, maximumX, maximumY);
+        resize(view, bounds);
+
+        // move everything relative to 0,0, and then centre everything, in a single pass
+        int translateX = getTranslationX(bounds);
+        int translateY = getTranslationY(bounds);
+
+        for (ElementView elementView : view.getElements()) {
+            elementView.setX(elementView.getX() + translateX);
+            elementView.setY(elementView.getY() + translateY);
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            for (Vertex vertex : relationshipView.getVertices()) {
+                vertex.setX(vertex.getX() + translateX);
+                vertex.setY(vertex.getY() + translateY);
+            }
+        }
+    }
+
+    /**
+     * Changes the paper size of the view to fit a layout with the given bounds, if required.
+     */
+    void resize(ModelView view, Bounds bounds) {
+        if (changePaperSize) {
+            int pageWidth = getPageWidth(bounds);
+            int pageHeight = getPageHeight(bounds);
+
+            view.setPaperSize(null);
+            view.setDimensions(new Dimensions(pageWidth, pageHeight));
+
+            PaperSize.Orientation orientation = (pageWidth > pageHeight) ? PaperSize.Orientation.Landscape : PaperSize.Orientation.Portrait;
+            for (PaperSize paperSize : PaperSize.getOrderedPaperSizes(orientation)) {
+                if (paperSize.getWidth() > (pageWidth) && paperSize.getHeight() > (pageHeight)) {
+                    view.setPaperSize(paperSize);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the horizontal distance to move a layout with the given bounds, so that it's centred on the page.
+     */
+    int getTranslationX(Bounds bounds) {
+        int deltaX = (getPageWidth(bounds) - bounds.getMaximumX() + bounds.getMinimumX()) / 2;
+
+        return deltaX - bounds.getMinimumX();
+    }
+
+    /**
+     * Gets the vertical distance to move a layout with the given bounds, so that it's centred on the page.
+     */
+    int getTranslationY(Bounds bounds) {
+        int deltaY = (getPageHeight(bounds) - bounds.getMaximumY() + bounds.getMinimumY()) / 2;
+
+        return deltaY - bounds.getMinimumY();
+    }
+
+    private int getPageWidth(Bounds bounds) {
+        return Math.max(margin, bounds.getMaximumX() + margin);
+    }
+
+    private int getPageHeight(Bounds bounds) {
+        return Math.max(margin, bounds.getMaximumY() + margin);
+    }
+
+}
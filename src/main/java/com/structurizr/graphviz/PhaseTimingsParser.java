@@ -0,0 +1,66 @@
+package com.structurizr.graphviz;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the per-phase timings that graphviz writes to stderr when run in verbose mode (-v).
+ */
+class PhaseTimingsParser {
+
+    // e.g. "Starting phase 1 [dot_rank]"
+    private static final Pattern PHASE_STARTED = Pattern.compile("^Starting phase (\\d+) \\[(?:dot_)?(\\w+)\\]");
+
+    // e.g. "Finished phase 1 0.01 secs"
+    private static final Pattern PHASE_FINISHED = Pattern.compile("^Finished phase (\\d+) ([0-9.]+) secs?");
+
+    // e.g. "routesplines: 42 edges, 1234 boxes 0.03 sec"
+    private static final Pattern SPLINES = Pattern.compile("^routesplines: .* ([0-9.]+) secs?");
+
+    private static final String SPLINES_PHASE = "splines";
+
+    Map<String, Long> parse(String stderr) {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        if (stderr == null) {
+            return timings;
+        }
+
+        Map<String, String> phaseNames = new HashMap<>();
+
+        for (String line : stderr.split("\\R")) {
+            line = line.trim();
+
+            Matcher matcher = PHASE_STARTED.matcher(line);
+            if (matcher.find()) {
+                phaseNames.put(matcher.group(1), matcher.group(2));
+                continue;
+            }
+
+            matcher = PHASE_FINISHED.matcher(line);
+            if (matcher.find()) {
+                String phase = phaseNames.getOrDefault(matcher.group(1), "phase " + matcher.group(1));
+                timings.merge(phase, toMilliseconds(matcher.group(2)), Long::sum);
+                continue;
+            }
+
+            matcher = SPLINES.matcher(line);
+            if (matcher.find()) {
+                timings.merge(SPLINES_PHASE, toMilliseconds(matcher.group(1)), Long::sum);
+            }
+        }
+
+        return timings;
+    }
+
+    private long toMilliseconds(String seconds) {
+        try {
+            return Math.round(Double.parseDouble(seconds) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.structurizr.graphviz;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a process to finish, periodically sampling the CPU time it has used and its peak memory usage (the
+ * latter from /proc, so only on Linux).
+ */
+class ProcessMonitor {
+
+    private static final long SAMPLE_INTERVAL = 50;
+    private static final String PEAK_RESIDENT_SET_SIZE = "VmHWM:";
+    private static final long BYTES_PER_KILOBYTE = 1024;
+
+    private final Process process;
+    private final Path statusFile;
+
+    private final long start = System.currentTimeMillis();
+    private long cpuTime = -1;
+    private long sampledDuration = 0;
+    private long peakMemory = 0;
+
+    ProcessMonitor(Process process) {
+        this.process = process;
+        this.statusFile = Paths.get("/proc", String.valueOf(process.pid()), "status");
+    }
+
+    /**
+     * Waits for the process to finish.
+     *
+     * @param timeout   the maximum time to wait, in milliseconds (zero or less to wait indefinitely)
+     * @return  true if the process finished, false if the timeout elapsed first
+     */
+    boolean waitFor(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+
+        while (true) {
+            long wait = SAMPLE_INTERVAL;
+            if (timeout > 0) {
+                wait = Math.min(wait, deadline - System.currentTimeMillis());
+                if (wait <= 0) {
+                    return false;
+                }
+            }
+
+            if (process.waitFor(wait, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+
+            sample();
+        }
+    }
+
+    private void sample() {
+        process.info().totalCpuDuration().map(Duration::toMillis).ifPresent(cpuTime -> {
+            this.cpuTime = cpuTime;
+            this.sampledDuration = System.currentTimeMillis() - start;
+        });
+
+        try {
+            for (String line : Files.readAllLines(statusFile)) {
+                if (line.startsWith(PEAK_RESIDENT_SET_SIZE)) {
+                    String kilobytes = line.substring(PEAK_RESIDENT_SET_SIZE.length()).replace("kB", "").trim();
+                    peakMemory = Math.max(peakMemory, Long.parseLong(kilobytes) * BYTES_PER_KILOBYTE);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // not available on this platform, or the process has just finished
+        }
+    }
+
+    /**
+     * Gets the CPU time used by the process, as of the last sample.
+     *
+     * @return  a duration in milliseconds, or -1 if the process finished before it could be sampled
+     */
+    long getCpuTime() {
+        return cpuTime;
+    }
+
+    /**
+     * Gets the wall-clock time from the process starting to the last sample of its CPU time.
+     *
+     * @return  a duration in milliseconds
+     */
+    long getSampledDuration() {
+        return sampledDuration;
+    }
+
+    /**
+     * Gets the peak memory (resident set size) used by the process, as of the last sample.
+     *
+     * @return  a number of bytes, or 0 if not available
+     */
+    long getPeakMemory() {
+        return peakMemory;
+    }
+
+}
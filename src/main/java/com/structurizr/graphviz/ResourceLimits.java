@@ -0,0 +1,192 @@
+package com.structurizr.graphviz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Limits on the resources each graphviz process may use, so that a single pathological view can't starve every
+ * other process on the host. The limits are applied when the process is started, by running graphviz via the
+ * standard Linux tools (prlimit, nice and ionice from util-linux/coreutils, and taskset), each of which replaces
+ * itself with the next command, so graphviz keeps the same process ID.
+ *
+ * A graphviz process that is killed because it exceeded its CPU time limit, or that fails reporting it ran out of
+ * memory while a memory limit is set, is reported as a GraphvizResourceLimitExceededException.
+ */
+public class ResourceLimits {
+
+    static final int NOT_SET = -1;
+
+    // java reports a process killed by a signal as exiting with 128 + the signal number
+    static final int SIGNAL_EXIT_CODE = 128;
+    private static final int SIGKILL = 9;
+    private static final int SIGXCPU = 24;
+
+    // the best-effort I/O scheduling class, which has priority levels 0 (highest) to 7 (lowest)
+    private static final String BEST_EFFORT_IO_CLASS = "2";
+
+    private static final Pattern CPU_LIST_PATTERN = Pattern.compile("\\d+(-\\d+)?(,\\d+(-\\d+)?)*");
+    // the messages graphviz (e.g. "Error: out of memory"), the C++ runtime and libc (strerror(ENOMEM)) report when
+    // an allocation fails
+    private static final Pattern OUT_OF_MEMORY_PATTERN = Pattern.compile("(?m)^(?:\\w+: )?[Oo]ut of memory|std::bad_alloc|: Cannot allocate memory$");
+
+    private long memoryLimit = NOT_SET;
+    private long cpuTimeLimit = NOT_SET;
+    private int niceness = NOT_SET;
+    private int ioPriority = NOT_SET;
+    private String cpuAffinity;
+
+    /**
+     * Sets the maximum size of each graphviz process's virtual address space (RLIMIT_AS); allocations beyond this
+     * fail. This bounds the memory (including resident memory) each process can use.
+     *
+     * @param memoryLimit   a number of bytes
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        if (memoryLimit <= 0) {
+            throw new IllegalArgumentException("The memory limit must be a positive number of bytes");
+        }
+
+        this.memoryLimit = memoryLimit;
+    }
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the maximum CPU time each graphviz process may use (RLIMIT_CPU). The process is sent SIGXCPU when it
+     * reaches the limit, and killed a second later.
+     *
+     * @param cpuTimeLimit  a duration in milliseconds, rounded up to whole seconds
+     */
+    public void setCpuTimeLimit(long cpuTimeLimit) {
+        if (cpuTimeLimit <= 0) {
+            throw new IllegalArgumentException("The CPU time limit must be a positive number of milliseconds");
+        }
+
+        this.cpuTimeLimit = cpuTimeLimit;
+    }
+
+    public long getCpuTimeLimit() {
+        return cpuTimeLimit;
+    }
+
+    /**
+     * Sets the niceness (scheduling priority) of graphviz processes, from -20 (highest priority, which requires
+     * privileges) to 19 (lowest priority).
+     *
+     * @param niceness  a niceness value
+     */
+    public void setNiceness(int niceness) {
+        if (niceness < -20 || niceness > 19) {
+            throw new IllegalArgumentException("The niceness must be between -20 and 19");
+        }
+
+        this.niceness = niceness;
+    }
+
+    public int getNiceness() {
+        return niceness;
+    }
+
+    /**
+     * Sets the I/O priority of graphviz processes, within the best-effort scheduling class.
+     *
+     * @param ioPriority    a priority level, from 0 (highest) to 7 (lowest)
+     */
+    public void setIoPriority(int ioPriority) {
+        if (ioPriority < 0 || ioPriority > 7) {
+            throw new IllegalArgumentException("The I/O priority must be between 0 and 7");
+        }
+
+        this.ioPriority = ioPriority;
+    }
+
+    public int getIoPriority() {
+        return ioPriority;
+    }
+
+    /**
+     * Sets the CPUs that graphviz processes may run on.
+     *
+     * @param cpuAffinity   a list of CPU numbers and ranges (e.g. "0-3,6"), in the format used by taskset
+     */
+    public void setCpuAffinity(String cpuAffinity) {
+        if (cpuAffinity == null || !CPU_LIST_PATTERN.matcher(cpuAffinity).matches()) {
+            throw new IllegalArgumentException("The CPU affinity must be a list of CPUs, such as 0-3,6");
+        }
+
+        this.cpuAffinity = cpuAffinity;
+    }
+
+    public String getCpuAffinity() {
+        return cpuAffinity;
+    }
+
+    /**
+     * Wraps the given graphviz command so that it runs with these limits.
+     */
+    List<String> apply(List<String> command) {
+        List<String> wrappedCommand = new ArrayList<>();
+
+        if (cpuAffinity != null) {
+            wrappedCommand.addAll(List.of("taskset", "-c", cpuAffinity));
+        }
+
+        if (ioPriority != NOT_SET) {
+            wrappedCommand.addAll(List.of("ionice", "-c", BEST_EFFORT_IO_CLASS, "-n", String.valueOf(ioPriority)));
+        }
+
+        if (niceness != NOT_SET) {
+            wrappedCommand.addAll(List.of("nice", "-n", String.valueOf(niceness)));
+        }
+
+        if (memoryLimit != NOT_SET || cpuTimeLimit != NOT_SET) {
+            wrappedCommand.add("prlimit");
+            if (memoryLimit != NOT_SET) {
+                wrappedCommand.add("--as=" + memoryLimit);
+            }
+            if (cpuTimeLimit != NOT_SET) {
+                // the soft limit sends SIGXCPU, and the hard limit (a second later) SIGKILL
+                long seconds = getCpuTimeSoftLimit();
+                wrappedCommand.add("--cpu=" + seconds + ":" + (seconds + 1));
+            }
+            wrappedCommand.add("--");
+        }
+
+        wrappedCommand.addAll(command);
+
+        return wrappedCommand;
+    }
+
+    private long getCpuTimeSoftLimit() {
+        return (cpuTimeLimit + 999) / 1000;
+    }
+
+    /**
+     * Determines whether a graphviz process that exited with the given code did so because it exceeded one of
+     * these limits.
+     *
+     * @param exitCode  the exit code of the process
+     * @param stderr    the error output of the process
+     * @param cpuTime   the CPU time used by the process, in milliseconds, as last measured (or -1 if not known)
+     * @return  a description of the limit that was exceeded, or null if none were
+     */
+    String findExceededLimit(int exitCode, String stderr, long cpuTime) {
+        if (cpuTimeLimit != NOT_SET) {
+            // SIGKILL is also sent by the OOM killer, or by anybody else, so only counts when the soft limit was reached
+            if (exitCode == SIGNAL_EXIT_CODE + SIGXCPU || (exitCode == SIGNAL_EXIT_CODE + SIGKILL && cpuTime >= getCpuTimeSoftLimit() * 1000)) {
+                return "CPU time limit of " + cpuTimeLimit + "ms";
+            }
+        }
+
+        // a crash or abort without an out of memory error is as likely to be a graphviz bug, so isn't reported as a breach
+        if (memoryLimit != NOT_SET && stderr != null && OUT_OF_MEMORY_PATTERN.matcher(stderr).find()) {
+            return "memory limit of " + memoryLimit + " bytes";
+        }
+
+        return null;
+    }
+
+}
@@ -1,22 +1,21 @@
 package com.structurizr.graphviz;
 
 import com.structurizr.model.DeploymentNode;
-import com.structurizr.model.Element;
 import com.structurizr.view.*;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.w3c.dom.Document;
-import org.w3c.dom.NodeList;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathFactory;
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Parses an SVG file created by graphviz, extracts the layout information, and applies it to a Structurizr view.
@@ -25,39 +24,58 @@ class SVGReader {
 
     private static final Log log = LogFactory.getLog(GraphvizAutomaticLayout.class);
 
+    private static final String SVG_FILE_EXTENSION = ".dot.svg";
+    private static final int[] NO_VERTICES = new int[0];
+
     private final File path;
     private final int margin;
     private final boolean changePaperSize;
+    private final EdgeRouting edgeRouting;
+    private final ElementStyleCache elementStyleCache;
+    private final boolean compact;
 
     SVGReader(File path, int margin, boolean changePaperSize) {
+        this(path, margin, changePaperSize, EdgeRouting.Polyline, new ElementStyleCache());
+    }
+
+    SVGReader(File path, int margin, boolean changePaperSize, EdgeRouting edgeRouting, ElementStyleCache elementStyleCache) {
+        this(path, margin, changePaperSize, edgeRouting, elementStyleCache, false);
+    }
+
+    /**
+     * Creates a reader; in compact mode, the ids in the SVG file are mapped back to element and relationship ids
+     * via CompactIds.
+     */
+    SVGReader(File path, int margin, boolean changePaperSize, EdgeRouting edgeRouting, ElementStyleCache elementStyleCache, boolean compact) {
         this.path = path;
         this.margin = margin;
         this.changePaperSize = changePaperSize;
+        this.edgeRouting = edgeRouting;
+        this.elementStyleCache = elementStyleCache;
+        this.compact = compact;
     }
 
     void parseAndApplyLayout(ModelView view) throws Exception {
-        File file = new File(path, view.getKey() + ".dot.svg");
-        log.debug("Reading " + file.getAbsolutePath());
+        LayoutResult layoutResult = parse(view);
 
-        if (file.exists()) {
-            FileInputStream fileIS = new FileInputStream(file);
-            DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
-            builderFactory.setNamespaceAware(false);
-            builderFactory.setValidating(false);
-            builderFactory.setFeature("http://xml.org/sax/features/namespaces", false);
-            builderFactory.setFeature("http://xml.org/sax/features/validation", false);
-            builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
-            builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
-
-            DocumentBuilder builder = builderFactory.newDocumentBuilder();
-            Document xmlDocument = builder.parse(fileIS);
-            XPath xPath = XPathFactory.newInstance().newXPath();
-            NodeList nodeList = (NodeList) xPath.compile("/svg/g[@class=\"graph\"]").evaluate(xmlDocument, XPathConstants.NODESET);
-            String transform = nodeList.item(0).getAttributes().getNamedItem("transform").getNodeValue();
-            String translate = transform.substring(transform.indexOf("translate"));
-            String numbers = translate.substring(translate.indexOf("(") + 1, translate.indexOf(")"));
-            int transformX = (int) Double.parseDouble(numbers.split(" ")[0]);
-            int transformY = (int) Double.parseDouble(numbers.split(" ")[1]);
+        if (layoutResult != null) {
+            layoutResult.apply(view, new PageLayout(margin, changePaperSize));
+            log.debug("Layout applied to view with key " + view.getKey());
+        }
+    }
+
+    /**
+     * Parses the layout of the elements and relationships in the view from the SVG file, without changing the view.
+     *
+     * @return  a LayoutResult, or null if there is no SVG file
+     */
+    LayoutResult parse(ModelView view) throws Exception {
+        SVGDocument document = read(view.getKey());
+
+        if (document != null) {
+            elementStyleCache.validate(view);
+            CompactIds compactIds = compact ? new CompactIds(view) : null;
+            LayoutResult.Builder builder = new LayoutResult.Builder();
 
             int minimumX = Integer.MAX_VALUE;
             int minimumY = Integer.MAX_VALUE;
@@ -70,134 +88,271 @@ class SVGReader {
                     continue;
                 }
 
-                String expression = String.format("/svg/g/g[@id=\"%s\"]/polygon", elementView.getId());
-                nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-                if (nodeList.getLength() == 0) {
+                int[] position = document.getNodeCoordinates(compactIds != null ? compactIds.get(elementView.getId()) : elementView.getId());
+                if (position == null) {
                     continue;
                 }
 
-                String pointsAsString = nodeList.item(0).getAttributes().getNamedItem("points").getNodeValue();
-                String[] points = pointsAsString.split(" ");
-                String[] coordinates = points[1].split(",");
-
-                double x = Double.parseDouble(coordinates[0]) + transformX;
-                double y = Double.parseDouble(coordinates[1]) + transformY;
-
-                elementView.setX((int) (x * Constants.DPI_RATIO));
-                elementView.setY((int) (y * Constants.DPI_RATIO));
+                builder.addElement(elementView.getId(), position[0], position[1]);
 
-                minimumX = Math.min(elementView.getX(), minimumX);
-                minimumY = Math.min(elementView.getY(), minimumY);
+                minimumX = Math.min(position[0], minimumX);
+                minimumY = Math.min(position[1], minimumY);
 
-                ElementStyle style = view.getViewSet().getConfiguration().getStyles().findElementStyle(view.getModel().getElement(elementView.getId()));
+                ElementStyle style = elementStyleCache.findElementStyle(view, elementView.getElement());
 
-                maximumX = Math.max(elementView.getX() + style.getWidth(), maximumX);
-                maximumY = Math.max(elementView.getY() + style.getHeight(), maximumY);
+                maximumX = Math.max(position[0] + style.getWidth(), maximumX);
+                maximumY = Math.max(position[1] + style.getHeight(), maximumY);
             }
 
             for (RelationshipView relationshipView : view.getRelationships()) {
-                String expression = String.format("/svg/g/g[@id=\"%s\"]/path", relationshipView.getId());
-                nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-                if (nodeList.getLength() == 0) {
+                if (!edgeRouting.hasVertices()) {
+                    // edges are straight (or not routed at all), so there are no vertices to apply
+                    builder.addRelationship(relationshipView.getId(), NO_VERTICES);
                     continue;
                 }
 
-                String dAsString = nodeList.item(0).getAttributes().getNamedItem("d").getNodeValue();
-                String[] d = dAsString.split(" ");
-
-                Set<Vertex> vertices = new LinkedHashSet<>();
-
-                if (d.length == 3) {
-                    relationshipView.setVertices(vertices);
-                } else {
-                    for (int i = 1; i < d.length - 2; i++) {
-                        double x = Double.parseDouble(d[i].split(",")[0]) + transformX;
-                        double y = Double.parseDouble(d[i].split(",")[1]) + transformY;
-                        Vertex vertex = new Vertex((int) (x * Constants.DPI_RATIO), (int) (y * Constants.DPI_RATIO));
-                        vertices.add(vertex);
-
-                        minimumX = Math.min(vertex.getX(), minimumX);
-                        minimumY = Math.min(vertex.getY(), minimumY);
-                        maximumX = Math.max(vertex.getX(), maximumX);
-                        maximumY = Math.max(vertex.getY(), maximumY);
-                    }
-                    relationshipView.setVertices(vertices);
+                int[] vertices = document.getEdgeCoordinates(compactIds != null ? compactIds.get(relationshipView.getId()) : relationshipView.getId());
+                if (vertices == null) {
+                    continue;
+                }
+
+                builder.addRelationship(relationshipView.getId(), vertices);
+
+                for (int i = 0; i < vertices.length; i += 2) {
+                    minimumX = Math.min(vertices[i], minimumX);
+                    minimumY = Math.min(vertices[i + 1], minimumY);
+                    maximumX = Math.max(vertices[i], maximumX);
+                    maximumY = Math.max(vertices[i + 1], maximumY);
                 }
             }
 
             // also take into account any clusters that might be rendered outside the nodes
-            String expression = "/svg/g/g[@class=\"cluster\"]/polygon";
-            nodeList = (NodeList) xPath.compile(expression).evaluate(xmlDocument, XPathConstants.NODESET);
-            for (int i = 0; i < nodeList.getLength(); i++) {
-                String[] points = nodeList.item(i).getAttributes().getNamedItem("points").getNodeValue().split(" ");
-                for (String point : points) {
-                    int x = (int) ((Double.parseDouble(point.split(",")[0]) + transformX) * Constants.DPI_RATIO);
-                    int y = (int) ((Double.parseDouble(point.split(",")[1]) + transformY) * Constants.DPI_RATIO);
-
-                    minimumX = Math.min(x, minimumX);
-                    minimumY = Math.min(y, minimumY);
-                    maximumX = Math.max(x, maximumX);
-                    maximumY = Math.max(y, maximumY);
-                }
+            Bounds clusterBounds = document.getClusterBounds();
+            if (clusterBounds != null) {
+                minimumX = Math.min(clusterBounds.getMinimumX(), minimumX);
+                minimumY = Math.min(clusterBounds.getMinimumY(), minimumY);
+                maximumX = Math.max(clusterBounds.getMaximumX(), maximumX);
+                maximumY = Math.max(clusterBounds.getMaximumY(), maximumY);
             }
 
-            int pageWidth = Math.max(margin, maximumX + margin);
-            int pageHeight = Math.max(margin, maximumY + margin);
+            return builder.build(new Bounds(minimumX, minimumY, maximumX, maximumY));
+        } else {
+            log.error(new File(path, view.getKey() + SVG_FILE_EXTENSION).getAbsolutePath() + " does not exist; layout not applied to view with key " + view.getKey());
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads the SVG file that graphviz created for the DOT file with the given name.
+     *
+     * @return  an SVGDocument, or null if there is no SVG file
+     */
+    SVGDocument read(String name) throws Exception {
+        File file = new File(path, name + SVG_FILE_EXTENSION);
+        log.debug("Reading " + file.getAbsolutePath());
+
+        if (!file.exists()) {
+            return null;
+        }
 
-            if (changePaperSize) {
-                view.setPaperSize(null);
-                view.setDimensions(new Dimensions(pageWidth, pageHeight));
+        DocumentBuilderFactory builderFactory = DocumentBuilderFactory.newInstance();
+        builderFactory.setNamespaceAware(false);
+        builderFactory.setValidating(false);
+        builderFactory.setFeature("http://xml.org/sax/features/namespaces", false);
+        builderFactory.setFeature("http://xml.org/sax/features/validation", false);
+        builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-dtd-grammar", false);
+        builderFactory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+
+        DocumentBuilder builder = builderFactory.newDocumentBuilder();
+        try (FileInputStream fileIS = new FileInputStream(file)) {
+            return new SVGDocument(builder.parse(fileIS));
+        }
+    }
 
-                PaperSize.Orientation orientation = (pageWidth > pageHeight) ? PaperSize.Orientation.Landscape : PaperSize.Orientation.Portrait;
-                for (PaperSize paperSize : PaperSize.getOrderedPaperSizes(orientation)) {
-                    if (paperSize.getWidth() > (pageWidth) && paperSize.getHeight() > (pageHeight)) {
-                        view.setPaperSize(paperSize);
+    /**
+     * The nodes, edges and clusters in a graphviz SVG file, in Structurizr coordinates. The document is walked once,
+     * when this is created, rather than being queried once per element and relationship.
+     */
+    static class SVGDocument {
+
+        private final Map<String, int[]> nodes = new HashMap<>();
+        private final Map<String, int[]> edges = new HashMap<>();
+        private Bounds clusterBounds;
+
+        private int transformX;
+        private int transformY;
+
+        private SVGDocument(Document xmlDocument) {
+            Element graph = null;
+            for (Element element : getChildElements(xmlDocument.getDocumentElement(), "g")) {
+                if ("graph".equals(element.getAttribute("class"))) {
+                    graph = element;
+                    break;
+                }
+            }
+
+            if (graph == null) {
+                throw new IllegalArgumentException("The SVG file does not contain a graph");
+            }
+
+            String transform = graph.getAttribute("transform");
+            String translate = transform.substring(transform.indexOf("translate"));
+            String numbers = translate.substring(translate.indexOf("(") + 1, translate.indexOf(")"));
+            transformX = (int) Double.parseDouble(numbers.split(" ")[0]);
+            transformY = (int) Double.parseDouble(numbers.split(" ")[1]);
+
+            for (Element element : getChildElements(graph, "g")) {
+                String id = element.getAttribute("id");
+
+                switch (element.getAttribute("class")) {
+                    case "node":
+                        Element polygon = getFirstChildElement(element, "polygon");
+                        if (polygon != null && !nodes.containsKey(id)) {
+                            String[] points = polygon.getAttribute("points").split(" ");
+                            String[] coordinates = points[1].split(",");
+
+                            nodes.put(id, new int[] {
+                                    toStructurizr(Double.parseDouble(coordinates[0]) + transformX),
+                                    toStructurizr(Double.parseDouble(coordinates[1]) + transformY)
+                            });
+                        }
+                        break;
+                    case "edge":
+                        Element path = getFirstChildElement(element, "path");
+                        if (path != null && !edges.containsKey(id)) {
+                            edges.put(id, parsePath(path.getAttribute("d")));
+                        }
+                        break;
+                    case "cluster":
+                        for (Element clusterPolygon : getChildElements(element, "polygon")) {
+                            addToClusterBounds(clusterPolygon.getAttribute("points"));
+                        }
                         break;
-                    }
                 }
             }
+        }
 
-            int deltaX = (pageWidth - maximumX + minimumX) / 2;
-            int deltaY = (pageHeight - maximumY + minimumY) / 2;
+        private int[] parsePath(String dAsString) {
+            String[] d = dAsString.split(" ");
 
-            // move everything relative to 0,0
-            for (ElementView elementView : view.getElements()) {
-                elementView.setX(elementView.getX() - minimumX);
-                elementView.setY(elementView.getY() - minimumY);
+            // the start and end points are not included
+            if (d.length <= 3) {
+                return NO_VERTICES;
             }
-            for (RelationshipView relationshipView : view.getRelationships()) {
-                for (Vertex vertex : relationshipView.getVertices()) {
-                    vertex.setX(vertex.getX() - minimumX);
-                    vertex.setY(vertex.getY() - minimumY);
-                }
+
+            int[] vertices = new int[(d.length - 3) * 2];
+            for (int i = 1; i < d.length - 2; i++) {
+                String[] coordinates = d[i].split(",");
+                vertices[(i - 1) * 2] = toStructurizr(Double.parseDouble(coordinates[0]) + transformX);
+                vertices[((i - 1) * 2) + 1] = toStructurizr(Double.parseDouble(coordinates[1]) + transformY);
             }
 
-            // and now centre everything
-            for (ElementView elementView : view.getElements()) {
-                elementView.setX(elementView.getX() + deltaX);
-                elementView.setY(elementView.getY() + deltaY);
+            return vertices;
+        }
+
+        private void addToClusterBounds(String pointsAsString) {
+            int minimumX = clusterBounds != null ? clusterBounds.getMinimumX() : Integer.MAX_VALUE;
+            int minimumY = clusterBounds != null ? clusterBounds.getMinimumY() : Integer.MAX_VALUE;
+            int maximumX = clusterBounds != null ? clusterBounds.getMaximumX() : Integer.MIN_VALUE;
+            int maximumY = clusterBounds != null ? clusterBounds.getMaximumY() : Integer.MIN_VALUE;
+
+            for (String point : pointsAsString.split(" ")) {
+                int x = toStructurizr(Double.parseDouble(point.split(",")[0]) + transformX);
+                int y = toStructurizr(Double.parseDouble(point.split(",")[1]) + transformY);
+
+                minimumX = Math.min(x, minimumX);
+                minimumY = Math.min(y, minimumY);
+                maximumX = Math.max(x, maximumX);
+                maximumY = Math.max(y, maximumY);
             }
-            for (RelationshipView relationshipView : view.getRelationships()) {
-                for (Vertex vertex : relationshipView.getVertices()) {
-                    vertex.setX(vertex.getX() + deltaX);
-                    vertex.setY(vertex.getY() + deltaY);
+
+            clusterBounds = new Bounds(minimumX, minimumY, maximumX, maximumY);
+        }
+
+        private static int toStructurizr(double graphvizCoordinate) {
+            return (int) (graphvizCoordinate * Constants.DPI_RATIO);
+        }
+
+        private static List<Element> getChildElements(Element parent, String name) {
+            List<Element> elements = new ArrayList<>();
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element && name.equals(node.getNodeName())) {
+                    elements.add((Element)node);
                 }
             }
 
-            log.debug("Layout applied to view with key " + view.getKey());
-        } else {
-            log.error(file.getAbsolutePath() + " does not exist; layout not applied to view with key " + view.getKey());
+            return elements;
         }
-    }
 
-    private int getElementWidth(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getWidth();
-    }
+        private static Element getFirstChildElement(Element parent, String name) {
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element && name.equals(node.getNodeName())) {
+                    return (Element)node;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Gets the top-left position of the node with the given id, as x and y coordinates.
+         *
+         * @return  an array of two coordinates, or null if the node isn't in the SVG file
+         */
+        int[] getNodeCoordinates(String id) {
+            return nodes.get(id);
+        }
+
+        /**
+         * Gets the vertices of the edge with the given id (excluding the start and end points), as x and y
+         * coordinates, interleaved.
+         *
+         * @return  an array of coordinates (empty for a straight edge), or null if the edge isn't in the SVG file
+         */
+        int[] getEdgeCoordinates(String id) {
+            return edges.get(id);
+        }
+
+        /**
+         * Gets the top-left position of the node with the given id.
+         *
+         * @return  a Vertex, or null if the node isn't in the SVG file
+         */
+        Vertex getNodePosition(String id) {
+            int[] coordinates = nodes.get(id);
+
+            return coordinates != null ? new Vertex(coordinates[0], coordinates[1]) : null;
+        }
+
+        /**
+         * Gets the vertices of the edge with the given id (excluding the start and end points).
+         *
+         * @return  a list of vertices (empty for a straight edge), or null if the edge isn't in the SVG file
+         */
+        List<Vertex> getEdgeVertices(String id) {
+            int[] coordinates = edges.get(id);
+            if (coordinates == null) {
+                return null;
+            }
+
+            List<Vertex> vertices = new ArrayList<>();
+            for (int i = 0; i < coordinates.length; i += 2) {
+                vertices.add(new Vertex(coordinates[i], coordinates[i + 1]));
+            }
+
+            return vertices;
+        }
+
+        /**
+         * Gets the bounds of all clusters drawn in the SVG file.
+         *
+         * @return  a Bounds instance, or null if there are no clusters
+         */
+        Bounds getClusterBounds() {
+            return clusterBounds;
+        }
 
-    private int getElementHeight(ModelView view, String elementId) {
-        Element element = view.getModel().getElement(elementId);
-        return view.getViewSet().getConfiguration().getStyles().findElementStyle(element).getHeight();
     }
 
-}
\ No newline at end of file
+}
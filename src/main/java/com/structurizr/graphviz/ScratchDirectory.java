@@ -0,0 +1,71 @@
+package com.structurizr.graphviz;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An isolated, temporary directory for the files used to lay out a single view, so that concurrent layouts of
+ * views with the same key can't overwrite each other's files. The directory (and everything in it) is deleted when
+ * closed.
+ */
+class ScratchDirectory implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(ScratchDirectory.class);
+
+    private static final String PREFIX = "structurizr-graphviz-";
+
+    // a RAM-backed filesystem, available on most Linux distributions
+    private static final File SHARED_MEMORY_DIRECTORY = new File("/dev/shm");
+
+    private final File directory;
+
+    private ScratchDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    static ScratchDirectory create(File parent) throws IOException {
+        if (!parent.exists()) {
+            Files.createDirectories(parent.toPath());
+        }
+
+        return new ScratchDirectory(Files.createTempDirectory(parent.toPath(), PREFIX).toFile());
+    }
+
+    /**
+     * Gets the default parent for scratch directories: /dev/shm when it's available, or the system temporary
+     * directory otherwise.
+     */
+    static File getDefaultParent() {
+        if (SHARED_MEMORY_DIRECTORY.isDirectory() && SHARED_MEMORY_DIRECTORY.canWrite()) {
+            return SHARED_MEMORY_DIRECTORY;
+        } else {
+            return new File(System.getProperty("java.io.tmpdir"));
+        }
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        try (Stream<Path> stream = Files.walk(directory.toPath())) {
+            List<Path> paths = stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to delete " + directory.getAbsolutePath(), e);
+        }
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.ModelView;
+
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Lays out trivial views inside the JVM, without starting a graphviz process. A view is trivial when it has no
+ * relationships, and either no boundaries or only deployment nodes. Without relationships, graphviz places every
+ * element in a single rank, so for views without boundaries the layered layout produces the same positions that dot
+ * would, once offset by the padding dot adds around the drawing. Deployment views are laid out hierarchically, a
+ * single rank per deployment node, as they would be with setLayoutDeploymentNodesSeparately.
+ */
+class TrivialLayout {
+
+    // graphviz pads the drawing by 4 points
+    static final int GRAPHVIZ_PAD = (int)(4 * Constants.DPI_RATIO);
+
+    private final ElementStyleCache elementStyleCache;
+    private final PageLayout pageLayout;
+
+    TrivialLayout(ElementStyleCache elementStyleCache, PageLayout pageLayout) {
+        this.elementStyleCache = elementStyleCache;
+        this.pageLayout = pageLayout;
+    }
+
+    static boolean isTrivial(ModelView view) {
+        if (!view.getRelationships().isEmpty()) {
+            // the layered layout doesn't reproduce how dot positions ranks, or routes relationships around elements
+            return false;
+        }
+
+        return view instanceof DeploymentView || !ComponentFinder.hasBoundaries(view);
+    }
+
+    void apply(ExportContext context) throws Exception {
+        if (context.getView() instanceof DeploymentView && ComponentFinder.hasBoundaries(context.getView())) {
+            // there are no relationships, so every deployment node is arranged in a single rank and graphviz is never run
+            HierarchicalLayout hierarchicalLayout = new HierarchicalLayout(elementStyleCache, pageLayout, Locale.US, null, (directory, name) -> {
+                throw new IllegalStateException("Graphviz should not be needed to lay out " + name);
+            }, true);
+            hierarchicalLayout.apply(context, ForkJoinPool.commonPool());
+        } else {
+            new LayeredLayout(elementStyleCache, pageLayout, GRAPHVIZ_PAD).apply(context);
+        }
+    }
+
+}
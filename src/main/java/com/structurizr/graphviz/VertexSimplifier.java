@@ -0,0 +1,298 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.Element;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.RelationshipView;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reduces the number of vertices on routed relationships using the Douglas-Peucker algorithm: vertices that are
+ * within the tolerance of a straight line between the vertices either side of them are removed, provided that
+ * the straight line doesn't pass through any element other than the relationship's source and destination, or
+ * through any boundary (e.g. a software system, container, deployment node or group) that contains neither of them.
+ */
+class VertexSimplifier {
+
+    // matches the cluster margin used by the DOT exporter, converted to Structurizr dimensions
+    private static final int BOUNDARY_PADDING = (int)(DOTExporter.CLUSTER_INTERNAL_MARGIN * Constants.DPI_RATIO);
+
+    private final double tolerance;
+    private final ElementStyleCache elementStyleCache;
+
+    VertexSimplifier(double tolerance, ElementStyleCache elementStyleCache) {
+        this.tolerance = tolerance;
+        this.elementStyleCache = elementStyleCache;
+    }
+
+    /**
+     * Creates a copy of the layout result, with simplified relationship vertices. The bounds are left as they are.
+     */
+    LayoutResult simplify(ModelView view, LayoutResult layoutResult) {
+        // the elements in the layout are the obstacles that simplified relationships must avoid, followed by the
+        // boundaries drawn around them
+        Map<Object, Set<Element>> boundaries = ComponentFinder.findBoundaries(view);
+        int numberOfElements = layoutResult.getNumberOfElements();
+        int[] obstacles = new int[(numberOfElements + boundaries.size()) * 4];
+        Map<Element, Integer> elementIndexes = new HashMap<>();
+        for (ElementView elementView : view.getElements()) {
+            int index = layoutResult.indexOfElement(elementView.getId());
+            if (index >= 0) {
+                obstacles[index * 4] = layoutResult.getElementX(index);
+                obstacles[(index * 4) + 1] = layoutResult.getElementY(index);
+                obstacles[(index * 4) + 2] = elementStyleCache.getElementWidth(view, elementView.getElement());
+                obstacles[(index * 4) + 3] = elementStyleCache.getElementHeight(view, elementView.getElement());
+                elementIndexes.put(elementView.getElement(), index);
+            }
+        }
+
+        List<BitSet> boundaryMembers = new ArrayList<>();
+        for (Set<Element> elements : boundaries.values()) {
+            BitSet members = new BitSet();
+            for (Element element : elements) {
+                Integer index = elementIndexes.get(element);
+                if (index != null) {
+                    members.set(index);
+                }
+            }
+
+            setBoundary(obstacles, numberOfElements + boundaryMembers.size(), members);
+            boundaryMembers.add(members);
+        }
+
+        Map<String, RelationshipView> relationshipViews = new HashMap<>();
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            relationshipViews.put(relationshipView.getId(), relationshipView);
+        }
+
+        DeploymentNodeIndex deploymentNodeIndex = null;
+        LayoutResult.Builder builder = new LayoutResult.Builder();
+        for (int i = 0; i < numberOfElements; i++) {
+            builder.addElement(layoutResult.getElementId(i), layoutResult.getElementX(i), layoutResult.getElementY(i));
+        }
+
+        for (int i = 0; i < layoutResult.getNumberOfRelationships(); i++) {
+            int[] vertices = layoutResult.getVertexCoordinates(i);
+            RelationshipView relationshipView = relationshipViews.get(layoutResult.getRelationshipId(i));
+
+            if (vertices.length > 2 && relationshipView != null) {
+                Element source = relationshipView.getRelationship().getSource();
+                Element destination = relationshipView.getRelationship().getDestination();
+                if (deploymentNodeIndex == null && (source instanceof DeploymentNode || destination instanceof DeploymentNode)) {
+                    deploymentNodeIndex = new DeploymentNodeIndex(view);
+                }
+                if (source instanceof DeploymentNode) {
+                    source = deploymentNodeIndex.findElementInside((DeploymentNode)source);
+                }
+                if (destination instanceof DeploymentNode) {
+                    destination = deploymentNodeIndex.findElementInside((DeploymentNode)destination);
+                }
+
+                // the vertices of response relationships run from the destination to the source
+                if (relationshipView.isResponse() != null && relationshipView.isResponse()) {
+                    Element element = source;
+                    source = destination;
+                    destination = element;
+                }
+
+                int sourceIndex = elementIndexes.getOrDefault(source, -1);
+                int destinationIndex = elementIndexes.getOrDefault(destination, -1);
+
+                // the relationship has to cross the boundaries around its source and destination
+                BitSet ignoredObstacles = new BitSet();
+                for (int j = 0; j < boundaryMembers.size(); j++) {
+                    BitSet members = boundaryMembers.get(j);
+                    if ((sourceIndex >= 0 && members.get(sourceIndex)) || (destinationIndex >= 0 && members.get(destinationIndex))) {
+                        ignoredObstacles.set(numberOfElements + j);
+                    }
+                }
+
+                vertices = simplify(vertices, obstacles, sourceIndex, destinationIndex, ignoredObstacles);
+            }
+
+            builder.addRelationship(layoutResult.getRelationshipId(i), vertices);
+        }
+
+        return builder.build(layoutResult.getBounds());
+    }
+
+    /**
+     * Sets the obstacle at the given index to the rectangle around the given elements (which are obstacles
+     * themselves), padded as graphviz pads clusters; a boundary with no elements in the layout is left empty.
+     */
+    private static void setBoundary(int[] obstacles, int index, BitSet members) {
+        if (members.isEmpty()) {
+            return;
+        }
+
+        int minimumX = Integer.MAX_VALUE;
+        int minimumY = Integer.MAX_VALUE;
+        int maximumX = Integer.MIN_VALUE;
+        int maximumY = Integer.MIN_VALUE;
+        for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+            minimumX = Math.min(minimumX, obstacles[i * 4]);
+            minimumY = Math.min(minimumY, obstacles[(i * 4) + 1]);
+            maximumX = Math.max(maximumX, obstacles[i * 4] + obstacles[(i * 4) + 2]);
+            maximumY = Math.max(maximumY, obstacles[(i * 4) + 1] + obstacles[(i * 4) + 3]);
+        }
+
+        obstacles[index * 4] = minimumX - BOUNDARY_PADDING;
+        obstacles[(index * 4) + 1] = minimumY - BOUNDARY_PADDING;
+        obstacles[(index * 4) + 2] = maximumX - minimumX + (2 * BOUNDARY_PADDING);
+        obstacles[(index * 4) + 3] = maximumY - minimumY + (2 * BOUNDARY_PADDING);
+    }
+
+    int[] simplify(int[] vertices, int[] obstacles, int source, int destination) {
+        return simplify(vertices, obstacles, source, destination, new BitSet());
+    }
+
+    /**
+     * Simplifies a single route, given as x and y coordinates (interleaved), running from the centre of the source
+     * element to the centre of the destination element (when they are known). The route may pass through the
+     * source, the destination and any of the ignored obstacles.
+     */
+    int[] simplify(int[] vertices, int[] obstacles, int source, int destination, BitSet ignoredObstacles) {
+        int numberOfVertices = vertices.length / 2;
+
+        // the route includes the centres of the source and destination elements (which are always kept); when these
+        // aren't known, the first and last vertices are kept instead
+        int numberOfPoints = numberOfVertices;
+        int first = 0;
+        if (source >= 0) {
+            numberOfPoints++;
+            first = 1;
+        }
+        if (destination >= 0) {
+            numberOfPoints++;
+        }
+
+        double[] x = new double[numberOfPoints];
+        double[] y = new double[numberOfPoints];
+        if (source >= 0) {
+            x[0] = obstacles[source * 4] + (obstacles[(source * 4) + 2] / 2.0);
+            y[0] = obstacles[(source * 4) + 1] + (obstacles[(source * 4) + 3] / 2.0);
+        }
+        for (int i = 0; i < numberOfVertices; i++) {
+            x[first + i] = vertices[i * 2];
+            y[first + i] = vertices[(i * 2) + 1];
+        }
+        if (destination >= 0) {
+            x[numberOfPoints - 1] = obstacles[destination * 4] + (obstacles[(destination * 4) + 2] / 2.0);
+            y[numberOfPoints - 1] = obstacles[(destination * 4) + 1] + (obstacles[(destination * 4) + 3] / 2.0);
+        }
+
+        boolean[] keep = new boolean[numberOfPoints];
+        keep[0] = true;
+        keep[numberOfPoints - 1] = true;
+
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[] { 0, numberOfPoints - 1 });
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int start = range[0];
+            int end = range[1];
+            if (end - start < 2) {
+                continue;
+            }
+
+            int farthest = start + 1;
+            double maximumDistance = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = distanceToSegment(x[i], y[i], x[start], y[start], x[end], y[end]);
+                if (distance > maximumDistance) {
+                    maximumDistance = distance;
+                    farthest = i;
+                }
+            }
+
+            if (maximumDistance > tolerance || intersectsObstacle(x[start], y[start], x[end], y[end], obstacles, source, destination, ignoredObstacles)) {
+                keep[farthest] = true;
+                ranges.push(new int[] { start, farthest });
+                ranges.push(new int[] { farthest, end });
+            }
+        }
+
+        int numberKept = 0;
+        for (int i = 0; i < numberOfVertices; i++) {
+            if (keep[first + i]) {
+                numberKept++;
+            }
+        }
+        int[] simplified = new int[numberKept * 2];
+        int j = 0;
+        for (int i = 0; i < numberOfVertices; i++) {
+            if (keep[first + i]) {
+                simplified[j++] = vertices[i * 2];
+                simplified[j++] = vertices[(i * 2) + 1];
+            }
+        }
+
+        return simplified;
+    }
+
+    private static double distanceToSegment(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = (dx * dx) + (dy * dy);
+        if (lengthSquared == 0) {
+            return Math.hypot(px - x1, py - y1);
+        }
+
+        double t = Math.max(0, Math.min(1, (((px - x1) * dx) + ((py - y1) * dy)) / lengthSquared));
+
+        return Math.hypot(px - (x1 + (t * dx)), py - (y1 + (t * dy)));
+    }
+
+    private static boolean intersectsObstacle(double x1, double y1, double x2, double y2, int[] obstacles, int source, int destination, BitSet ignoredObstacles) {
+        for (int i = 0; i < obstacles.length / 4; i++) {
+            if (i != source && i != destination && !ignoredObstacles.get(i) && intersects(x1, y1, x2, y2, obstacles[i * 4], obstacles[(i * 4) + 1], obstacles[(i * 4) + 2], obstacles[(i * 4) + 3])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Determines whether a line segment passes through a rectangle, using Liang-Barsky clipping.
+     */
+    private static boolean intersects(double x1, double y1, double x2, double y2, int left, int top, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x1 - left, (left + width) - x1, y1 - top, (top + height) - y1 };
+
+        double t0 = 0;
+        double t1 = 1;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    t0 = Math.max(t0, t);
+                } else {
+                    t1 = Math.min(t1, t);
+                }
+            }
+        }
+
+        return t0 <= t1;
+    }
+
+}
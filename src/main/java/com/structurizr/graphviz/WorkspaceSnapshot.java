@@ -0,0 +1,163 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.*;
+
+import java.util.*;
+
+/**
+ * A fingerprint of everything in a workspace that can affect the layout of its views: elements and relationships
+ * (by id), the elements and relationships in each view, automatic layout settings, and element styles (including
+ * those from themes). Comparing two snapshots gives the views that need to be laid out again.
+ */
+class WorkspaceSnapshot {
+
+    private final int styles;
+    private final Map<String, Integer> elements = new HashMap<>();
+    private final Map<String, Integer> relationships = new HashMap<>();
+    private final Map<String, Integer> views = new HashMap<>();
+    private final Map<String, Set<String>> viewContents = new HashMap<>();
+
+    private WorkspaceSnapshot(Workspace workspace) {
+        for (Element element : workspace.getModel().getElements()) {
+            elements.put(element.getId(), fingerprint(element));
+        }
+
+        for (Relationship relationship : workspace.getModel().getRelationships()) {
+            relationships.put(relationship.getId(), Objects.hash(
+                    relationship.getSourceId(),
+                    relationship.getDestinationId(),
+                    relationship.getDescription(),
+                    relationship.getTechnology(),
+                    relationship.getTags()));
+        }
+
+        for (ModelView view : GraphvizAutomaticLayout.getViews(workspace)) {
+            Set<String> contents = new HashSet<>();
+            List<String> elementIds = new ArrayList<>();
+            for (ElementView elementView : view.getElements()) {
+                contents.add(elementView.getElement().getId());
+                elementIds.add(elementView.getElement().getId());
+            }
+
+            List<String> relationshipViews = new ArrayList<>();
+            for (RelationshipView relationshipView : view.getRelationships()) {
+                contents.add(relationshipView.getRelationship().getId());
+                relationshipViews.add(relationshipView.getId() + "/" + relationshipView.getOrder() + "/" + relationshipView.getDescription());
+            }
+
+            Collections.sort(elementIds);
+            Collections.sort(relationshipViews);
+            views.put(view.getKey(), Objects.hash(view.getClass(), elementIds, relationshipViews, fingerprint(view.getAutomaticLayout())));
+            viewContents.put(view.getKey(), contents);
+        }
+
+        this.styles = fingerprint(workspace.getModel().getElements(), workspace.getViews().getConfiguration());
+    }
+
+    static WorkspaceSnapshot of(Workspace workspace) {
+        return new WorkspaceSnapshot(workspace);
+    }
+
+    private static int fingerprint(Element element) {
+        String technology = null;
+        if (element instanceof Container) {
+            technology = ((Container)element).getTechnology();
+        } else if (element instanceof Component) {
+            technology = ((Component)element).getTechnology();
+        } else if (element instanceof DeploymentNode) {
+            technology = ((DeploymentNode)element).getTechnology();
+        } else if (element instanceof InfrastructureNode) {
+            technology = ((InfrastructureNode)element).getTechnology();
+        }
+
+        String group = null;
+        if (element instanceof GroupableElement) {
+            group = ((GroupableElement)element).getGroup();
+        }
+
+        return Objects.hash(
+                element.getClass(),
+                element.getName(),
+                element.getDescription(),
+                technology,
+                element.getTags(),
+                group,
+                element.getParent() != null ? element.getParent().getId() : null);
+    }
+
+    /**
+     * Fingerprints the resolved style of each distinct tag set, so that styles loaded from themes are included as
+     * well as those defined in the workspace.
+     */
+    private static int fingerprint(Collection<Element> elements, Configuration configuration) {
+        Map<String, Integer> elementStyles = new TreeMap<>();
+        for (Element element : elements) {
+            elementStyles.computeIfAbsent(element.getTags(), tags -> {
+                ElementStyle elementStyle = configuration.getStyles().findElementStyle(element);
+                return Objects.hash(elementStyle.getWidth(), elementStyle.getHeight(), elementStyle.getShape());
+            });
+        }
+
+        return Objects.hash(Arrays.hashCode(configuration.getThemes()), elementStyles);
+    }
+
+    private static int fingerprint(AutomaticLayout automaticLayout) {
+        if (automaticLayout == null) {
+            return 0;
+        }
+
+        return Objects.hash(
+                automaticLayout.getRankDirection(),
+                automaticLayout.getRankSeparation(),
+                automaticLayout.getNodeSeparation(),
+                automaticLayout.getEdgeSeparation(),
+                automaticLayout.isVertices());
+    }
+
+    /**
+     * Finds the views in this snapshot that have changed since the previous snapshot: views that are new, or whose
+     * contents or settings have changed, or that contain an element or relationship that has changed.
+     *
+     * @param previous  the previous snapshot, or null if there isn't one (in which case all views have changed)
+     * @return  a set of view keys
+     */
+    Set<String> findChangedViews(WorkspaceSnapshot previous) {
+        if (previous == null || previous.styles != styles) {
+            return new HashSet<>(views.keySet());
+        }
+
+        Set<String> changedIds = new HashSet<>();
+        findChanges(previous.elements, elements, changedIds);
+        findChanges(previous.relationships, relationships, changedIds);
+
+        Set<String> changedViews = new HashSet<>();
+        for (String viewKey : views.keySet()) {
+            if (!views.get(viewKey).equals(previous.views.get(viewKey)) || !Collections.disjoint(viewContents.get(viewKey), changedIds)) {
+                changedViews.add(viewKey);
+            }
+        }
+
+        return changedViews;
+    }
+
+    private void findChanges(Map<String, Integer> previous, Map<String, Integer> current, Set<String> changedIds) {
+        for (Map.Entry<String, Integer> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changedIds.add(entry.getKey());
+            }
+        }
+
+        for (String id : previous.keySet()) {
+            if (!current.containsKey(id)) {
+                changedIds.add(id);
+            }
+        }
+    }
+
+    Set<String> getViewKeys() {
+        return Collections.unmodifiableSet(views.keySet());
+    }
+
+}
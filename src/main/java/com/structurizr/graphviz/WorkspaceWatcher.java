@@ -0,0 +1,290 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ModelView;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Continuously lays out a workspace as it changes, either on disk (a workspace JSON file) or in memory. Bursts of
+ * changes are debounced, and then only the views affected by the changes are laid out again; a layout that is still
+ * running when a newer change affects the same view is cancelled. Each version of the workspace is laid out in a
+ * private copy, so layouts never touch the caller's workspace or each other's, and each view is published to the
+ * listener once it has been laid out, unless a newer version of the same view has been scheduled in the meantime.
+ */
+public class WorkspaceWatcher implements AutoCloseable {
+
+    private static final Log log = LogFactory.getLog(WorkspaceWatcher.class);
+
+    private static final long DEFAULT_DEBOUNCE = 250;
+
+    /**
+     * Receives views once they have been laid out.
+     */
+    public interface Listener {
+
+        /**
+         * Called (on a layout thread) when a view has been laid out following a change.
+         *
+         * @param workspace     the version of the workspace that the view belongs to
+         * @param view          the view
+         */
+        void viewUpdated(Workspace workspace, ModelView view);
+
+        /**
+         * Called (on the scheduler thread) once a new version of the workspace has been compared with the previous
+         * version, before the views that have changed are laid out.
+         *
+         * @param workspace     the new version of the workspace
+         * @param viewKeys      the keys of the views that will be laid out again
+         */
+        default void workspaceChanged(Workspace workspace, Set<String> viewKeys) {
+        }
+
+        /**
+         * Called (on a layout thread) when a view could not be laid out following a change.
+         *
+         * @param workspace     the version of the workspace that the view belongs to
+         * @param view          the view
+         * @param e             the reason
+         */
+        default void viewFailed(Workspace workspace, ModelView view, Exception e) {
+        }
+
+    }
+
+    private final Listener listener;
+    private final ThreadLocal<GraphvizAutomaticLayout> layouts;
+    private final ExecutorService executorService;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private long debounce = DEFAULT_DEBOUNCE;
+    private ScheduledFuture<?> pendingChange;
+    private WorkspaceSnapshot snapshot;
+
+    // the latest layout job for each view, guarded by itself
+    private final Map<String, Job> jobs = new HashMap<>();
+
+    private WatchService watchService;
+    private Thread watchThread;
+
+    /**
+     * Creates a new watcher.
+     *
+     * @param numberOfThreads   the number of views that can be laid out concurrently
+     * @param layoutSupplier    creates (and configures) the GraphvizAutomaticLayout instance for each layout thread
+     * @param listener          receives the views once they have been laid out
+     */
+    public WorkspaceWatcher(int numberOfThreads, Supplier<GraphvizAutomaticLayout> layoutSupplier, Listener listener) {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be 1 or more");
+        }
+
+        this.listener = listener;
+        this.layouts = ThreadLocal.withInitial(layoutSupplier);
+        this.executorService = Executors.newFixedThreadPool(numberOfThreads);
+    }
+
+    /**
+     * Sets the time to wait after a change, for any further changes, before laying out views.
+     *
+     * @param debounce  a duration, in milliseconds (defaults to 250)
+     */
+    public void setDebounce(long debounce) {
+        if (debounce < 0) {
+            throw new IllegalArgumentException("The debounce must be zero or more");
+        }
+
+        this.debounce = debounce;
+    }
+
+    /**
+     * Starts watching a workspace JSON file, laying out all of its views straight away, and then those affected by
+     * each change to the file.
+     *
+     * @param file      a workspace JSON file
+     */
+    public synchronized void watch(File file) throws IOException {
+        if (watchService != null) {
+            throw new IllegalStateException("Already watching a file");
+        }
+
+        Path path = file.getAbsoluteFile().toPath();
+        watchService = path.getFileSystem().newWatchService();
+        // editors often replace the file rather than modifying it, so watch the directory
+        path.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        watchThread = new Thread(() -> watch(watchService, path), "workspace-watcher");
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        changed(() -> WorkspaceUtils.loadWorkspaceFromJson(file));
+    }
+
+    private void watch(WatchService watchService, Path path) {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (path.getFileName().equals(event.context())) {
+                        changed(() -> WorkspaceUtils.loadWorkspaceFromJson(path.toFile()));
+                    }
+                }
+
+                if (!key.reset()) {
+                    log.warn("No longer watching " + path);
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Notifies the watcher that an in-memory workspace has changed. The workspace is copied straight away, so it can
+     * go on being changed once this returns (but not while it's being copied), and the copy is compared with the
+     * previous version (if any) once the debounce period has passed without any further changes.
+     *
+     * @param workspace     the latest version of the workspace
+     */
+    public void update(Workspace workspace) throws Exception {
+        String json = WorkspaceUtils.toJson(workspace, false);
+        changed(() -> WorkspaceUtils.fromJson(json));
+    }
+
+    private synchronized void changed(Callable<Workspace> workspace) {
+        if (pendingChange != null) {
+            pendingChange.cancel(false);
+        }
+
+        pendingChange = scheduler.schedule(() -> {
+            try {
+                layOut(workspace.call());
+            } catch (Exception e) {
+                // e.g. the file is part way through being written; the next change will be picked up
+                log.warn("The workspace could not be loaded: " + e.getMessage());
+            }
+        }, debounce, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Lays out the views that have changed since the previous version of the workspace, cancelling any stale layouts
+     * of the same views. This is only called from the scheduler thread, so versions are processed in order.
+     */
+    private void layOut(Workspace workspace) {
+        WorkspaceSnapshot snapshot = WorkspaceSnapshot.of(workspace);
+        Set<String> changedViews = snapshot.findChangedViews(this.snapshot);
+        this.snapshot = snapshot;
+
+        log.debug(changedViews.size() + " views to lay out: " + changedViews);
+        listener.workspaceChanged(workspace, changedViews);
+
+        synchronized (jobs) {
+            // views that no longer exist
+            jobs.entrySet().removeIf(entry -> {
+                if (!snapshot.getViewKeys().contains(entry.getKey())) {
+                    entry.getValue().cancel();
+                    return true;
+                }
+
+                return false;
+            });
+
+            for (ModelView view : GraphvizAutomaticLayout.getViews(workspace)) {
+                if (changedViews.contains(view.getKey())) {
+                    Job previous = jobs.get(view.getKey());
+                    if (previous != null) {
+                        previous.cancel();
+                    }
+
+                    Job job = new Job();
+                    jobs.put(view.getKey(), job);
+                    job.future = executorService.submit(() -> layOut(workspace, view, job));
+                }
+            }
+        }
+    }
+
+    private void layOut(Workspace workspace, ModelView view, Job job) {
+        GraphvizAutomaticLayout layout = layouts.get();
+        Exception exception = null;
+        try {
+            layout.applyLayout(view);
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            exception = e;
+        } finally {
+            layout.clearReports();
+        }
+
+        if (Thread.interrupted()) {
+            // cancelled, because a newer version of the view has been scheduled or the watcher is closing
+            return;
+        }
+
+        // only publish the latest layout of each view
+        synchronized (jobs) {
+            if (jobs.get(view.getKey()) != job) {
+                return;
+            }
+            jobs.remove(view.getKey());
+        }
+
+        if (exception != null) {
+            log.warn("The view with key " + view.getKey() + " could not be laid out", exception);
+            listener.viewFailed(workspace, view, exception);
+        } else {
+            listener.viewUpdated(workspace, view);
+        }
+    }
+
+    /**
+     * Stops watching, and cancels any layouts in progress.
+     */
+    @Override
+    public synchronized void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Could not close the watch service", e);
+            }
+            watchThread.interrupt();
+        }
+
+        scheduler.shutdownNow();
+        executorService.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Job {
+
+        private Future<?> future;
+
+        private void cancel() {
+            if (future != null) {
+                // interrupting the layout thread stops graphviz
+                future.cancel(true);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ModelView;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchLayoutTests {
+
+    @Test
+    public void test_findFiles_WhenADirectoryIsSpecified() throws Exception {
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        Files.writeString(new File(directory, "b.json").toPath(), "{}");
+        Files.writeString(new File(directory, "a.json").toPath(), "{}");
+        Files.writeString(new File(directory, "a.dsl").toPath(), "workspace {}");
+
+        List<File> files = BatchLayout.findFiles(directory.getAbsolutePath());
+        assertEquals(2, files.size());
+        assertEquals("a.json", files.get(0).getName());
+        assertEquals("b.json", files.get(1).getName());
+    }
+
+    @Test
+    public void test_findFiles_WhenAGlobIsSpecified() throws Exception {
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        new File(directory, "one").mkdir();
+        new File(directory, "two").mkdir();
+        Files.writeString(new File(directory, "one/workspace.json").toPath(), "{}");
+        Files.writeString(new File(directory, "two/workspace.json").toPath(), "{}");
+        Files.writeString(new File(directory, "two/other.json").toPath(), "{}");
+
+        List<File> files = BatchLayout.findFiles(directory.getAbsolutePath() + "/*/workspace.json");
+        assertEquals(2, files.size());
+        assertEquals(new File(directory, "one/workspace.json").getAbsoluteFile(), files.get(0));
+        assertEquals(new File(directory, "two/workspace.json").getAbsoluteFile(), files.get(1));
+    }
+
+    @Test
+    public void test_run_WritesWorkspacesToTheOutputDirectoryAndReportsFailures() throws Exception {
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        File outputDirectory = new File(directory, "output");
+        WorkspaceUtils.saveWorkspaceToJson(new Workspace("Name", "Description"), new File(directory, "valid.json"));
+        Files.writeString(new File(directory, "invalid.json").toPath(), "not json");
+
+        BatchLayout.Summary summary = new BatchLayout(2, GraphvizAutomaticLayout::new).run(BatchLayout.findFiles(directory.getAbsolutePath()), outputDirectory);
+
+        assertEquals(1, summary.getNumberOfWorkspaces());
+        assertEquals(0, summary.getNumberOfViews());
+        assertEquals(1, summary.getFailures().size());
+        assertTrue(summary.getFailures().get(0).startsWith("invalid.json - could not be loaded"));
+
+        assertTrue(new File(outputDirectory, "valid.json").exists());
+        assertFalse(new File(outputDirectory, "invalid.json").exists());
+        assertEquals(1, outputDirectory.listFiles().length); // no temporary files left behind
+    }
+
+    @Test
+    public void test_run_KeepsTheRelativePathsOfFilesWithTheSameName() throws Exception {
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        File outputDirectory = new File(directory, "output");
+        new File(directory, "one").mkdir();
+        new File(directory, "two").mkdir();
+        WorkspaceUtils.saveWorkspaceToJson(new Workspace("One", "Description"), new File(directory, "one/workspace.json"));
+        Files.writeString(new File(directory, "two/workspace.json").toPath(), "not json");
+
+        BatchLayout.Summary summary = new BatchLayout(2, GraphvizAutomaticLayout::new).run(BatchLayout.findFiles(directory.getAbsolutePath() + "/*/workspace.json"), outputDirectory);
+
+        assertEquals(1, summary.getNumberOfWorkspaces());
+        assertEquals(1, summary.getFailures().size());
+        assertTrue(summary.getFailures().get(0).startsWith("two" + File.separator + "workspace.json - could not be loaded"));
+
+        assertTrue(new File(outputDirectory, "one/workspace.json").exists());
+        assertFalse(new File(outputDirectory, "two/workspace.json").exists());
+        assertFalse(new File(outputDirectory, "workspace.json").exists());
+    }
+
+    @Test
+    public void test_run_ReleasesEachWorkspaceWhenAViewFails() throws Exception {
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        File outputDirectory = new File(directory, "output");
+
+        // more workspaces than can be held in memory at once by a single thread, so a workspace that isn't released stalls the batch
+        for (int i = 1; i <= 4; i++) {
+            Workspace workspace = new Workspace("Workspace " + i, "Description");
+            workspace.getModel().addSoftwareSystem("Software System");
+            workspace.getViews().createSystemLandscapeView("Working", "").addAllElements();
+            workspace.getViews().createSystemLandscapeView(i % 2 == 0 ? "Error" : "Exception", "").addAllElements();
+            WorkspaceUtils.saveWorkspaceToJson(workspace, new File(directory, "workspace-" + i + ".json"));
+        }
+
+        Workspace workspace = new Workspace("Workspace 5", "Description");
+        workspace.getModel().addSoftwareSystem("Software System");
+        workspace.getViews().createSystemLandscapeView("Working", "").addAllElements();
+        workspace.getViews().createSystemLandscapeView("AlsoWorking", "").addAllElements();
+        WorkspaceUtils.saveWorkspaceToJson(workspace, new File(directory, "workspace-5.json"));
+
+        BatchLayout batchLayout = new BatchLayout(1, () -> new GraphvizAutomaticLayout() {
+            @Override
+            void applyLayout(ModelView view) throws Exception {
+                if (view.getKey().equals("Error")) {
+                    throw new AssertionError("Layout error");
+                } else if (view.getKey().equals("Exception")) {
+                    throw new GraphvizException("Layout failed");
+                }
+            }
+        });
+        List<File> files = BatchLayout.findFiles(directory.getAbsolutePath());
+        BatchLayout.Summary summary = assertTimeoutPreemptively(Duration.ofSeconds(30), () -> batchLayout.run(files, outputDirectory));
+
+        assertEquals(1, summary.getNumberOfWorkspaces());
+        assertEquals(6, summary.getNumberOfViews());
+        assertEquals(List.of(
+                "workspace-1.json - not written, as some views could not be laid out",
+                "workspace-1.json:Exception - Layout failed",
+                "workspace-2.json - not written, as some views could not be laid out: java.lang.AssertionError: Layout error",
+                "workspace-3.json - not written, as some views could not be laid out",
+                "workspace-3.json:Exception - Layout failed",
+                "workspace-4.json - not written, as some views could not be laid out: java.lang.AssertionError: Layout error"
+        ), summary.getFailures().stream().sorted().toList());
+
+        assertArrayEquals(new String[] { "workspace-5.json" }, outputDirectory.list());
+    }
+
+    @Test
+    public void test_findCommonDirectory() {
+        File directory = new File("/workspaces");
+
+        assertEquals(new File("/workspaces").toPath(), BatchLayout.findCommonDirectory(List.of(new File(directory, "one/workspace.json"), new File(directory, "two/workspace.json"))));
+        assertEquals(new File("/workspaces/one").toPath(), BatchLayout.findCommonDirectory(List.of(new File(directory, "one/workspace.json"))));
+        assertEquals(new File("/workspaces/one").toPath(), BatchLayout.findCommonDirectory(List.of(new File(directory, "one/a.json"), new File(directory, "one/b/c.json"))));
+    }
+
+    @Test
+    public void test_construction_ThrowsAnException_WhenTheNumberOfThreadsIsLessThanOne() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchLayout(0, GraphvizAutomaticLayout::new));
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CgroupLimitsTests {
+
+    private static final long GIGABYTE = 1024L * 1024 * 1024;
+
+    @Test
+    public void test_read_WhenThereAreNoCgroupFiles() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+
+        CgroupLimits limits = CgroupLimits.read(root, 8, 16 * GIGABYTE);
+        assertEquals(8, limits.getCpuLimit(), 0.001);
+        assertEquals(16 * GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithCgroupV2Limits() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Files.writeString(root.resolve("cpu.max"), "150000 100000\n");
+        Files.writeString(root.resolve("memory.max"), (2 * GIGABYTE) + "\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, 8, 16 * GIGABYTE);
+        assertEquals(1.5, limits.getCpuLimit(), 0.001);
+        assertEquals(2 * GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithCgroupV2AndNoLimits() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Files.writeString(root.resolve("cpu.max"), "max 100000\n");
+        Files.writeString(root.resolve("memory.max"), "max\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, 8, 16 * GIGABYTE);
+        assertEquals(8, limits.getCpuLimit(), 0.001);
+        assertEquals(16 * GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithCgroupV1Limits() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Files.createDirectories(root.resolve("cpu"));
+        Files.createDirectories(root.resolve("memory"));
+        Files.writeString(root.resolve("cpu/cpu.cfs_quota_us"), "200000\n");
+        Files.writeString(root.resolve("cpu/cpu.cfs_period_us"), "100000\n");
+        Files.writeString(root.resolve("memory/memory.limit_in_bytes"), GIGABYTE + "\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, 8, 16 * GIGABYTE);
+        assertEquals(2, limits.getCpuLimit(), 0.001);
+        assertEquals(GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithCgroupV1AndNoLimits() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Files.createDirectories(root.resolve("cpu"));
+        Files.createDirectories(root.resolve("memory"));
+        Files.writeString(root.resolve("cpu/cpu.cfs_quota_us"), "-1\n");
+        Files.writeString(root.resolve("cpu/cpu.cfs_period_us"), "100000\n");
+        Files.writeString(root.resolve("memory/memory.limit_in_bytes"), "9223372036854771712\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, 8, 16 * GIGABYTE);
+        assertEquals(8, limits.getCpuLimit(), 0.001);
+        assertEquals(16 * GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithLimitsOnANestedCgroupV2() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Files.writeString(root.resolve("cpu.max"), "max 100000\n");
+        Path pod = Files.createDirectories(root.resolve("kubepods/pod1"));
+        Files.writeString(pod.resolve("memory.max"), (2 * GIGABYTE) + "\n");
+        Path container = Files.createDirectories(pod.resolve("container1"));
+        Files.writeString(container.resolve("cpu.max"), "50000 100000\n");
+        Files.writeString(container.resolve("memory.max"), "max\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, "0::/kubepods/pod1/container1\n", 8, 16 * GIGABYTE);
+        assertEquals(0.5, limits.getCpuLimit(), 0.001);
+        assertEquals(2 * GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WithLimitsOnANestedCgroupV1() throws Exception {
+        Path root = Files.createTempDirectory("cgroup");
+        Path cpu = Files.createDirectories(root.resolve("cpu/system.slice/app.service"));
+        Files.writeString(cpu.resolve("cpu.cfs_quota_us"), "300000\n");
+        Files.writeString(cpu.resolve("cpu.cfs_period_us"), "100000\n");
+        Path memory = Files.createDirectories(root.resolve("memory/system.slice/app.service"));
+        Files.writeString(memory.resolve("memory.limit_in_bytes"), GIGABYTE + "\n");
+
+        String cgroups = "4:memory:/system.slice/app.service\n3:cpu,cpuacct:/system.slice/app.service\n1:name=systemd:/system.slice/app.service\n";
+        CgroupLimits limits = CgroupLimits.read(root, cgroups, 8, 16 * GIGABYTE);
+        assertEquals(3, limits.getCpuLimit(), 0.001);
+        assertEquals(GIGABYTE, limits.getMemoryLimit());
+    }
+
+    @Test
+    public void test_read_WhenTheCgroupIsMountedAsTheRoot() throws Exception {
+        // a container without a cgroup namespace sees the host's path to its cgroup, which is mounted at the root
+        Path root = Files.createTempDirectory("cgroup");
+        Files.createDirectories(root.resolve("memory"));
+        Files.writeString(root.resolve("memory/memory.limit_in_bytes"), GIGABYTE + "\n");
+
+        CgroupLimits limits = CgroupLimits.read(root, "4:memory:/docker/0123456789abcdef\n", 8, 16 * GIGABYTE);
+        assertEquals(8, limits.getCpuLimit(), 0.001);
+        assertEquals(GIGABYTE, limits.getMemoryLimit());
+    }
+
+}
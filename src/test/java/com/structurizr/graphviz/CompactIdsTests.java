@@ -0,0 +1,97 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.ContainerView;
+import com.structurizr.view.CustomView;
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.RelationshipView;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompactIdsTests {
+
+    @Test
+    public void test_get() {
+        Workspace workspace = new Workspace("Name", "");
+        CustomElement box1 = workspace.getModel().addCustomElement("Box 1");
+        CustomElement box2 = workspace.getModel().addCustomElement("Box 2");
+        CustomElement box3 = workspace.getModel().addCustomElement("Box 3");
+        Relationship relationship = box2.uses(box3, "Uses");
+
+        CustomView view = workspace.getViews().createCustomView("CustomView", "Title", "Description");
+        view.add(box2);
+        view.add(box3);
+
+        CompactIds compactIds = new CompactIds(view);
+        assertEquals("1", compactIds.get(box2.getId()));
+        assertEquals("2", compactIds.get(box3.getId()));
+        assertEquals("3", compactIds.get(relationship.getId()));
+
+        // ids that aren't in the view are left as they are
+        assertEquals(box1.getId(), compactIds.get(box1.getId()));
+    }
+
+    @Test
+    public void test_getClusterId_WhenTheBoundaryIsNotInTheView() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        ContainerView view = workspace.getViews().createContainerView(softwareSystem, "Containers", "");
+        for (int i = 1; i <= 40; i++) {
+            view.add(softwareSystem.addContainer("Container " + i, "", ""));
+        }
+
+        // the software system is numbered after the 40 containers
+        CompactIds compactIds = new CompactIds(view);
+        assertEquals("cluster_41", compactIds.getClusterId(softwareSystem.getId()));
+        assertEquals("41", compactIds.get(softwareSystem.getId()));
+    }
+
+    @Test
+    public void test_getClusterId_IsNeverTheSameAsAnElementId() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        Container container = softwareSystem.addContainer("Container", "", "");
+
+        // 20 deployment nodes (clusters), each with a container instance, and a relationship between each pair of nodes
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        DeploymentNode previous = null;
+        for (int i = 1; i <= 20; i++) {
+            DeploymentNode deploymentNode = workspace.getModel().addDeploymentNode("Deployment Node " + i, "", "");
+            deploymentNode.add(container);
+            if (previous != null) {
+                previous.uses(deploymentNode, "Uses");
+            }
+            view.add(deploymentNode);
+            previous = deploymentNode;
+        }
+
+        CompactIds compactIds = new CompactIds(view);
+        Set<String> ids = new HashSet<>();
+        Set<String> clusterIds = new HashSet<>();
+        for (ElementView elementView : view.getElements()) {
+            assertTrue(ids.add(compactIds.get(elementView.getId())));
+            if (elementView.getElement() instanceof DeploymentNode) {
+                clusterIds.add(compactIds.getClusterId(elementView.getId()));
+            }
+        }
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            assertTrue(ids.add(compactIds.get(relationshipView.getId())));
+        }
+
+        assertEquals(40, view.getElements().size());
+        assertEquals(20, clusterIds.size());
+        for (String clusterId : clusterIds) {
+            assertTrue(clusterId.startsWith("cluster_"));
+            assertFalse(ids.contains(clusterId));
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.ContainerView;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ComponentFinderTests {
+
+    @Test
+    public void test_findComponents_WhenElementsAreConnectedByRelationships() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A", "");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B", "");
+        SoftwareSystem c = workspace.getModel().addSoftwareSystem("C", "");
+        SoftwareSystem d = workspace.getModel().addSoftwareSystem("D", "");
+        user.uses(a, "Uses");
+        c.uses(b, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("Landscape", "");
+        view.addAllElements();
+
+        List<Set<Element>> components = new ComponentFinder().findComponents(createExportContext(view));
+
+        assertEquals(3, components.size());
+        assertEquals(Set.of(Set.of(user, a), Set.of(b, c), Set.of(d)), new HashSet<>(components));
+    }
+
+    @Test
+    public void test_findComponents_WhenElementsShareABoundary() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System", "");
+        Container webApplication = softwareSystem.addContainer("Web Application", "", "");
+        Container database = softwareSystem.addContainer("Database", "", "");
+        SoftwareSystem email = workspace.getModel().addSoftwareSystem("E-mail System", "");
+        SoftwareSystem audit = workspace.getModel().addSoftwareSystem("Audit System", "");
+        SoftwareSystem reporting = workspace.getModel().addSoftwareSystem("Reporting System", "");
+        audit.setGroup("Internal");
+        reporting.setGroup("Internal");
+
+        ContainerView view = workspace.getViews().createContainerView(softwareSystem, "Containers", "");
+        view.add(webApplication);
+        view.add(database);
+        view.add(email);
+        view.add(audit);
+        view.add(reporting);
+
+        List<Set<Element>> components = new ComponentFinder().findComponents(createExportContext(view));
+
+        assertEquals(3, components.size());
+        assertEquals(Set.of(Set.of(webApplication, database), Set.of(email), Set.of(audit, reporting)), new HashSet<>(components));
+    }
+
+    private ExportContext createExportContext(com.structurizr.view.ModelView view) {
+        return new ExportContext(view, RankDirection.TopBottom, 1, 1, GraphvizEffort.FULL, EdgeRouting.Polyline, Locale.US);
+    }
+
+}
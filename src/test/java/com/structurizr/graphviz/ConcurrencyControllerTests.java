@@ -0,0 +1,113 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyControllerTests {
+
+    private static final long MEGABYTE = 1024L * 1024;
+    private static final long GIGABYTE = 1024 * MEGABYTE;
+
+    @Test
+    public void test_construction_StartsAtTheCpuLimit() {
+        assertEquals(4, new ConcurrencyController(4, GIGABYTE).getLimit());
+        assertEquals(2, new ConcurrencyController(1.5, GIGABYTE).getLimit());
+        assertEquals(1, new ConcurrencyController(0.25, GIGABYTE).getLimit());
+    }
+
+    @Test
+    public void test_acquire_RejectsViewsThatWontFitInTheMemoryBudget() {
+        ConcurrencyController concurrencyController = new ConcurrencyController(4, 64 * MEGABYTE);
+
+        GraphvizAdmissionException e = assertThrows(GraphvizAdmissionException.class, () -> concurrencyController.acquire("Huge", 10 * MEGABYTE));
+        assertTrue(e.getMessage().contains("Huge"));
+        assertEquals(0, concurrencyController.getInFlight());
+    }
+
+    @Test
+    public void test_acquire_WaitsForMemoryToBeReleased() throws Exception {
+        ConcurrencyController concurrencyController = new ConcurrencyController(4, 128 * MEGABYTE);
+        ConcurrencyController.Permit first = concurrencyController.acquire("First", 80 * 1024);
+
+        // the first process has reserved most of the memory, so the second has to wait
+        CompletableFuture<ConcurrencyController.Permit> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return concurrencyController.acquire("Second", 80 * 1024);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+
+        concurrencyController.release(first, -1, 0, 0);
+        assertNotNull(second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, concurrencyController.getInFlight());
+    }
+
+    @Test
+    public void test_release_DecreasesTheLimitWhenThereIsCpuContention_AndThenIncreasesItAgain() throws Exception {
+        ConcurrencyController concurrencyController = new ConcurrencyController(8, GIGABYTE);
+
+        // only 30% of a CPU over a second
+        concurrencyController.release(concurrencyController.acquire("View", 1024), 300, 1000, 0);
+        assertEquals(4, concurrencyController.getLimit());
+
+        // a full CPU
+        for (int i = 0; i < 30; i++) {
+            concurrencyController.release(concurrencyController.acquire("View", 1024), 1000, 1000, 0);
+        }
+        assertEquals(8, concurrencyController.getLimit());
+    }
+
+    @Test
+    public void test_release_DecreasesTheLimitAndLearnsWhenMemoryIsUnderestimated() throws Exception {
+        ConcurrencyController concurrencyController = new ConcurrencyController(8, 4 * GIGABYTE);
+        long estimate = concurrencyController.estimateMemory(1024 * 1024);
+
+        concurrencyController.release(concurrencyController.acquire("View", 1024 * 1024), -1, 0, 2 * estimate);
+        assertEquals(4, concurrencyController.getLimit());
+        assertTrue(concurrencyController.estimateMemory(1024 * 1024) >= 2 * estimate - (16 * MEGABYTE));
+    }
+
+    @Test
+    public void test_release_DoesNotLearnFromSmallDotFiles() throws Exception {
+        ConcurrencyController concurrencyController = new ConcurrencyController(8, 2 * GIGABYTE);
+        long estimate = concurrencyController.estimateMemory(100 * 1024);
+
+        // a tiny DOT file, where the process used a little more than the base process memory
+        concurrencyController.release(concurrencyController.acquire("Small", 500), -1, 0, 30 * MEGABYTE);
+        assertEquals(estimate, concurrencyController.estimateMemory(100 * 1024));
+        assertEquals(8, concurrencyController.getLimit());
+
+        // and a stream of them doesn't reduce the limit
+        for (int i = 0; i < 10; i++) {
+            concurrencyController.release(concurrencyController.acquire("Small", 500), -1, 0, 30 * MEGABYTE);
+        }
+        assertEquals(8, concurrencyController.getLimit());
+
+        // so a medium-sized view is still admitted
+        concurrencyController.release(concurrencyController.acquire("Medium", 100 * 1024), -1, 0, 0);
+    }
+
+    @Test
+    public void test_release_LimitsHowQuicklyTheMemoryEstimateGrows() throws Exception {
+        ConcurrencyController concurrencyController = new ConcurrencyController(8, 16 * GIGABYTE);
+
+        concurrencyController.release(concurrencyController.acquire("View", MEGABYTE), -1, 0, 8 * GIGABYTE);
+        assertEquals(16 * MEGABYTE + (2000 * MEGABYTE), concurrencyController.estimateMemory(MEGABYTE));
+    }
+
+    @Test
+    public void test_getMemoryBudget_IsNeverMoreThanTheMemoryAvailable() {
+        assertEquals((long)(3 * GIGABYTE * 0.8), ConcurrencyController.getMemoryBudget(4 * GIGABYTE, GIGABYTE));
+        assertEquals(256 * MEGABYTE, ConcurrencyController.getMemoryBudget(GIGABYTE + 300 * MEGABYTE, GIGABYTE));
+        assertEquals(100 * MEGABYTE, ConcurrencyController.getMemoryBudget(GIGABYTE + 100 * MEGABYTE, GIGABYTE));
+        assertEquals(1, ConcurrencyController.getMemoryBudget(GIGABYTE, 2 * GIGABYTE));
+    }
+
+}
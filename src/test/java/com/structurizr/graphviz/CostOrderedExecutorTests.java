@@ -0,0 +1,78 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CostOrderedExecutorTests {
+
+    @Test
+    public void test_execute_RunsTheMostExpensiveTasksFirst() throws Exception {
+        CostOrderedExecutor executor = new CostOrderedExecutor(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // keep the only thread busy until all of the tasks have been queued
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> await(started, latch), 0);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.execute(() -> order.add("small"), 1);
+        executor.execute(() -> order.add("large"), 100);
+        executor.execute(() -> order.add("medium 1"), 10);
+        executor.execute(() -> order.add("medium 2"), 10);
+        executor.execute(() -> order.add("uncosted"));
+
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of("uncosted", "large", "medium 1", "medium 2", "small"), order);
+    }
+
+    @Test
+    public void test_execute_OrdersTasksWhenThereAreSeveralThreads() throws Exception {
+        CostOrderedExecutor executor = new CostOrderedExecutor(2);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        // keep both threads busy until all of the tasks have been queued
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        executor.execute(() -> await(started, first), 0);
+        executor.execute(() -> await(started, second), 0);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.execute(() -> order.add("small"), 1);
+        executor.execute(() -> order.add("large"), 100);
+        executor.execute(() -> order.add("medium"), 10);
+
+        // release one thread, which runs the queued tasks one at a time
+        first.countDown();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (order.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        second.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of("large", "medium", "small"), order);
+    }
+
+    private void await(CountDownLatch started, CountDownLatch latch) {
+        try {
+            started.countDown();
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
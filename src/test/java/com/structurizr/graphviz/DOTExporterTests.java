@@ -8,7 +8,12 @@ import com.structurizr.view.*;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -613,4 +618,96 @@ public class DOTExporterTests {
         assertEquals(expectedResult, content);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_export_IsRepeatableAndThreadSafe() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        for (int i = 1; i <= 20; i++) {
+            SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System " + i);
+            softwareSystem.setGroup("Group " + (i % 5));
+
+            SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape" + i, "");
+            view.addAllElements();
+        }
+
+        DOTExporter exporter = new DOTExporter(RankDirection.TopBottom, 300, 300);
+        List<SystemLandscapeView> views = new ArrayList<>(workspace.getViews().getSystemLandscapeViews());
+
+        List<String> expected = new ArrayList<>();
+        for (SystemLandscapeView view : views) {
+            expected.add(exporter.export(view).getDefinition());
+        }
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            for (int run = 0; run < 10; run++) {
+                List<Future<String>> results = new ArrayList<>();
+                for (SystemLandscapeView view : views) {
+                    results.add(executorService.submit(() -> exporter.exportView(view).getDefinition()));
+                }
+
+                for (int i = 0; i < views.size(); i++) {
+                    assertEquals(expected.get(i), results.get(i).get());
+                }
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void test_writeCustomViewWithoutEdgeRouting() {
+        Workspace workspace = new Workspace("Name", "");
+        CustomElement box1 = workspace.getModel().addCustomElement("Box 1");
+        CustomElement box2 = workspace.getModel().addCustomElement("Box 2");
+        box1.uses(box2, "Uses");
+
+        CustomView view = workspace.getViews().createCustomView("CustomView", "Title", "Description");
+        view.add(box1);
+        view.add(box2);
+
+        DOTExporter exporter = new DOTExporter(RankDirection.TopBottom, 300, 300, EdgeRouting.None, Locale.US, new ElementStyleCache());
+        Diagram diagram = exporter.export(view);
+
+        String content = diagram.getDefinition();
+        assertEquals("digraph {\n" +
+                "  compound=true\n" +
+                "  graph [splines=none,rankdir=TB,ranksep=1.0,nodesep=1.0,fontsize=5]\n" +
+                "  node [shape=box,fontsize=5]\n" +
+                "  edge []\n" +
+                "\n" +
+                "  1 [width=1.500000,height=1.000000,fixedsize=true,id=1,label=\"1: Box 1\"]\n" +
+                "  2 [width=1.500000,height=1.000000,fixedsize=true,id=2,label=\"2: Box 2\"]\n" +
+                "\n" +
+                "  1 -> 2 [id=3]\n" +
+                "}", content);
+    }
+
+    @Test
+    public void test_writeCustomViewInCompactMode() {
+        Workspace workspace = new Workspace("Name", "");
+        workspace.getModel().addCustomElement("Box 1");
+        CustomElement box2 = workspace.getModel().addCustomElement("Box 2");
+        CustomElement box3 = workspace.getModel().addCustomElement("Box \"3\"");
+        box2.uses(box3, "Uses");
+
+        CustomView view = workspace.getViews().createCustomView("CustomView", "Title", "Description");
+        view.add(box2);
+        view.add(box3);
+
+        DOTExporter exporter = new DOTExporter(RankDirection.TopBottom, 300, 300, EdgeRouting.Polyline, Locale.US, new ElementStyleCache(), true);
+        Diagram diagram = exporter.export(view);
+
+        String content = diagram.getDefinition();
+        assertEquals("digraph {\n" +
+                "  compound=true\n" +
+                "  graph [splines=polyline,rankdir=TB,ranksep=1.0,nodesep=1.0]\n" +
+                "  node [shape=box,fixedsize=true,label=\"\"]\n" +
+                "\n" +
+                "  1 [width=1.500000,height=1.000000,id=1]\n" +
+                "  2 [width=1.500000,height=1.000000,id=2]\n" +
+                "\n" +
+                "  1 -> 2 [id=3]\n" +
+                "}", content);
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DOTWriterTests {
+
+    @Test
+    public void test_appendFixed_MatchesStringFormat() {
+        double[] values = { 0, -0.0, 1.5, 1, 0.75, 450.0 / 300, 650.0 / 300, 1.0 / 3, 2.0 / 3, -2.5, 123456.789, 0.0000005, 1e-9, -1e-9, 1e12, Double.NaN };
+
+        for (Locale locale : new Locale[] { Locale.US, Locale.GERMANY, Locale.FRANCE }) {
+            DOTWriter writer = new DOTWriter(locale);
+            for (double value : values) {
+                assertEquals(String.format(locale, "%f", value), writer.reset().appendFixed(value).toString());
+            }
+        }
+    }
+
+    @Test
+    public void test_appendEscaped() {
+        DOTWriter writer = new DOTWriter(Locale.US);
+
+        assertEquals("Name", writer.reset().appendEscaped("Name").toString());
+        assertEquals("A \\\"quoted\\\" name", writer.reset().appendEscaped("A \"quoted\" name").toString());
+        assertEquals("", writer.reset().appendEscaped("").toString());
+        assertEquals("null", writer.reset().appendEscaped(null).toString());
+    }
+
+    @Test
+    public void test_reset_ReusesTheBuffer() {
+        DOTWriter writer = new DOTWriter(Locale.US);
+        writer.append("1").append(" -> ").append("2");
+        assertEquals("1 -> 2", writer.toString());
+
+        writer.reset().append('x');
+        assertEquals("x", writer.toString());
+    }
+
+}
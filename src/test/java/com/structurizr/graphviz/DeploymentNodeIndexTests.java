@@ -0,0 +1,35 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.DeploymentView;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class DeploymentNodeIndexTests {
+
+    @Test
+    public void test_findElementInside() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+
+        DeploymentNode server = workspace.getModel().addDeploymentNode("Server", "", "");
+        DeploymentNode runtime = server.addDeploymentNode("Runtime", "", "");
+        SoftwareSystemInstance softwareSystemInstance = runtime.add(softwareSystem);
+
+        DeploymentNode network = workspace.getModel().addDeploymentNode("Network", "", "");
+        InfrastructureNode loadBalancer = network.addInfrastructureNode("Load Balancer", "", "");
+
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        view.add(server);
+        view.add(network);
+
+        DeploymentNodeIndex index = new DeploymentNodeIndex(view);
+
+        assertSame(softwareSystemInstance, index.findElementInside(server));
+        assertSame(softwareSystemInstance, index.findElementInside(runtime));
+        assertSame(loadBalancer, index.findElementInside(network));
+    }
+
+}
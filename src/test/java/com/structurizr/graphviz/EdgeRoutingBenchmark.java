@@ -0,0 +1,95 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.SystemLandscapeView;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the time taken to lay out a large, dense view with each of the edge routing options.
+ * This requires graphviz to be installed, and is run manually rather than as part of the test suite:
+ *
+ * java -cp ... com.structurizr.graphviz.EdgeRoutingBenchmark [elements] [relationships] [iterations] [seconds]
+ *
+ * Each edge routing option is run for the given number of iterations, or until the given number of seconds (five
+ * minutes by default) have passed, whichever comes first; a graphviz run still going at that point is stopped.
+ */
+public class EdgeRoutingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int numberOfElements = args.length > 0 ? Integer.parseInt(args[0]) : 250;
+        int numberOfRelationships = args.length > 1 ? Integer.parseInt(args[1]) : 750;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        long duration = TimeUnit.SECONDS.toMillis(args.length > 3 ? Long.parseLong(args[3]) : 300);
+
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+
+        for (EdgeRouting edgeRouting : EdgeRouting.values()) {
+            long deadline = System.currentTimeMillis() + duration;
+
+            try {
+                // warm up
+                run(edgeRouting, createWorkspace(numberOfElements, numberOfRelationships), tempDir, deadline);
+
+                long total = 0;
+                int runs = 0;
+                while (runs < iterations && System.currentTimeMillis() < deadline) {
+                    total += run(edgeRouting, createWorkspace(numberOfElements, numberOfRelationships), tempDir, deadline);
+                    runs++;
+                }
+
+                if (runs > 0) {
+                    System.out.printf("%-10s %8d ms (average of %d runs, %d elements, %d relationships)%n", edgeRouting, total / runs, runs, numberOfElements, numberOfRelationships);
+                } else {
+                    System.out.printf("%-10s only the warm up run finished within %d s%n", edgeRouting, TimeUnit.MILLISECONDS.toSeconds(duration));
+                }
+            } catch (GraphvizTimeoutException e) {
+                System.out.printf("%-10s did not finish within %d s%n", edgeRouting, TimeUnit.MILLISECONDS.toSeconds(duration));
+            }
+        }
+    }
+
+    private static long run(EdgeRouting edgeRouting, Workspace workspace, File path, long deadline) throws Exception {
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(path);
+        graphviz.setEdgeRouting(edgeRouting);
+        graphviz.addLayoutTier(LayoutTier.Dot, Math.max(1, deadline - System.currentTimeMillis()));
+
+        long start = System.currentTimeMillis();
+        graphviz.apply(workspace);
+
+        return System.currentTimeMillis() - start;
+    }
+
+    private static Workspace createWorkspace(int numberOfElements, int numberOfRelationships) {
+        Random random = new Random(1);
+        Workspace workspace = new Workspace("Benchmark", "");
+
+        List<SoftwareSystem> softwareSystems = new ArrayList<>();
+        for (int i = 0; i < numberOfElements; i++) {
+            SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System " + i);
+            softwareSystem.setGroup("Group " + (i % 10));
+            softwareSystems.add(softwareSystem);
+        }
+
+        int count = 0;
+        while (count < numberOfRelationships) {
+            SoftwareSystem source = softwareSystems.get(random.nextInt(numberOfElements));
+            SoftwareSystem destination = softwareSystems.get(random.nextInt(numberOfElements));
+            if (source != destination && source.uses(destination, "Uses") != null) {
+                count++;
+            }
+        }
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        return workspace;
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.DeploymentNode;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EffortTunerTests {
+
+    @Test
+    public void test_choose_UsesFullQualityWhenThereIsNoTimeBudget() {
+        SystemLandscapeView view = createView(500);
+
+        assertEquals(0, new EffortTuner(0).choose(view).getLevel());
+    }
+
+    @Test
+    public void test_choose_UsesFullQualityForSmallViews() {
+        SystemLandscapeView view = createView(5);
+
+        assertEquals(0, new EffortTuner(1000).choose(view).getLevel());
+    }
+
+    @Test
+    public void test_choose_ReducesEffortForLargeViews() {
+        SystemLandscapeView view = createView(500);
+
+        assertTrue(new EffortTuner(1000).choose(view).getLevel() > 0);
+    }
+
+    @Test
+    public void test_choose_IsCalibratedByObservedTimings() {
+        SystemLandscapeView view = createView(5);
+        EffortTuner effortTuner = new EffortTuner(1000);
+
+        GraphvizEffort effort = effortTuner.choose(view);
+        assertEquals(0, effort.getLevel());
+
+        // the layout took much longer than estimated, so the effort should be reduced next time
+        effortTuner.record(view, effort, 5000);
+        effort = effortTuner.choose(view);
+        assertTrue(effort.getLevel() > 0);
+
+        // and then much quicker, so the effort can be increased again
+        effortTuner.record(view, effort, 1);
+        effortTuner.record(view, effortTuner.choose(view), 1);
+        effortTuner.record(view, effortTuner.choose(view), 1);
+        assertEquals(0, effortTuner.choose(view).getLevel());
+    }
+
+    @Test
+    public void test_estimate_IsCalibratedByObservedTimings() {
+        SystemLandscapeView view = createView(5);
+        EffortTuner effortTuner = new EffortTuner(0);
+
+        assertEquals(EffortTuner.estimateCost(view), effortTuner.estimate(view), 0.001);
+        assertTrue(effortTuner.estimate(view) < effortTuner.estimate(createView(50)));
+
+        effortTuner.record(view, GraphvizEffort.FULL, 5000);
+        assertEquals(5000, effortTuner.estimate(view), 0.001);
+    }
+
+    @Test
+    public void test_record_KeepsABoundedNumberOfObservations() {
+        SystemLandscapeView view1 = createView(5);
+        SystemLandscapeView view2 = createView(6);
+        SystemLandscapeView view3 = createView(7);
+        EffortTuner effortTuner = new EffortTuner(0, 2);
+
+        effortTuner.record(view1, GraphvizEffort.FULL, 5000);
+        effortTuner.record(view2, GraphvizEffort.FULL, 5000);
+        effortTuner.estimate(view1);
+        effortTuner.record(view3, GraphvizEffort.FULL, 5000);
+
+        // the least recently used observation is evicted
+        assertEquals(5000, effortTuner.estimate(view1), 0.001);
+        assertEquals(EffortTuner.estimateCost(view2), effortTuner.estimate(view2), 0.001);
+        assertEquals(5000, effortTuner.estimate(view3), 0.001);
+    }
+
+    @Test
+    public void test_estimateCost_IncreasesWithTheDepthOfNestedDeploymentNodes() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+
+        DeploymentNode shallow = workspace.getModel().addDeploymentNode("Live", "Shallow", "", "");
+        shallow.add(softwareSystem);
+        DeploymentView shallowView = workspace.getViews().createDeploymentView("Shallow", "");
+        shallowView.setEnvironment("Live");
+        shallowView.add(shallow);
+
+        DeploymentNode deep = workspace.getModel().addDeploymentNode("Live", "Deep", "", "")
+                .addDeploymentNode("Level 2", "", "")
+                .addDeploymentNode("Level 3", "", "");
+        deep.add(softwareSystem);
+        DeploymentView deepView = workspace.getViews().createDeploymentView("Deep", "");
+        deepView.setEnvironment("Live");
+        deepView.add(deep);
+
+        assertTrue(EffortTuner.estimateCost(deepView) > EffortTuner.estimateCost(shallowView));
+    }
+
+    private SystemLandscapeView createView(int numberOfSoftwareSystems) {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem previous = null;
+        for (int i = 0; i < numberOfSoftwareSystems; i++) {
+            SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System " + i);
+            if (previous != null) {
+                previous.uses(softwareSystem, "Uses");
+            }
+            previous = softwareSystem;
+        }
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        return view;
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.model.Tags;
+import com.structurizr.view.ElementStyle;
+import com.structurizr.view.SystemContextView;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ElementStyleCacheTests {
+
+    @Test
+    public void test_findElementStyle_ResolvesEachTagSetOnce() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user1 = workspace.getModel().addPerson("User 1");
+        Person user2 = workspace.getModel().addPerson("User 2");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        ElementStyleCache cache = new ElementStyleCache();
+        cache.validate(view);
+
+        ElementStyle style = cache.findElementStyle(view, user1);
+        assertSame(style, cache.findElementStyle(view, user2));
+        assertNotSame(style, cache.findElementStyle(view, softwareSystem));
+    }
+
+    @Test
+    public void test_validate_ClearsTheCacheWhenStylesChange() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        ElementStyleCache cache = new ElementStyleCache();
+        cache.validate(view);
+        assertEquals(450, cache.getElementWidth(view, user));
+
+        workspace.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).width(123);
+        cache.validate(view);
+        assertEquals(123, cache.getElementWidth(view, user));
+    }
+
+    @Test
+    public void test_validate_ClearsTheCacheWhenThemesChange() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        ElementStyleCache cache = new ElementStyleCache();
+        cache.validate(view);
+        ElementStyle style = cache.findElementStyle(view, user);
+
+        workspace.getViews().getConfiguration().addTheme("https://example.com/theme.json");
+        cache.validate(view);
+        assertNotSame(style, cache.findElementStyle(view, user));
+    }
+
+    @Test
+    public void test_findElementStyle_KeepsTheStylesOfEachWorkspaceSeparate() throws Exception {
+        Workspace workspace1 = new Workspace("Name", "");
+        Person user1 = workspace1.getModel().addPerson("User");
+        workspace1.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).width(200);
+        SystemLandscapeView view1 = workspace1.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view1.addAllElements();
+
+        Workspace workspace2 = new Workspace("Name", "");
+        Person user2 = workspace2.getModel().addPerson("User");
+        workspace2.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).width(300);
+        SystemLandscapeView view2 = workspace2.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view2.addAllElements();
+
+        ElementStyleCache cache = new ElementStyleCache();
+
+        // one after the other
+        cache.validate(view1);
+        assertEquals(200, cache.getElementWidth(view1, user1));
+        cache.validate(view2);
+        assertEquals(300, cache.getElementWidth(view2, user2));
+        assertEquals(200, cache.getElementWidth(view1, user1));
+
+        // at the same time
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executorService.submit(() -> {
+                    cache.validate(view1);
+                    assertEquals(200, cache.getElementWidth(view1, user1));
+                }));
+                futures.add(executorService.submit(() -> {
+                    cache.validate(view2);
+                    assertEquals(300, cache.getElementWidth(view2, user2));
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+}
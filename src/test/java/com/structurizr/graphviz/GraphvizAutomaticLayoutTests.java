@@ -4,14 +4,27 @@ import com.structurizr.Workspace;
 import com.structurizr.model.Person;
 import com.structurizr.model.SoftwareSystem;
 import com.structurizr.model.Tags;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.ModelView;
 import com.structurizr.view.Shape;
 import com.structurizr.view.SystemContextView;
+import com.structurizr.view.SystemLandscapeView;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class GraphvizAutomaticLayoutTests {
 
@@ -46,4 +59,252 @@ public class GraphvizAutomaticLayoutTests {
         assertEquals(908, view.getElementView(softwareSystem).getY());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_apply_WithAPipeline() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        user.uses(softwareSystem, "Uses");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        workspace.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).shape(Shape.Person);
+
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(tempDir);
+        graphviz.setRankSeparation(300);
+        graphviz.setNodeSeparation(300);
+        graphviz.setMargin(400);
+        graphviz.setFastPathForTrivialViews(false);
+        graphviz.setPipelineThreads(1, 2, 1);
+
+        graphviz.apply(workspace);
+
+        assertEquals(LayoutTier.Dot, graphviz.getReport("SystemContext").getTier());
+        assertEquals(233, view.getElementView(user).getX());
+        assertEquals(208, view.getElementView(user).getY());
+        assertEquals(208, view.getElementView(softwareSystem).getX());
+        assertEquals(908, view.getElementView(softwareSystem).getY());
+        assertEquals(0, tempDir.listFiles().length);
+    }
+
+    @Test
+    public void test_apply_FallsBackToTheLayeredLayout() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        user.uses(softwareSystem, "Uses");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(tempDir);
+        graphviz.setRankSeparation(300);
+        graphviz.setNodeSeparation(300);
+        graphviz.addLayoutTier(LayoutTier.Layered, 0);
+
+        graphviz.apply(workspace);
+
+        assertEquals(LayoutTier.Layered, graphviz.getReport("SystemContext").getTier());
+        assertEquals(200, view.getElementView(user).getX());
+        assertEquals(200, view.getElementView(user).getY());
+        assertEquals(200, view.getElementView(softwareSystem).getX());
+        assertEquals(800, view.getElementView(softwareSystem).getY());
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void test_apply_FallsBackToTheLayeredLayoutWhenGraphvizFails() throws Exception {
+        // a stand-in for graphviz that always fails
+        File stubDirectory = Files.createTempDirectory("graphviz-stub").toFile();
+        Path stub = new File(stubDirectory, "dot").toPath();
+        Files.writeString(stub, "#!/bin/sh\necho 'Error: syntax error' >&2\nexit 1\n");
+        Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        SystemContextView view = createSystemContextView();
+
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(Files.createTempDirectory("graphviz").toFile());
+        graphviz.setGraphvizExecutable(stub.toString());
+        graphviz.addLayoutTier(LayoutTier.Dot, 0);
+        graphviz.addLayoutTier(LayoutTier.Layered, 0);
+
+        graphviz.apply(view);
+
+        LayoutReport report = graphviz.getReport("SystemContext");
+        assertEquals(LayoutTier.Layered, report.getTier());
+        assertEquals(List.of(LayoutTier.Dot), new ArrayList<>(report.getTierFailures().keySet()));
+        assertTrue(report.getTierFailures().get(LayoutTier.Dot).contains("exited with code 1"));
+    }
+
+    @Test
+    public void test_apply_FallsBackToTheLayeredLayoutWhenGraphvizCannotBeRun() throws Exception {
+        SystemContextView view = createSystemContextView();
+
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(Files.createTempDirectory("graphviz").toFile());
+        graphviz.setGraphvizExecutable(new File(Files.createTempDirectory("graphviz-missing").toFile(), "dot").getAbsolutePath());
+        graphviz.addLayoutTier(LayoutTier.Dot, 0);
+        graphviz.addLayoutTier(LayoutTier.Sfdp, 0);
+        graphviz.addLayoutTier(LayoutTier.Layered, 0);
+
+        graphviz.apply(view);
+
+        LayoutReport report = graphviz.getReport("SystemContext");
+        assertEquals(LayoutTier.Layered, report.getTier());
+        assertEquals(List.of(LayoutTier.Dot, LayoutTier.Sfdp), new ArrayList<>(report.getTierFailures().keySet()));
+        assertTrue(report.getTierFailures().get(LayoutTier.Dot).startsWith("IOException"));
+    }
+
+    @Test
+    public void test_apply_LaysOutViewsWithoutRelationshipsAsGraphvizWould() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        workspace.getModel().addPerson("User");
+        workspace.getModel().addSoftwareSystem("Software System");
+        workspace.getModel().addSoftwareSystem("Other Software System");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        workspace.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).shape(Shape.Person);
+
+        assertTrue(layOutWithAndWithoutTheFastPath(view, RankDirection.TopBottom));
+        assertTrue(layOutWithAndWithoutTheFastPath(view, RankDirection.LeftRight));
+    }
+
+    @Test
+    public void test_apply_UsesGraphvizForAFanOut() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        a.uses(workspace.getModel().addSoftwareSystem("B"), "Uses");
+        a.uses(workspace.getModel().addSoftwareSystem("C"), "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        assertFalse(layOutWithAndWithoutTheFastPath(view, RankDirection.TopBottom));
+    }
+
+    @Test
+    public void test_apply_UsesGraphvizForARelationshipThatSkipsARank() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        SoftwareSystem c = workspace.getModel().addSoftwareSystem("C");
+        a.uses(b, "Uses");
+        b.uses(c, "Uses");
+        a.uses(c, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        assertFalse(layOutWithAndWithoutTheFastPath(view, RankDirection.TopBottom));
+    }
+
+    @Test
+    public void test_apply_ReturnsRenderedOutputsFromTheSameRun() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        user.uses(softwareSystem, "Uses");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(tempDir);
+        graphviz.addOutputFormat("svg");
+        graphviz.addOutputFormat("png");
+
+        graphviz.apply(view);
+
+        LayoutReport report = graphviz.getReport("SystemContext");
+        assertTrue(new String(report.getOutput("svg"), StandardCharsets.UTF_8).contains("<svg"));
+        assertArrayEquals(new byte[] { (byte)0x89, 'P', 'N', 'G' }, Arrays.copyOf(report.getOutput("png"), 4));
+        assertNull(report.getOutput("pdf"));
+    }
+
+    @Test
+    public void test_apply_PacksComponentsSideBySideInTheOrderOfTheView() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        List<SoftwareSystem> sources = new ArrayList<>();
+        List<SoftwareSystem> destinations = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            SoftwareSystem source = workspace.getModel().addSoftwareSystem("Source " + i);
+            SoftwareSystem destination = workspace.getModel().addSoftwareSystem("Destination " + i);
+            source.uses(destination, "Uses");
+            sources.add(source);
+            destinations.add(destination);
+        }
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(Files.createTempDirectory("graphviz").toFile());
+        graphviz.setLayoutComponentsSeparately(true);
+        graphviz.apply(view);
+        int[] positions = getPositions(view);
+
+        // components are packed left to right (across the rank direction), in the order their elements were added
+        int width = workspace.getViews().getConfiguration().getStyles().findElementStyle(sources.get(0)).getWidth();
+        for (int i = 0; i < 3; i++) {
+            ElementView source = view.getElementView(sources.get(i));
+            ElementView destination = view.getElementView(destinations.get(i));
+            assertEquals(source.getX(), destination.getX());
+            assertTrue(source.getY() < destination.getY());
+
+            if (i > 0) {
+                assertTrue(view.getElementView(sources.get(i - 1)).getX() + width <= source.getX());
+            }
+        }
+
+        // and laying out the view again gives the same positions
+        graphviz.apply(view);
+        assertArrayEquals(positions, getPositions(view));
+    }
+
+    private SystemContextView createSystemContextView() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        user.uses(softwareSystem, "Uses");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        return view;
+    }
+
+    /**
+     * Lays out the view with graphviz, and then again with the fast path enabled, checking that the positions match.
+     *
+     * @return  whether the fast path was taken
+     */
+    private boolean layOutWithAndWithoutTheFastPath(SystemLandscapeView view, RankDirection rankDirection) throws Exception {
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(tempDir);
+        graphviz.setRankDirection(rankDirection);
+        graphviz.setRankSeparation(300);
+        graphviz.setNodeSeparation(300);
+        graphviz.apply(view);
+
+        assertFalse(graphviz.getReport(view.getKey()).isFastPath());
+        int[] expected = getPositions(view);
+
+        graphviz.setFastPathForTrivialViews(true);
+        graphviz.apply(view);
+
+        assertArrayEquals(expected, getPositions(view));
+        assertEquals(0, tempDir.listFiles().length);
+
+        return graphviz.getReport(view.getKey()).isFastPath();
+    }
+
+    private int[] getPositions(ModelView view) {
+        return view.getElements().stream()
+                .sorted(Comparator.comparing(ElementView::getId))
+                .flatMapToInt(elementView -> IntStream.of(elementView.getX(), elementView.getY()))
+                .toArray();
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Repeatedly lays out views against a stub dot executable (which succeeds, fails or hangs, depending on the view),
+ * checking that file descriptors, child processes and scratch files stay bounded. These tests aren't run by the
+ * test task; the number of iterations defaults to a few hundred, and can be raised for a longer soak:
+ *
+ * gradle soakTest -Dstructurizr.graphviz.soak.iterations=1000000
+ */
+@Tag("soak")
+@EnabledOnOs(OS.LINUX)
+public class GraphvizSoakTests {
+
+    private static final String ITERATIONS_PROPERTY = "structurizr.graphviz.soak.iterations";
+    private static final int DEFAULT_ITERATIONS = 300;
+
+    private static final int TIMEOUT_INTERVAL = 25;
+    private static final int FAILURE_INTERVAL = 5;
+    private static final long TIMEOUT = 500;
+
+    private static final long MAXIMUM_FILE_DESCRIPTOR_GROWTH = 16;
+
+    private static final String SVG =
+            "<svg width=\"232pt\" height=\"80pt\" viewBox=\"0.00 0.00 232.00 80.00\">" +
+            "<g id=\"graph0\" class=\"graph\" transform=\"scale(1 1) rotate(0) translate(4 76)\">" +
+            "<g id=\"1\" class=\"node\"><polygon points=\"108,-72 0,-72 0,0 108,0 108,-72\"/></g>" +
+            "<g id=\"2\" class=\"node\"><polygon points=\"224,-72 116,-72 116,0 224,0 224,-72\"/></g>" +
+            "</g></svg>";
+
+    private static final String STUB =
+            "#!/bin/sh\n" +
+            "case \"$1\" in\n" +
+            "  *Failure.dot) exit 1 ;;\n" +
+            // a child process that outlives its parent unless the whole process tree is destroyed
+            "  *Timeout.dot) sleep 60; exit 0 ;;\n" +
+            "esac\n" +
+            "cp \"$(dirname \"$0\")/layout.svg\" \"$1.svg\"\n";
+
+    @Test
+    public void test_apply_DoesNotLeakResources() throws Exception {
+        int iterations = Integer.getInteger(ITERATIONS_PROPERTY, DEFAULT_ITERATIONS);
+
+        File stubDirectory = Files.createTempDirectory("graphviz-stub").toFile();
+        Files.writeString(new File(stubDirectory, "layout.svg").toPath(), SVG);
+        Path stub = new File(stubDirectory, "dot").toPath();
+        Files.writeString(stub, STUB);
+        Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(tempDir);
+        graphviz.setGraphvizExecutable(stub.toString());
+        graphviz.setFastPathForTrivialViews(false);
+        graphviz.addLayoutTier(LayoutTier.Dot, TIMEOUT);
+
+        Workspace workspace = createWorkspace();
+        SystemLandscapeView success = createView(workspace, "Success");
+        SystemLandscapeView failure = createView(workspace, "Failure");
+        SystemLandscapeView timeout = createView(workspace, "Timeout");
+
+        // warm up, so that class loading and lazily opened files aren't counted as leaks
+        graphviz.apply(success);
+
+        long fileDescriptors = countOpenFileDescriptors();
+        int checkInterval = Math.max(1, iterations / 10);
+
+        int successes = 0;
+        int failures = 0;
+        int timeouts = 0;
+        for (int i = 1; i <= iterations; i++) {
+            if (i % TIMEOUT_INTERVAL == 0) {
+                assertThrows(GraphvizTimeoutException.class, () -> graphviz.apply(timeout));
+                timeouts++;
+            } else if (i % FAILURE_INTERVAL == 0) {
+                assertThrows(GraphvizException.class, () -> graphviz.apply(failure));
+                failures++;
+            } else {
+                graphviz.apply(success);
+                assertEquals(LayoutTier.Dot, graphviz.getReport("Success").getTier());
+                successes++;
+            }
+
+            if (i % checkInterval == 0 || i == iterations) {
+                assertNoLeaks(tempDir, fileDescriptors, i);
+            }
+        }
+
+        assertEquals(iterations, successes + failures + timeouts);
+    }
+
+    private void assertNoLeaks(File tempDir, long fileDescriptors, int iteration) throws Exception {
+        assertEquals(0, tempDir.listFiles().length, "Scratch files were left behind after " + iteration + " iterations");
+        assertEquals(0, countChildProcesses(), "Child processes were left running after " + iteration + " iterations");
+
+        long openFileDescriptors = countOpenFileDescriptors();
+        assertTrue(openFileDescriptors <= fileDescriptors + MAXIMUM_FILE_DESCRIPTOR_GROWTH,
+                "File descriptors grew from " + fileDescriptors + " to " + openFileDescriptors + " after " + iteration + " iterations");
+    }
+
+    private Workspace createWorkspace() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        assertEquals("1", a.getId());
+        assertEquals("2", b.getId());
+
+        return workspace;
+    }
+
+    private SystemLandscapeView createView(Workspace workspace, String key) {
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView(key, "");
+        view.addAllElements();
+
+        return view;
+    }
+
+    private long countOpenFileDescriptors() throws Exception {
+        try (Stream<Path> stream = Files.list(Paths.get("/proc/self/fd"))) {
+            return stream.count();
+        }
+    }
+
+    /**
+     * Counts the child processes of the JVM, allowing a short time for destroyed processes to be reaped.
+     */
+    private long countChildProcesses() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        long count = ProcessHandle.current().descendants().count();
+        while (count > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            count = ProcessHandle.current().descendants().count();
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.RelationshipView;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class HierarchicalLayoutTests {
+
+    private static final Pattern NODE = Pattern.compile("^\\s+(\\w+) \\[width=", Pattern.MULTILINE);
+
+    @Test
+    public void test_apply_LaysOutEachDeploymentNodeAsABlock() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A", "");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B", "");
+        a.uses(b, "Uses");
+
+        DeploymentNode server = workspace.getModel().addDeploymentNode("Server", "", "");
+        DeploymentNode runtime = server.addDeploymentNode("Runtime", "", "");
+        SoftwareSystemInstance aInstance = runtime.add(a);
+        SoftwareSystemInstance bInstance = server.add(b);
+
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        view.add(server);
+
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        List<String> names = new ArrayList<>();
+
+        // a stand-in for graphviz, which places blocks (deployment nodes) at the left, and other nodes 5 inches to the right
+        HierarchicalLayout.Graphviz graphviz = (dir, name) -> {
+            names.add(name);
+            String dot = Files.readString(new File(dir, name + ".dot").toPath());
+
+            StringBuilder svg = new StringBuilder("<svg><g id=\"graph0\" class=\"graph\" transform=\"translate(0 0)\">");
+            Matcher matcher = NODE.matcher(dot);
+            while (matcher.find()) {
+                int x = matcher.group(1).startsWith("cluster_") ? 0 : 360;
+                svg.append(String.format("<g id=\"%s\" class=\"node\"><polygon points=\"%d,0 %d,0 %d,72 %d,72 %d,0\"/></g>", matcher.group(1), x + 72, x, x, x + 72, x + 72));
+            }
+            svg.append("</g></svg>");
+
+            Files.writeString(new File(dir, name + ".dot.svg").toPath(), svg.toString());
+        };
+
+        ExportContext context = new ExportContext(view, RankDirection.TopBottom, 1, 1, GraphvizEffort.FULL, EdgeRouting.Polyline, Locale.US);
+        new HierarchicalLayout(new ElementStyleCache(), new PageLayout(400, true), Locale.US, directory, graphviz).apply(context, ForkJoinPool.commonPool());
+
+        // only the server has more than one thing to lay out
+        assertEquals(List.of("Deployment-" + server.getId()), names);
+
+        // the instance inside the runtime is padded by both the server and runtime boundaries
+        assertEquals(408, view.getElementView(aInstance).getX());
+        assertEquals(408, view.getElementView(aInstance).getY());
+        assertEquals(1804, view.getElementView(bInstance).getX());
+        assertEquals(304, view.getElementView(bInstance).getY());
+
+        // relationships that cross a deployment node boundary are straight
+        for (RelationshipView relationshipView : view.getRelationships()) {
+            assertTrue(relationshipView.getVertices().isEmpty());
+        }
+    }
+
+    @Test
+    public void test_apply_ArrangesDeploymentNodesWithoutRelationshipsInASingleRank() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A", "");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B", "");
+
+        DeploymentNode server = workspace.getModel().addDeploymentNode("Server", "", "");
+        SoftwareSystemInstance aInstance = server.add(a);
+        SoftwareSystemInstance bInstance = server.add(b);
+
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        view.add(server);
+
+        HierarchicalLayout.Graphviz graphviz = (dir, name) -> fail("Graphviz should not be run for " + name);
+
+        ExportContext context = new ExportContext(view, RankDirection.TopBottom, 1, 1, GraphvizEffort.FULL, EdgeRouting.Polyline, Locale.US);
+        new HierarchicalLayout(new ElementStyleCache(), new PageLayout(400, true), Locale.US, null, graphviz, true).apply(context, ForkJoinPool.commonPool());
+
+        // side by side, separated by the node separation (1 inch)
+        assertEquals(view.getElementView(aInstance).getY(), view.getElementView(bInstance).getY());
+        assertEquals(450 + 300, view.getElementView(bInstance).getX() - view.getElementView(aInstance).getX());
+    }
+
+    @Test
+    public void test_apply_UsesGraphvizForDeploymentNodesWithoutRelationshipsByDefault() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A", "");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B", "");
+
+        DeploymentNode server = workspace.getModel().addDeploymentNode("Server", "", "");
+        SoftwareSystemInstance aInstance = server.add(a);
+        SoftwareSystemInstance bInstance = server.add(b);
+
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        view.add(server);
+
+        File directory = Files.createTempDirectory("graphviz").toFile();
+        List<String> names = new ArrayList<>();
+
+        // a stand-in for graphviz, which stacks the nodes vertically (unlike arranging them in a single rank)
+        HierarchicalLayout.Graphviz graphviz = (dir, name) -> {
+            names.add(name);
+            String dot = Files.readString(new File(dir, name + ".dot").toPath());
+
+            StringBuilder svg = new StringBuilder("<svg><g id=\"graph0\" class=\"graph\" transform=\"translate(0 0)\">");
+            Matcher matcher = NODE.matcher(dot);
+            int y = 0;
+            while (matcher.find()) {
+                svg.append(String.format("<g id=\"%s\" class=\"node\"><polygon points=\"72,%d 0,%d 0,%d 72,%d 72,%d\"/></g>", matcher.group(1), y, y, y + 72, y + 72, y));
+                y += 360;
+            }
+            svg.append("</g></svg>");
+
+            Files.writeString(new File(dir, name + ".dot.svg").toPath(), svg.toString());
+        };
+
+        ExportContext context = new ExportContext(view, RankDirection.TopBottom, 1, 1, GraphvizEffort.FULL, EdgeRouting.Polyline, Locale.US);
+        new HierarchicalLayout(new ElementStyleCache(), new PageLayout(400, true), Locale.US, directory, graphviz).apply(context, ForkJoinPool.commonPool());
+
+        // the layout used by setLayoutDeploymentNodesSeparately is unchanged by the trivial views fast path
+        assertEquals(List.of("Deployment-" + server.getId()), names);
+        assertEquals(view.getElementView(aInstance).getX(), view.getElementView(bInstance).getX());
+        assertEquals(1500, view.getElementView(bInstance).getY() - view.getElementView(aInstance).getY());
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.ModelView;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LayeredLayoutTests {
+
+    @Test
+    public void test_apply_TopBottom() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        SoftwareSystem c = workspace.getModel().addSoftwareSystem("C");
+        a.uses(b, "Uses");
+        a.uses(c, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        apply(view, RankDirection.TopBottom);
+
+        // b and c are side-by-side below a, which is centred above them
+        assertEquals(575, view.getElementView(a).getX());
+        assertEquals(200, view.getElementView(a).getY());
+        assertEquals(200, view.getElementView(b).getX());
+        assertEquals(800, view.getElementView(b).getY());
+        assertEquals(950, view.getElementView(c).getX());
+        assertEquals(800, view.getElementView(c).getY());
+    }
+
+    @Test
+    public void test_apply_LeftRight() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        a.uses(b, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        apply(view, RankDirection.LeftRight);
+
+        assertEquals(200, view.getElementView(a).getX());
+        assertEquals(200, view.getElementView(a).getY());
+        assertEquals(950, view.getElementView(b).getX());
+        assertEquals(200, view.getElementView(b).getY());
+    }
+
+    @Test
+    public void test_apply_WithCycles() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        a.uses(b, "Uses");
+        b.uses(a, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        apply(view, RankDirection.TopBottom);
+
+        assertEquals(200, view.getElementView(a).getY());
+        assertEquals(800, view.getElementView(b).getY());
+    }
+
+    private void apply(ModelView view, RankDirection rankDirection) {
+        ElementStyleCache elementStyleCache = new ElementStyleCache();
+        DOTExporter exporter = new DOTExporter(rankDirection, 300, 300, EdgeRouting.Polyline, Locale.US, elementStyleCache);
+        LayeredLayout layeredLayout = new LayeredLayout(elementStyleCache, new PageLayout(400, true));
+        layeredLayout.apply(exporter.createExportContext(view, GraphvizEffort.FULL));
+    }
+
+}
@@ -0,0 +1,27 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LayoutMetricsTests {
+
+    @Test
+    public void test_toJson() {
+        LayoutMetrics metrics = new LayoutMetrics();
+        for (int i = 1; i <= 100; i++) {
+            metrics.record(i, 2, i != 100);
+        }
+
+        String json = metrics.toJson();
+        assertTrue(json.startsWith("{\"requests\":100,\"failures\":1,\"views\":200,"));
+        assertTrue(json.contains("\"latency\":{\"mean\":50.5,\"p50\":50,\"p95\":95,\"p99\":99,\"max\":100}"));
+    }
+
+    @Test
+    public void test_toJson_WhenThereHaveBeenNoRequests() {
+        String json = new LayoutMetrics().toJson();
+        assertTrue(json.contains("\"latency\":{\"mean\":0.0,\"p50\":0,\"p95\":0,\"p99\":0,\"max\":0}"));
+    }
+
+}
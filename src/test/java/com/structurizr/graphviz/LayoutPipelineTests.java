@@ -0,0 +1,111 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LayoutPipelineTests {
+
+    @Test
+    public void test_run_RunsEachJobThroughEachStage_WithABoundedNumberOfJobsInFlight() throws Exception {
+        List<Integer> jobs = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            jobs.add(i);
+        }
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maximumInFlight = new AtomicInteger();
+        Map<Integer, String> stages = new ConcurrentHashMap<>();
+        Set<Integer> released = ConcurrentHashMap.newKeySet();
+
+        new LayoutPipeline<Integer>(2, 3, 1).run(jobs,
+                job -> {
+                    maximumInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    stages.put(job, "export");
+                    return true;
+                },
+                job -> {
+                    Thread.sleep(1);
+                    stages.merge(job, ",graphviz", String::concat);
+                    return true;
+                },
+                job -> {
+                    stages.merge(job, ",parse", String::concat);
+                    return true;
+                },
+                (job, e) -> fail(e),
+                job -> {
+                    assertTrue(released.add(job));
+                    inFlight.decrementAndGet();
+                });
+
+        assertEquals(100, released.size());
+        for (int job : jobs) {
+            assertEquals("export,graphviz,parse", stages.get(job));
+        }
+
+        // 2 exporting, 3 waiting for graphviz, 3 in graphviz, 1 waiting to be parsed, 1 being parsed
+        assertTrue(maximumInFlight.get() <= 10);
+    }
+
+    @Test
+    public void test_run_StopsAJob_WhenAStageDoesNotForwardIt() throws Exception {
+        Set<Integer> parsed = ConcurrentHashMap.newKeySet();
+        Set<Integer> released = ConcurrentHashMap.newKeySet();
+
+        new LayoutPipeline<Integer>(1, 1, 1).run(List.of(1, 2, 3, 4),
+                job -> true,
+                job -> job % 2 == 0,
+                job -> parsed.add(job),
+                (job, e) -> fail(e),
+                released::add);
+
+        assertEquals(Set.of(2, 4), parsed);
+        assertEquals(Set.of(1, 2, 3, 4), released);
+    }
+
+    @Test
+    public void test_run_HandlesFailures_AndThrowsTheFirstOnceAllJobsAreComplete() throws Exception {
+        Set<Integer> handled = ConcurrentHashMap.newKeySet();
+        Set<Integer> parsed = ConcurrentHashMap.newKeySet();
+        Set<Integer> released = ConcurrentHashMap.newKeySet();
+
+        try {
+            new LayoutPipeline<Integer>(1, 1, 1).run(List.of(1, 2, 3, 4, 5),
+                    job -> true,
+                    job -> {
+                        if (job == 2 || job == 4) {
+                            throw new GraphvizException("Failed " + job);
+                        }
+                        return true;
+                    },
+                    job -> parsed.add(job),
+                    (job, e) -> {
+                        assertTrue(released.contains(job));
+                        handled.add(job);
+                        if (job == 4) {
+                            throw e;
+                        }
+                    },
+                    released::add);
+            fail();
+        } catch (GraphvizException e) {
+            assertEquals("Failed 4", e.getMessage());
+            assertEquals(0, e.getSuppressed().length);
+        }
+
+        assertEquals(Set.of(2, 4), handled);
+        assertEquals(Set.of(1, 3, 5), parsed);
+        assertEquals(Set.of(1, 2, 3, 4, 5), released);
+    }
+
+    @Test
+    public void test_construction_ThrowsAnException_WhenAStageHasNoThreads() {
+        assertThrows(IllegalArgumentException.class, () -> new LayoutPipeline<Integer>(1, 0, 1));
+    }
+
+}
@@ -0,0 +1,61 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LayoutResultTests {
+
+    @Test
+    public void test_build() {
+        LayoutResult layoutResult = new LayoutResult.Builder()
+                .addElement("1", 100, 200)
+                .addElement("2", 300, 400)
+                .addRelationship("3", new int[] { 10, 20, 30, 40 })
+                .addRelationship("4", new int[0])
+                .build(new Bounds(100, 20, 750, 700));
+
+        assertEquals(2, layoutResult.getNumberOfElements());
+        assertEquals(2, layoutResult.getNumberOfRelationships());
+
+        assertEquals(300, layoutResult.getElementX(layoutResult.indexOfElement("2")));
+        assertEquals(400, layoutResult.getElementY(layoutResult.indexOfElement("2")));
+        assertEquals(-1, layoutResult.indexOfElement("3"));
+
+        int relationship = layoutResult.indexOfRelationship("3");
+        assertEquals(2, layoutResult.getNumberOfVertices(relationship));
+        assertEquals(30, layoutResult.getVertexX(relationship, 1));
+        assertEquals(40, layoutResult.getVertexY(relationship, 1));
+        assertEquals(0, layoutResult.getNumberOfVertices(layoutResult.indexOfRelationship("4")));
+
+        assertEquals(650, layoutResult.getBounds().getWidth());
+    }
+
+    @Test
+    public void test_serialisation() throws Exception {
+        LayoutResult layoutResult = new LayoutResult.Builder()
+                .addElement("1", 100, 200)
+                .addRelationship("2", new int[] { 10, 20 })
+                .build(new Bounds(10, 20, 550, 500));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(layoutResult);
+        }
+
+        LayoutResult copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (LayoutResult)in.readObject();
+        }
+
+        assertEquals(100, copy.getElementX(copy.indexOfElement("1")));
+        assertEquals(20, copy.getVertexY(copy.indexOfRelationship("2"), 0));
+        assertEquals(500, copy.getBounds().getMaximumY());
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ElementView;
+import com.structurizr.view.SystemContextView;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LayoutServerTests {
+
+    @Test
+    public void test_layout_WhenTheWorkspaceIsInvalid() throws Exception {
+        LayoutServer server = new LayoutServer(0, 1, GraphvizAutomaticLayout::new);
+        server.start();
+
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/layout"))
+                            .POST(HttpRequest.BodyPublishers.ofString("not json"))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode());
+
+            response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"requests\":1,\"failures\":1,\"views\":0,"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void test_layout_ReturnsTheWorkspaceWithTheLayoutApplied() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        user.uses(softwareSystem, "Uses");
+
+        SystemContextView view = workspace.getViews().createSystemContextView(softwareSystem, "SystemContext", "");
+        view.addAllElements();
+
+        // graphviz isn't needed, as the layout falls back to the layered layout when it can't be run
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        String graphvizExecutable = new File(Files.createTempDirectory("graphviz-missing").toFile(), "dot").getAbsolutePath();
+        LayoutServer server = new LayoutServer(0, 1, () -> {
+            GraphvizAutomaticLayout layout = new GraphvizAutomaticLayout(tempDir);
+            layout.setGraphvizExecutable(graphvizExecutable);
+            layout.addLayoutTier(LayoutTier.Dot, 0);
+            layout.addLayoutTier(LayoutTier.Layered, 0);
+
+            return layout;
+        });
+        server.start();
+
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/layout"))
+                            .POST(HttpRequest.BodyPublishers.ofString(WorkspaceUtils.toJson(workspace, false)))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+
+            SystemContextView laidOutView = WorkspaceUtils.fromJson(response.body()).getViews().getSystemContextViews().iterator().next();
+            ElementView userView = laidOutView.getElementView(laidOutView.getModel().getElement(user.getId()));
+            ElementView softwareSystemView = laidOutView.getElementView(laidOutView.getModel().getElement(softwareSystem.getId()));
+            assertTrue(userView.getY() < softwareSystemView.getY());
+
+            response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"requests\":1,\"failures\":0,\"views\":1,"));
+            assertTrue(response.body().contains("\"latency\":{\"mean\":"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void test_layout_WhenTheRequestIsTooLarge() throws Exception {
+        LayoutServer server = new LayoutServer(0, 1, GraphvizAutomaticLayout::new);
+        server.setMaximumRequestSize(1024);
+        server.start();
+
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+
+            HttpResponse<String> response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/layout"))
+                            .POST(HttpRequest.BodyPublishers.ofString("x".repeat(1025)))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(413, response.statusCode());
+
+            // a request with no Content-Length is limited as it's read
+            response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/layout"))
+                            .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[4096])))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(413, response.statusCode());
+
+            response = client.send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/layout"))
+                            .POST(HttpRequest.BodyPublishers.ofString("x".repeat(1024)))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertEquals(400, response.statusCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+}
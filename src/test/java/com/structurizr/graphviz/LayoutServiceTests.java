@@ -0,0 +1,156 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LayoutServiceTests {
+
+    @Test
+    public void test_run_LimitsConcurrencyAndRecordsStatisticsPerTenant() throws Exception {
+        LayoutService layoutService = new LayoutService(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maximumRunning = new AtomicInteger();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String tenant = i % 2 == 0 ? "a" : "b";
+            futures.add(executorService.submit(() -> {
+                layoutService.run(tenant, LayoutService.Lane.Batch, () -> {
+                    maximumRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                });
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        assertTrue(maximumRunning.get() <= 2);
+        assertEquals(0, layoutService.getRunning());
+        assertEquals(10, layoutService.getStatistics().get("a").getRuns());
+        assertEquals(10, layoutService.getStatistics().get("b").getRuns());
+        assertTrue(layoutService.getStatistics().get("a").getMeanProcessingTime() >= 5);
+    }
+
+    @Test
+    public void test_run_RecordsFailures() throws Exception {
+        LayoutService layoutService = new LayoutService(1);
+
+        assertThrows(GraphvizException.class, () -> layoutService.run("a", LayoutService.Lane.Interactive, () -> {
+            throw new GraphvizException("Failed");
+        }));
+
+        assertEquals(1, layoutService.getStatistics().get("a").getFailures());
+        assertEquals(0, layoutService.getRunning());
+        assertTrue(layoutService.toJson().startsWith("{\"a\":{\"runs\":1,\"failures\":1,"));
+    }
+
+    @Test
+    public void test_run_TakesTurnsBetweenTenants() throws Exception {
+        List<String> order = run(
+                "a", LayoutService.Lane.Batch,
+                "a", LayoutService.Lane.Batch,
+                "a", LayoutService.Lane.Batch,
+                "b", LayoutService.Lane.Batch);
+
+        assertEquals(List.of("a0", "b3", "a1", "a2"), order);
+    }
+
+    @Test
+    public void test_run_PrefersTheInteractiveLane_WithoutStarvingTheBatchLane() throws Exception {
+        List<String> order = run(
+                "a", LayoutService.Lane.Batch,
+                "b", LayoutService.Lane.Interactive,
+                "b", LayoutService.Lane.Interactive,
+                "b", LayoutService.Lane.Interactive,
+                "b", LayoutService.Lane.Interactive,
+                "b", LayoutService.Lane.Interactive);
+
+        assertEquals(List.of("b1", "b2", "b3", "a0", "b4", "b5"), order);
+    }
+
+    @Test
+    public void test_construction_ThrowsAnException_WhenTheConcurrencyIsLessThanOne() {
+        assertThrows(IllegalArgumentException.class, () -> new LayoutService(0));
+    }
+
+    @Test
+    public void test_run_KeepsStatisticsForABoundedNumberOfTenants() throws Exception {
+        LayoutService layoutService = new LayoutService(1, 2);
+
+        layoutService.run("a", LayoutService.Lane.Batch, () -> {});
+        layoutService.run("b", LayoutService.Lane.Batch, () -> {});
+        layoutService.run("a", LayoutService.Lane.Batch, () -> {});
+        layoutService.run("c", LayoutService.Lane.Batch, () -> {});
+
+        // b was the least recently active tenant
+        assertEquals(List.of("a", "c"), new ArrayList<>(layoutService.getStatistics().keySet()));
+        assertEquals(2, layoutService.getStatistics().get("a").getRuns());
+    }
+
+    @Test
+    public void test_run_RecordsTheAdmissionStepAsQueueingTime() throws Exception {
+        LayoutService layoutService = new LayoutService(1);
+
+        layoutService.run("a", LayoutService.Lane.Interactive, () -> Thread.sleep(100), () -> {});
+
+        LayoutService.TenantStatistics statistics = layoutService.getStatistics().get("a");
+        assertTrue(statistics.getMaximumQueueingTime() >= 100);
+        assertTrue(statistics.getMaximumProcessingTime() < 100);
+    }
+
+    /**
+     * Queues runs (tenant, lane pairs) one at a time behind a run that holds the only slot, then releases them and
+     * returns the order in which they ran.
+     */
+    private List<String> run(Object... runs) throws Exception {
+        LayoutService layoutService = new LayoutService(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        Future<?> blocker = executorService.submit(() -> {
+            layoutService.run("blocker", LayoutService.Lane.Interactive, latch::await);
+            return null;
+        });
+        while (layoutService.getRunning() == 0) {
+            Thread.sleep(1);
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < runs.length / 2; i++) {
+            String name = (String)runs[i * 2] + i;
+            String tenant = (String)runs[i * 2];
+            LayoutService.Lane lane = (LayoutService.Lane)runs[(i * 2) + 1];
+
+            int queued = layoutService.getQueued(lane);
+            futures.add(executorService.submit(() -> {
+                layoutService.run(tenant, lane, () -> order.add(name));
+                return null;
+            }));
+            while (layoutService.getQueued(lane) == queued) {
+                Thread.sleep(1);
+            }
+        }
+
+        latch.countDown();
+        blocker.get();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+
+        return order;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PhaseTimingsParserTests {
+
+    @Test
+    public void test_parse() {
+        String stderr = "dot - graphviz version 2.43.0 (0)\n" +
+                "libdir = \"/usr/lib/x86_64-linux-gnu/graphviz\"\n" +
+                "Activated plugin library: libgvplugin_dot_layout.so.6\n" +
+                "Using layout: dot:dot_layout\n" +
+                "Using render: svg:core\n" +
+                "Using device: svg:svg:core\n" +
+                "Starting phase 1 [dot_rank]\n" +
+                "network simplex:      2 nodes      1 edges        0 iter   0.00 sec\n" +
+                "Finished phase 1 0.02 secs\n" +
+                "Starting phase 2 [dot_mincross]\n" +
+                "mincross: pass 0 iter 0 trying 0 cur_cross 0 best_cross 0\n" +
+                "mincross %3: 0 crossings, 0.00 secs.\n" +
+                "Finished phase 2 1.25 secs\n" +
+                "Starting phase 3 [dot_position]\n" +
+                "network simplex:      3 nodes      2 edges        0 iter   0.00 sec\n" +
+                "Finished phase 3 0.50 secs\n" +
+                "routesplines: 1 edges, 3 boxes 0.01 sec\n" +
+                "routesplines: 2 edges, 6 boxes 0.03 sec\n" +
+                "dot: 0.02 sec\n";
+
+        Map<String, Long> timings = new PhaseTimingsParser().parse(stderr);
+
+        assertEquals(4, timings.size());
+        assertEquals(20, (long) timings.get("rank"));
+        assertEquals(1250, (long) timings.get("mincross"));
+        assertEquals(500, (long) timings.get("position"));
+        assertEquals(40, (long) timings.get("splines"));
+    }
+
+    @Test
+    public void test_parse_WhenThereIsNoVerboseOutput() {
+        assertTrue(new PhaseTimingsParser().parse("").isEmpty());
+        assertTrue(new PhaseTimingsParser().parse(null).isEmpty());
+    }
+
+}
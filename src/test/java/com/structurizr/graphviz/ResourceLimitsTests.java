@@ -0,0 +1,179 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ResourceLimitsTests {
+
+    private static final List<String> COMMAND = List.of("dot", "view.dot", "-Tsvg", "-O");
+
+    @Test
+    public void test_apply_WhenNoLimitsAreSet() {
+        assertEquals(COMMAND, new ResourceLimits().apply(COMMAND));
+    }
+
+    @Test
+    public void test_apply() {
+        ResourceLimits resourceLimits = new ResourceLimits();
+        resourceLimits.setMemoryLimit(1024L * 1024 * 1024);
+        resourceLimits.setCpuTimeLimit(2500);
+        resourceLimits.setNiceness(10);
+        resourceLimits.setIoPriority(7);
+        resourceLimits.setCpuAffinity("0-3,6");
+
+        assertEquals(List.of(
+                "taskset", "-c", "0-3,6",
+                "ionice", "-c", "2", "-n", "7",
+                "nice", "-n", "10",
+                "prlimit", "--as=1073741824", "--cpu=3:4", "--",
+                "dot", "view.dot", "-Tsvg", "-O"), resourceLimits.apply(COMMAND));
+    }
+
+    @Test
+    public void test_apply_WithOnlyANiceness() {
+        ResourceLimits resourceLimits = new ResourceLimits();
+        resourceLimits.setNiceness(5);
+
+        assertEquals(List.of("nice", "-n", "5", "dot", "view.dot", "-Tsvg", "-O"), resourceLimits.apply(COMMAND));
+    }
+
+    @Test
+    public void test_setters_ThrowAnExceptionWhenTheValueIsInvalid() {
+        ResourceLimits resourceLimits = new ResourceLimits();
+
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setMemoryLimit(0));
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setCpuTimeLimit(-1));
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setNiceness(20));
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setIoPriority(8));
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setCpuAffinity("0-3; rm -rf /"));
+        assertThrows(IllegalArgumentException.class, () -> resourceLimits.setCpuAffinity(null));
+    }
+
+    @Test
+    public void test_findExceededLimit() {
+        ResourceLimits resourceLimits = new ResourceLimits();
+        assertNull(resourceLimits.findExceededLimit(152, "", 5000));
+
+        resourceLimits.setCpuTimeLimit(1000);
+        assertEquals("CPU time limit of 1000ms", resourceLimits.findExceededLimit(152, "", -1));
+        assertEquals("CPU time limit of 1000ms", resourceLimits.findExceededLimit(137, "", 1000));
+        assertNull(resourceLimits.findExceededLimit(1, "Error: syntax error in line 1", 1000));
+
+        // killed by something else (e.g. the OOM killer) before reaching the soft limit
+        assertNull(resourceLimits.findExceededLimit(137, "", 200));
+        assertNull(resourceLimits.findExceededLimit(137, "", -1));
+
+        resourceLimits.setMemoryLimit(1000000);
+        assertEquals("memory limit of 1000000 bytes", resourceLimits.findExceededLimit(1, "Error: out of memory\n", -1));
+        assertEquals("memory limit of 1000000 bytes", resourceLimits.findExceededLimit(1, "dot: out of memory\n", -1));
+        assertEquals("memory limit of 1000000 bytes", resourceLimits.findExceededLimit(134, "terminate called after throwing an instance of 'std::bad_alloc'\n", -1));
+        assertEquals("memory limit of 1000000 bytes", resourceLimits.findExceededLimit(1, "mmap: Cannot allocate memory\n", -1));
+        assertNull(resourceLimits.findExceededLimit(134, "", -1));
+        assertNull(resourceLimits.findExceededLimit(139, "Segmentation fault\n", -1));
+        assertNull(resourceLimits.findExceededLimit(1, "Error: syntax error in line 1", -1));
+        assertNull(resourceLimits.findExceededLimit(1, "Warning: cannot allocate a label for node 1\n", -1));
+        assertNull(resourceLimits.findExceededLimit(1, "Error: syntax error near 'out of memory'\n", -1));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void test_apply_RunsTheCommandWithTheLimitsAndTheSameProcessId() throws Exception {
+        assumeTrue(isOnPath("prlimit") && isOnPath("nice"), "prlimit and nice are needed");
+
+        ResourceLimits resourceLimits = new ResourceLimits();
+        resourceLimits.setMemoryLimit(1024L * 1024 * 1024);
+        resourceLimits.setCpuTimeLimit(2500);
+        resourceLimits.setNiceness(10);
+        if (isOnPath("ionice")) {
+            resourceLimits.setIoPriority(7);
+        }
+        if (isOnPath("taskset")) {
+            resourceLimits.setCpuAffinity("0");
+        }
+
+        // each tool replaces itself with the next command, so the shell keeps the process ID that Java sees
+        Process process = new ProcessBuilder(resourceLimits.apply(List.of("sh", "-c", "echo $$; ulimit -v; ulimit -t; nice")))
+                .redirectErrorStream(true)
+                .start();
+        List<String> output = new String(process.getInputStream().readAllBytes()).lines().toList();
+        assertEquals(0, process.waitFor());
+
+        assertEquals(List.of(String.valueOf(process.pid()), "1048576", "3", "10"), output);
+    }
+
+    private boolean isOnPath(String command) {
+        for (String directory : System.getenv().getOrDefault("PATH", "").split(File.pathSeparator)) {
+            if (new File(directory, command).canExecute()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void test_apply_ThrowsAnExceptionWhenTheCpuTimeLimitIsExceeded() throws Exception {
+        // a stand-in for graphviz that never finishes
+        File stubDirectory = Files.createTempDirectory("graphviz-stub").toFile();
+        Path stub = new File(stubDirectory, "dot").toPath();
+        Files.writeString(stub, "#!/bin/sh\nwhile :; do :; done\n");
+        Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        Workspace workspace = new Workspace("Name", "");
+        workspace.getModel().addSoftwareSystem("A");
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        ResourceLimits resourceLimits = new ResourceLimits();
+        resourceLimits.setCpuTimeLimit(1000);
+
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(Files.createTempDirectory("graphviz").toFile());
+        graphviz.setGraphvizExecutable(stub.toString());
+        graphviz.setFastPathForTrivialViews(false);
+        graphviz.setResourceLimits(resourceLimits);
+
+        GraphvizResourceLimitExceededException e = assertThrows(GraphvizResourceLimitExceededException.class, () -> graphviz.apply(view));
+        assertTrue(e.getMessage().startsWith("Graphviz exceeded the CPU time limit of 1000ms for the view with key SystemLandscape"));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void test_apply_ThrowsAnExceptionNamingTheSignalWhenGraphvizCrashes() throws Exception {
+        // a stand-in for graphviz that aborts without reporting that it ran out of memory
+        File stubDirectory = Files.createTempDirectory("graphviz-stub").toFile();
+        Path stub = new File(stubDirectory, "dot").toPath();
+        Files.writeString(stub, "#!/bin/sh\nkill -ABRT $$\n");
+        Files.setPosixFilePermissions(stub, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        Workspace workspace = new Workspace("Name", "");
+        workspace.getModel().addSoftwareSystem("A");
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        ResourceLimits resourceLimits = new ResourceLimits();
+        resourceLimits.setMemoryLimit(1024L * 1024 * 1024);
+
+        GraphvizAutomaticLayout graphviz = new GraphvizAutomaticLayout(Files.createTempDirectory("graphviz").toFile());
+        graphviz.setGraphvizExecutable(stub.toString());
+        graphviz.setFastPathForTrivialViews(false);
+        graphviz.setResourceLimits(resourceLimits);
+
+        GraphvizException e = assertThrows(GraphvizException.class, () -> graphviz.apply(view));
+        assertFalse(e instanceof GraphvizResourceLimitExceededException);
+        assertEquals("Graphviz was killed by signal 6 for the view with key SystemLandscape (exit code 134)", e.getMessage());
+    }
+
+}
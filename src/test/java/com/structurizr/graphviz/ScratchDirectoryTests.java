@@ -0,0 +1,45 @@
+package com.structurizr.graphviz;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScratchDirectoryTests {
+
+    @Test
+    public void test_close_DeletesTheDirectoryAndItsContents() throws Exception {
+        File parent = Files.createTempDirectory("graphviz").toFile();
+
+        File directory;
+        try (ScratchDirectory scratchDirectory = ScratchDirectory.create(parent)) {
+            directory = scratchDirectory.getDirectory();
+            assertEquals(parent, directory.getParentFile());
+
+            Files.writeString(new File(directory, "SystemContext.dot").toPath(), "digraph {}");
+            Files.writeString(new File(directory, "SystemContext.dot.svg").toPath(), "<svg/>");
+        }
+
+        assertFalse(directory.exists());
+        assertEquals(0, parent.listFiles().length);
+    }
+
+    @Test
+    public void test_create_ReturnsADifferentDirectoryEachTime() throws Exception {
+        File parent = Files.createTempDirectory("graphviz").toFile();
+
+        try (ScratchDirectory scratchDirectory1 = ScratchDirectory.create(parent); ScratchDirectory scratchDirectory2 = ScratchDirectory.create(parent)) {
+            assertNotEquals(scratchDirectory1.getDirectory(), scratchDirectory2.getDirectory());
+        }
+    }
+
+    @Test
+    public void test_getDefaultParent() {
+        File parent = ScratchDirectory.getDefaultParent();
+
+        assertTrue(parent.isDirectory());
+    }
+
+}
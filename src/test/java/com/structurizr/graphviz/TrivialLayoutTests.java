@@ -0,0 +1,81 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.*;
+import com.structurizr.view.DeploymentView;
+import com.structurizr.view.SystemLandscapeView;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrivialLayoutTests {
+
+    @Test
+    public void test_isTrivial_WhenThereAreNoRelationships() {
+        Workspace workspace = new Workspace("Name", "");
+        for (int i = 0; i < 10; i++) {
+            workspace.getModel().addSoftwareSystem("Software System " + i);
+        }
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        assertTrue(TrivialLayout.isTrivial(view));
+    }
+
+    @Test
+    public void test_isTrivial_WhenThereAreRelationships() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        a.uses(b, "Uses");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        assertFalse(TrivialLayout.isTrivial(view));
+    }
+
+    @Test
+    public void test_isTrivial_WhenThereAreDeploymentNodes() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        a.uses(b, "Uses");
+
+        DeploymentNode server = workspace.getModel().addDeploymentNode("Server", "", "");
+        server.add(a);
+        server.add(b);
+
+        DeploymentView view = workspace.getViews().createDeploymentView("Deployment", "");
+        view.add(server);
+        assertFalse(TrivialLayout.isTrivial(view));
+
+        DeploymentView emptyView = workspace.getViews().createDeploymentView("Empty", "");
+        emptyView.add(workspace.getModel().addDeploymentNode("Other Server", "", ""));
+        assertTrue(TrivialLayout.isTrivial(emptyView));
+    }
+
+    @Test
+    public void test_apply_PlacesElementsInASingleRank() throws Exception {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+
+        SystemLandscapeView view = workspace.getViews().createSystemLandscapeView("SystemLandscape", "");
+        view.addAllElements();
+
+        ElementStyleCache elementStyleCache = new ElementStyleCache();
+        DOTExporter exporter = new DOTExporter(RankDirection.TopBottom, 300, 300, EdgeRouting.Polyline, Locale.US, elementStyleCache);
+        new TrivialLayout(elementStyleCache, new PageLayout(400, true)).apply(exporter.createExportContext(view, GraphvizEffort.FULL));
+
+        // side by side, separated by the node separation, and offset by the graphviz padding
+        assertEquals(208, view.getElementView(a).getX());
+        assertEquals(208, view.getElementView(a).getY());
+        assertEquals(958, view.getElementView(b).getX());
+        assertEquals(208, view.getElementView(b).getY());
+    }
+
+}
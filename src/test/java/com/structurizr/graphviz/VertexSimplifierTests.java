@@ -0,0 +1,96 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Container;
+import com.structurizr.model.Relationship;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.view.ContainerView;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class VertexSimplifierTests {
+
+    @Test
+    public void test_simplify_RemovesNearlyCollinearVertices() {
+        VertexSimplifier simplifier = new VertexSimplifier(5, new ElementStyleCache());
+        int[] vertices = { 0, 0, 100, 1, 200, 0, 300, 0 };
+
+        assertArrayEquals(new int[] { 0, 0, 300, 0 }, simplifier.simplify(vertices, new int[0], -1, -1));
+    }
+
+    @Test
+    public void test_simplify_KeepsVerticesBeyondTheTolerance() {
+        VertexSimplifier simplifier = new VertexSimplifier(5, new ElementStyleCache());
+        int[] vertices = { 0, 0, 150, 100, 300, 0 };
+
+        assertArrayEquals(new int[] { 0, 0, 150, 100, 300, 0 }, simplifier.simplify(vertices, new int[0], -1, -1));
+    }
+
+    @Test
+    public void test_simplify_KeepsRelationshipsClearOfOtherElements() {
+        VertexSimplifier simplifier = new VertexSimplifier(1000, new ElementStyleCache());
+        int[] vertices = { 0, 0, 150, -200, 300, 0 };
+        int[] obstacles = { 100, -50, 100, 100 };
+
+        assertArrayEquals(new int[] { 0, 0, 150, -200, 300, 0 }, simplifier.simplify(vertices, obstacles, -1, -1));
+    }
+
+    @Test
+    public void test_simplify_IncludesTheSourceAndDestination() {
+        VertexSimplifier simplifier = new VertexSimplifier(5, new ElementStyleCache());
+        int[] vertices = { 0, 0, 100, 0, 200, 0 };
+        int[] obstacles = {
+                -100, -50, 100, 100, // the source, with its centre at -50,0
+                300, -50, 100, 100   // the destination, with its centre at 350,0
+        };
+
+        assertArrayEquals(new int[0], simplifier.simplify(vertices, obstacles, 0, 1));
+    }
+
+    @Test
+    public void test_simplify_IgnoresTheGivenObstacles() {
+        VertexSimplifier simplifier = new VertexSimplifier(1000, new ElementStyleCache());
+        int[] vertices = { 0, 0, 150, -200, 300, 0 };
+        int[] obstacles = { 100, -50, 100, 100 };
+        BitSet ignoredObstacles = new BitSet();
+        ignoredObstacles.set(0);
+
+        assertArrayEquals(new int[] { 0, 0, 300, 0 }, simplifier.simplify(vertices, obstacles, -1, -1, ignoredObstacles));
+    }
+
+    @Test
+    public void test_simplify_KeepsRelationshipsClearOfBoundariesThatDontContainTheirSourceOrDestination() {
+        Workspace workspace = new Workspace("Name", "");
+        SoftwareSystem softwareSystem = workspace.getModel().addSoftwareSystem("Software System");
+        Container a = softwareSystem.addContainer("A", "", "");
+        Container b = softwareSystem.addContainer("B", "", "");
+        SoftwareSystem x = workspace.getModel().addSoftwareSystem("X");
+        SoftwareSystem y = workspace.getModel().addSoftwareSystem("Y");
+        Relationship xToY = x.uses(y, "Uses");
+        Relationship xToA = x.uses(a, "Uses");
+
+        ContainerView view = workspace.getViews().createContainerView(softwareSystem, "Containers", "");
+        view.addAllElements();
+
+        // A and B (450x300) are inside the software system boundary, with a gap between them; X and Y are either side
+        // of it, so a straight line between them passes through the boundary without touching A or B
+        LayoutResult layoutResult = new LayoutResult.Builder()
+                .addElement(a.getId(), 400, 0)
+                .addElement(b.getId(), 400, 600)
+                .addElement(x.getId(), 0, 300)
+                .addElement(y.getId(), 1300, 300)
+                .addRelationship(view.getRelationshipView(xToY).getId(), new int[] { 300, 1100, 1500, 1100 })
+                .addRelationship(view.getRelationshipView(xToA).getId(), new int[] { 225, 150, 300, 150 })
+                .build(new Bounds(0, 0, 1750, 900));
+
+        LayoutResult simplified = new VertexSimplifier(10000, new ElementStyleCache()).simplify(view, layoutResult);
+
+        // the route from X to Y bends around the boundary, but the route from X to A has to cross it
+        assertArrayEquals(new int[] { 300, 1100, 1500, 1100 }, simplified.getVertexCoordinates(simplified.indexOfRelationship(view.getRelationshipView(xToY).getId())));
+        assertArrayEquals(new int[0], simplified.getVertexCoordinates(simplified.indexOfRelationship(view.getRelationshipView(xToA).getId())));
+    }
+
+}
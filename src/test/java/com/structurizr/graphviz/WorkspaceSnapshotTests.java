@@ -0,0 +1,101 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.model.Tags;
+import com.structurizr.view.Shape;
+import com.structurizr.view.SystemContextView;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WorkspaceSnapshotTests {
+
+    @Test
+    public void test_findChangedViews_WhenThereIsNoPreviousSnapshot() {
+        Workspace workspace = createWorkspace();
+
+        assertEquals(Set.of("A", "B"), WorkspaceSnapshot.of(workspace).findChangedViews(null));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenNothingHasChanged() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        // element positions don't count as a change
+        workspace.getViews().getSystemContextViews().iterator().next().getElements().iterator().next().setX(1000);
+
+        assertEquals(Set.of(), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenAnElementHasChanged() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        workspace.getModel().getSoftwareSystemWithName("B").setDescription("Description");
+
+        assertEquals(Set.of("B"), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenARelationshipHasBeenAdded() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        Person user = workspace.getModel().getPersonWithName("User");
+        SoftwareSystem b = workspace.getModel().getSoftwareSystemWithName("B");
+        user.uses(b, "Uses");
+        ((SystemContextView)workspace.getViews().getViewWithKey("B")).addDefaultElements();
+
+        assertEquals(Set.of("B"), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenTheStylesHaveChanged() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        workspace.getViews().getConfiguration().getStyles().addElementStyle(Tags.PERSON).shape(Shape.Person);
+
+        assertEquals(Set.of("A", "B"), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenTheThemesHaveChanged() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        workspace.getViews().getConfiguration().addTheme("https://example.com/theme.json");
+
+        assertEquals(Set.of("A", "B"), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    @Test
+    public void test_findChangedViews_WhenAStyleThatIsNotUsedHasChanged() {
+        Workspace workspace = createWorkspace();
+        WorkspaceSnapshot previous = WorkspaceSnapshot.of(workspace);
+
+        workspace.getViews().getConfiguration().getStyles().addElementStyle("Unused").width(123);
+
+        assertEquals(Set.of(), WorkspaceSnapshot.of(workspace).findChangedViews(previous));
+    }
+
+    private Workspace createWorkspace() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        user.uses(a, "Uses");
+
+        workspace.getViews().createSystemContextView(a, "A", "").addDefaultElements();
+        workspace.getViews().createSystemContextView(b, "B", "").addDefaultElements();
+
+        return workspace;
+    }
+
+}
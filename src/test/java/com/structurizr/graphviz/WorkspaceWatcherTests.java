@@ -0,0 +1,144 @@
+package com.structurizr.graphviz;
+
+import com.structurizr.Workspace;
+import com.structurizr.model.Person;
+import com.structurizr.model.SoftwareSystem;
+import com.structurizr.util.WorkspaceUtils;
+import com.structurizr.view.ModelView;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkspaceWatcherTests {
+
+    private static final long TIMEOUT = 30;
+
+    @Test
+    public void test_update_LaysOutOnlyTheViewsThatHaveChanged() throws Exception {
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        RecordingListener listener = new RecordingListener();
+
+        try (WorkspaceWatcher watcher = createWatcher(tempDir, listener)) {
+            Workspace workspace = createWorkspace();
+
+            // a burst of updates is debounced
+            watcher.update(workspace);
+            watcher.update(workspace);
+            watcher.update(workspace);
+            assertEquals(Set.of("A", "B"), listener.nextChange());
+            assertEquals(Set.of("A", "B"), Set.of(listener.nextView().getKey(), listener.nextView().getKey()));
+
+            workspace.getModel().getSoftwareSystemWithName("B").setDescription("Description");
+            watcher.update(workspace);
+            assertEquals(Set.of("B"), listener.nextChange());
+            assertEquals("B", listener.nextView().getKey());
+            assertTrue(listener.views.isEmpty());
+        }
+    }
+
+    @Test
+    public void test_update_LaysOutACopyOfTheWorkspace() throws Exception {
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        RecordingListener listener = new RecordingListener();
+
+        try (WorkspaceWatcher watcher = createWatcher(tempDir, listener)) {
+            Workspace workspace = createWorkspace();
+            watcher.update(workspace);
+
+            listener.nextChange();
+            ModelView view = listener.nextView();
+            ModelView original = (ModelView)workspace.getViews().getViewWithKey(view.getKey());
+            assertNotSame(original, view);
+            assertTrue(original.getElements().stream().allMatch(elementView -> elementView.getX() == 0 && elementView.getY() == 0));
+        }
+    }
+
+    @Test
+    public void test_watch_LaysOutTheViewsThatHaveChangedWhenTheFileIsWritten() throws Exception {
+        File tempDir = Files.createTempDirectory("graphviz").toFile();
+        File file = new File(Files.createTempDirectory("workspace").toFile(), "workspace.json");
+        RecordingListener listener = new RecordingListener();
+
+        Workspace workspace = createWorkspace();
+        WorkspaceUtils.saveWorkspaceToJson(workspace, file);
+
+        try (WorkspaceWatcher watcher = createWatcher(tempDir, listener)) {
+            watcher.watch(file);
+            assertEquals(Set.of("A", "B"), listener.nextChange());
+            assertEquals(Set.of("A", "B"), Set.of(listener.nextView().getKey(), listener.nextView().getKey()));
+
+            workspace.getModel().getSoftwareSystemWithName("B").setDescription("Description");
+            WorkspaceUtils.saveWorkspaceToJson(workspace, file);
+            assertEquals(Set.of("B"), listener.nextChange());
+            assertEquals("B", listener.nextView().getKey());
+        }
+    }
+
+    private WorkspaceWatcher createWatcher(File tempDir, WorkspaceWatcher.Listener listener) {
+        WorkspaceWatcher watcher = new WorkspaceWatcher(2, () -> {
+            GraphvizAutomaticLayout layout = new GraphvizAutomaticLayout(tempDir);
+            layout.addLayoutTier(LayoutTier.Layered, 0);
+            return layout;
+        }, listener);
+        watcher.setDebounce(50);
+
+        return watcher;
+    }
+
+    private Workspace createWorkspace() {
+        Workspace workspace = new Workspace("Name", "");
+        Person user = workspace.getModel().addPerson("User");
+        SoftwareSystem a = workspace.getModel().addSoftwareSystem("A");
+        SoftwareSystem b = workspace.getModel().addSoftwareSystem("B");
+        user.uses(a, "Uses");
+        workspace.getViews().createSystemContextView(a, "A", "").addDefaultElements();
+        workspace.getViews().createSystemContextView(b, "B", "").addDefaultElements();
+
+        return workspace;
+    }
+
+    private static final class RecordingListener implements WorkspaceWatcher.Listener {
+
+        private final BlockingQueue<Set<String>> changes = new LinkedBlockingQueue<>();
+        private final BlockingQueue<ModelView> views = new LinkedBlockingQueue<>();
+
+        @Override
+        public void workspaceChanged(Workspace workspace, Set<String> viewKeys) {
+            changes.add(viewKeys);
+        }
+
+        @Override
+        public void viewUpdated(Workspace workspace, ModelView view) {
+            views.add(view);
+        }
+
+        @Override
+        public void viewFailed(Workspace workspace, ModelView view, Exception e) {
+            fail(e);
+        }
+
+        private Set<String> nextChange() throws InterruptedException {
+            Set<String> viewKeys = changes.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(viewKeys, "The workspace was not compared within " + TIMEOUT + " seconds");
+
+            return viewKeys;
+        }
+
+        private ModelView nextView() throws InterruptedException {
+            ModelView view = views.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertNotNull(view, "No view was laid out within " + TIMEOUT + " seconds");
+
+            return view;
+        }
+
+    }
+
+}